@@ -1,5 +1,12 @@
 package gr.network;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 
@@ -8,13 +15,43 @@ import org.slf4j.LoggerFactory;
 
 import gr.network.client.Neo4jConnection;
 import gr.network.client.SqliteConnection;
+import gr.network.client.SqliteSchema;
+import gr.network.client.SqliteShards;
+import gr.network.column.ActionColumns;
+import gr.network.column.AggregationBenchmark;
+import gr.network.column.AggregationKernels;
+import gr.network.column.CourseAggregates;
 import gr.network.domain.Action;
+import gr.network.export.SequenceExporter;
+import gr.network.generate.WorkloadGenerator;
+import gr.network.generate.WorkloadProfile;
+import gr.network.index.ActionFilter;
+import gr.network.index.BitmapIndex;
+import gr.network.index.RoaringBitmap;
+import gr.network.index.VectorBenchmark;
+import gr.network.index.VectorIndex;
+import gr.network.load.ConcurrentLoader;
 import gr.network.load.GraphLoader;
+import gr.network.load.ShardedSqliteLoader;
 import gr.network.load.SqliteLoader;
 import gr.network.read.GraphReader;
 import gr.network.read.InputReader;
+import gr.network.read.ShardedSqlReader;
+import gr.network.read.SqlQueryRunner;
 import gr.network.read.SqlReader;
 import gr.network.read.QueryComparison;
+import gr.network.read.QueryProfiler;
+import gr.network.read.ScalingBenchmark;
+import gr.network.read.SchemaBenchmark;
+import gr.network.read.sink.ListRow;
+import gr.network.read.sink.PreviewSink;
+import gr.network.read.sink.ResultSink;
+import gr.network.read.sink.ResultSinks;
+import gr.network.metrics.Metrics;
+import gr.network.metrics.MetricsExporter;
+import gr.network.projection.CourseProjection;
+import gr.network.sketch.HeavyHitters;
+import gr.network.trace.LoadRecorder;
 
 /**
  * Launcher of the application.
@@ -33,28 +70,194 @@ public class Launcher {
     private static boolean shouldCompare;
     private static boolean shouldRunSql;
 
+    private static boolean shouldCompareAll;
+    private static QueryComparison.Mode compareMode = QueryComparison.Mode.CONCURRENT;
+    private static Duration queryTimeout = Duration.ofSeconds(60);
+
+    private static String sinkSpec;
+    private static boolean shouldProfile;
+    private static boolean shouldRunAsync;
+
+    private static String streamFileName;
+
+    private static boolean shouldRecord;
+
+    private static boolean shouldLoadConcurrently;
+
+    /** SQLite shards to load and query, 0 for the single database. */
+    private static int shardCount;
+
+    private static boolean shouldUseMemory;
+
+    /** The SQLite schema layout to load into, the configured one if null. */
+    private static SqliteSchema schema;
+
+    private static String schemaBenchmarkFileName;
+
+    /** The file whose workload is swept over growing scales, if any. */
+    private static String sweepFileName;
+
+    /** The file whose courses are projected to find similar ones, if any. */
+    private static String similarFileName;
+
+    /** The file whose actions are filtered through bitmap indexes, if any. */
+    private static String bitmapFileName;
+
+    /** The file whose feature vectors are searched for nearest neighbours, if any. */
+    private static String nearestFileName;
+    private static String nearestBenchmarkFileName;
+
+    /** The file whose actions are aggregated by course over primitive columns, if any. */
+    private static String aggregateFileName;
+
+    /** The file whose actions are exported as per-user sequences, if any. */
+    private static String sequencesFileName;
+
+    /** The file a synthetic workload is fitted from, if any, and how many times larger it is generated. */
+    private static String generateFileName;
+    private static double generateScale = 1;
+    private static boolean shouldSnapshot;
+
+    private static boolean shouldExportMetrics;
+    private static int metricsPort = MetricsExporter.DEFAULT_PORT;
+
+    /** Rows between two reports of the live top courses, when streaming. */
+    private static final long STREAM_REPORT_EVERY = 100_000;
+
+    /** Courses per ranking of the live top courses. */
+    private static final int TOP_K = 10;
+
     private static final Scanner scanner = new Scanner(System.in);
 
     public static void main(String[] args) {
         boolean okInput = handleArgs(args);
         if (!okInput) return;
 
+        // closed after the connections, so the dumps hold everything they counted; the connections
+        // take their gauges with them, so no dump reads a pool already closed
+        MetricsExporter metrics = null;
+        LoadRecorder recorder = null;
+
         try (
             Neo4jConnection neo4jConnection = new Neo4jConnection();
-            SqliteConnection sqliteConnection = new SqliteConnection();
+            SqliteConnection sqliteConnection = shouldUseMemory ? new SqliteConnection(true) : new SqliteConnection();
+            ResultSink sink = sinkSpec != null ? ResultSinks.parse(sinkSpec) : new PreviewSink();
+            QueryProfiler profiler = shouldProfile ? new QueryProfiler() : null;
+            SqliteShards shards = shardCount > 0
+                ? (shouldUseMemory ? new SqliteShards(shardCount, true) : new SqliteShards(shardCount))
+                : null;
         ) {
+            if (shouldExportMetrics) {
+                metrics = new MetricsExporter(Metrics.REGISTRY, metricsPort);
+            }
+            if (shouldRecord) {
+                recorder = new LoadRecorder();
+            }
+
+            if (streamFileName != null) {
+                LOGGER.info("Streaming {} through the heavy hitters", streamFileName);
+                runStream(sink);
+                return;
+            }
+
+            if (schema != null) {
+                sqliteConnection.setSchema(schema);
+                if (shards != null) {
+                    shards.setSchema(schema);
+                }
+            }
+
+            if (bitmapFileName != null) {
+                LOGGER.info("Indexing the actions of {} in bitmaps", bitmapFileName);
+                runBitmap(sink);
+                return;
+            }
+
+            if (nearestFileName != null) {
+                LOGGER.info("Indexing the feature vectors of {}", nearestFileName);
+                runNearest(sink);
+                return;
+            }
+
+            if (nearestBenchmarkFileName != null) {
+                LOGGER.info("Comparing the nearest neighbour searches on {}", nearestBenchmarkFileName);
+                new VectorBenchmark().run(nearestBenchmarkFileName);
+                return;
+            }
+
+            if (aggregateFileName != null) {
+                LOGGER.info("Aggregating the action columns of {}", aggregateFileName);
+                runAggregate(sink);
+                return;
+            }
+
+            if (sequencesFileName != null) {
+                LOGGER.info("Exporting the action sequences of every user of {}", sequencesFileName);
+                runSequences();
+                return;
+            }
+
+            if (generateFileName != null) {
+                LOGGER.info("Generating a synthetic workload {} times the size of {}", generateScale, generateFileName);
+                runGenerate();
+                return;
+            }
+
+            if (similarFileName != null) {
+                LOGGER.info("Projecting the courses of {}", similarFileName);
+                runSimilar(neo4jConnection, sink, profiler);
+                return;
+            }
+
+            if (schemaBenchmarkFileName != null) {
+                LOGGER.info("Comparing the SQLite schema layouts on {}", schemaBenchmarkFileName);
+                new SchemaBenchmark(sqliteConnection.getUri()).run(schemaBenchmarkFileName);
+                return;
+            }
+
+            if (sweepFileName != null) {
+                LOGGER.info("Sweeping the workload of {} over growing scales", sweepFileName);
+                Path report = new ScalingBenchmark(sqliteConnection, neo4jConnection).run(sweepFileName);
+                System.out.println("\nReport written to " + report.toAbsolutePath());
+                return;
+            }
 
-            if (shouldLoad) {
+            if (shouldUseMemory && !shouldLoad) {
+                double restoreMs = shards != null ? shards.restore() : sqliteConnection.restore();
+                LOGGER.info("SQLite restored into memory in {} ms", String.format("%.2f", restoreMs));
+            }
+
+            if (shouldLoad && shouldLoadConcurrently) {
+                String loadFileName = fileName != null ? fileName : "mooc_actions_merged.csv";
+                LOGGER.info("Loading {} into SQLite and Neo4j concurrently", loadFileName);
+                HeavyHitters heavyHitters = new HeavyHitters();
+
+                GraphLoader graphLoader = new GraphLoader(neo4jConnection);
+                graphLoader.setAsync(shouldRunAsync);
+                ConcurrentLoader loader = new ConcurrentLoader(List.of(
+                    shards != null ? new ShardedSqliteLoader(shards) : new SqliteLoader(sqliteConnection),
+                    graphLoader
+                ));
+                loader.load(loadFileName, heavyHitters);
+                LOGGER.info("Top courses by actions: {}", heavyHitters.topByActions(TOP_K));
+                LOGGER.info("Top courses by label=1 actions: {}", heavyHitters.topByLabelOne(TOP_K));
+                LOGGER.info("Top courses by distinct users: {}", heavyHitters.topByDistinctUsers(TOP_K));
+                LOGGER.info("Concurrent Loading Done");
+            } else if (shouldLoad) {
                 LOGGER.info("Graph Loading Specified");
                 InputReader reader;
+                HeavyHitters heavyHitters = new HeavyHitters();
 
                 if (fileName != null) {
                     LOGGER.info("Specified file name: {}", fileName);
-                    reader = new InputReader(fileName);
+                    reader = new InputReader(fileName, heavyHitters);
                 } else {
                     LOGGER.info("File name not specified, taking default");
-                    reader = new InputReader();
+                    reader = new InputReader("mooc_actions_merged.csv", heavyHitters);
                 }
+                LOGGER.info("Top courses by actions: {}", heavyHitters.topByActions(TOP_K));
+                LOGGER.info("Top courses by label=1 actions: {}", heavyHitters.topByLabelOne(TOP_K));
+                LOGGER.info("Top courses by distinct users: {}", heavyHitters.topByDistinctUsers(TOP_K));
 
                 Set<String> users = reader.getUserIds();
                 Set<String> courses = reader.getCourseIds();
@@ -65,18 +268,37 @@ public class Launcher {
                 LOGGER.info("Loading {} Actions", actions.size());
 
                 // load in sqlite
-                SqliteLoader sqliteLoader = new SqliteLoader(users, courses, actions, sqliteConnection.getConnection());
-                sqliteLoader.load();
+                if (shards != null) {
+                    new ShardedSqliteLoader(users, courses, actions, shards).load();
+                } else {
+                    new SqliteLoader(users, courses, actions, sqliteConnection).load();
+                }
                 LOGGER.info("Sqlite Loading Done");
 
                 GraphLoader loader = new GraphLoader(users, courses, actions, neo4jConnection);
+                loader.setAsync(shouldRunAsync);
                 loader.load();
                 LOGGER.info("Neo4j Loading Done");
             }
 
-            if (shouldCompare) {
+            if (shouldSnapshot) {
+                double snapshotMs = shards != null ? shards.snapshot() : sqliteConnection.snapshot();
+                LOGGER.info("SQLite snapshot written to disk in {} ms", String.format("%.2f", snapshotMs));
+            }
+
+            if (shouldCompareAll) {
+                LOGGER.info("Running unattended comparison of all queries");
+                QueryComparison comparison = new QueryComparison(neo4jConnection, sqliteConnection, scanner);
+                comparison.setSink(sink);
+                comparison.setProfiler(profiler);
+                comparison.setShards(shards);
+                comparison.runUnattended(compareMode, queryTimeout);
+            } else if (shouldCompare) {
                 LOGGER.info("Running query comparison between Neo4j and SQLite");
                 QueryComparison comparison = new QueryComparison(neo4jConnection, sqliteConnection, scanner);
+                comparison.setSink(sink);
+                comparison.setProfiler(profiler);
+                comparison.setShards(shards);
                 if (queryName != null) {
                     comparison.runComparison(queryName);
                 } else {
@@ -84,7 +306,11 @@ public class Launcher {
                 }
             } else if (shouldRunSql) {
                 LOGGER.info("Running SQL queries only");
-                SqlReader sqlReader = new SqlReader(sqliteConnection, scanner);
+                SqlQueryRunner sqlReader = shards != null
+                    ? new ShardedSqlReader(shards, scanner)
+                    : new SqlReader(sqliteConnection, scanner);
+                sqlReader.setSink(sink);
+                sqlReader.setProfiler(profiler);
                 if (shouldQuery) {
                     sqlReader.run(queryName);
                 } else {
@@ -92,8 +318,13 @@ public class Launcher {
                 }
             } else {
                 GraphReader reader = new GraphReader(neo4jConnection, scanner);
+                reader.setSink(sink);
+                reader.setProfiler(profiler);
 
-                if (shouldQuery) {
+                if (shouldQuery && "all".equalsIgnoreCase(queryName)) {
+                    LOGGER.info("Graph Querying Specified: all");
+                    runAllQueries(reader);
+                } else if (shouldQuery) {
                     LOGGER.info("Graph Querying Specified: {}", queryName);
                     reader.run(queryName);
                 } else {
@@ -115,10 +346,16 @@ public class Launcher {
                         case "7" -> reader.run("label1pertarget");
                         case "8" -> {
                             QueryComparison comparison = new QueryComparison(neo4jConnection, sqliteConnection, scanner);
+                            comparison.setSink(sink);
+                            comparison.setProfiler(profiler);
+                            comparison.setShards(shards);
                             comparison.runComparison(null);
                         }
                         case "9" -> {
                             QueryComparison comparison = new QueryComparison(neo4jConnection, sqliteConnection, scanner);
+                            comparison.setSink(sink);
+                            comparison.setProfiler(profiler);
+                            comparison.setShards(shards);
                             comparison.runAllComparisons();
                         }
                         default -> System.out.println("Invalid selection " + choice);
@@ -129,11 +366,31 @@ public class Launcher {
         } catch (Exception e) {
             LOGGER.error("Connection failed.", e);
         } finally {
+            if (recorder != null) {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    LOGGER.error("Could not write the recording.", e);
+                }
+            }
+            if (metrics != null) {
+                try {
+                    metrics.close();
+                } catch (IOException e) {
+                    LOGGER.error("Could not dump the metrics.", e);
+                }
+            }
             scanner.close();
         }
     }
 
     private static boolean handleArgs(String[] args) {
+        args = handleOptions(args);
+        if (args == null) {
+            System.out.println(getUsage());
+            return false;
+        }
+
         switch (args.length) {
             case 0:
                 return true; // allow empty args, fall back to interactive
@@ -205,6 +462,113 @@ public class Launcher {
         return false;
     }
 
+    /**
+     * Consumes the options that can accompany any execution.
+     * @return the remaining arguments, or null if an option is malformed
+     */
+    private static String[] handleOptions(String[] args) {
+        List<String> remaining = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--sink")) {
+                if (i + 1 == args.length) return null;
+                sinkSpec = args[++i];
+            } else if (args[i].equals("--profile")) {
+                shouldProfile = true;
+            } else if (args[i].equals("--async")) {
+                shouldRunAsync = true;
+            } else if (args[i].equals("--compare-all")) {
+                shouldCompareAll = true;
+                // the scheduling mode is optional
+                if (i + 1 < args.length && (args[i + 1].equals("concurrent") || args[i + 1].equals("isolated"))) {
+                    compareMode = QueryComparison.Mode.valueOf(args[++i].toUpperCase());
+                }
+            } else if (args[i].equals("--shards")) {
+                if (i + 1 == args.length) return null;
+                try {
+                    shardCount = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                // zero would silently leave sharding off
+                if (shardCount < 1) return null;
+            } else if (args[i].equals("--schema")) {
+                if (i + 1 == args.length) return null;
+                try {
+                    schema = SqliteSchema.parse(args[++i]);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            } else if (args[i].equals("--bitmap")) {
+                if (i + 1 == args.length) return null;
+                bitmapFileName = args[++i];
+            } else if (args[i].equals("--nearest")) {
+                if (i + 1 == args.length) return null;
+                nearestFileName = args[++i];
+            } else if (args[i].equals("--nearest-benchmark")) {
+                if (i + 1 == args.length) return null;
+                nearestBenchmarkFileName = args[++i];
+            } else if (args[i].equals("--aggregate")) {
+                if (i + 1 == args.length) return null;
+                aggregateFileName = args[++i];
+            } else if (args[i].equals("--sequences")) {
+                if (i + 1 == args.length) return null;
+                sequencesFileName = args[++i];
+            } else if (args[i].equals("--generate")) {
+                if (i + 1 == args.length) return null;
+                generateFileName = args[++i];
+                // the scale is optional
+                if (i + 1 < args.length && args[i + 1].matches("\\d+(\\.\\d+)?")) {
+                    generateScale = Double.parseDouble(args[++i]);
+                }
+            } else if (args[i].equals("--similar")) {
+                if (i + 1 == args.length) return null;
+                similarFileName = args[++i];
+            } else if (args[i].equals("--schema-benchmark")) {
+                if (i + 1 == args.length) return null;
+                schemaBenchmarkFileName = args[++i];
+            } else if (args[i].equals("--sweep")) {
+                if (i + 1 == args.length) return null;
+                sweepFileName = args[++i];
+            } else if (args[i].equals("--memory")) {
+                shouldUseMemory = true;
+            } else if (args[i].equals("--snapshot")) {
+                // only an in-memory database has to be written back
+                shouldUseMemory = true;
+                shouldSnapshot = true;
+            } else if (args[i].equals("--concurrent")) {
+                shouldLoadConcurrently = true;
+            } else if (args[i].equals("--record")) {
+                shouldRecord = true;
+            } else if (args[i].equals("--metrics")) {
+                shouldExportMetrics = true;
+                // the port is optional
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    try {
+                        metricsPort = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    if (metricsPort < 1 || metricsPort > 65535) return null;
+                }
+            } else if (args[i].equals("--stream")) {
+                if (i + 1 == args.length) return null;
+                streamFileName = args[++i];
+            } else if (args[i].equals("--timeout")) {
+                if (i + 1 == args.length) return null;
+                try {
+                    queryTimeout = Duration.ofSeconds(Long.parseLong(args[++i]));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (queryTimeout.isNegative() || queryTimeout.isZero()) return null;
+            } else {
+                remaining.add(args[i]);
+            }
+        }
+        return remaining.toArray(String[]::new);
+    }
+
     /**
      * Return the execution usage of the application.
      */
@@ -213,7 +577,7 @@ public class Launcher {
             Usage: java -jar <jar_name>.jar <args>
                 --load : Load the graph from the default file (mooc_actions_merged.csv)
                 --load <path_to_csv_file> : Load the graph from the given file
-                --query <query_alias> : Query the graph with the given query alias
+                --query <query_alias> : Query the graph with the given query alias (all : every query)
                 --query : Query the graph with the given query alias (interactive)
                 --sql <query_alias> : Run SQL queries only
                 --sql : Run SQL queries only (interactive)
@@ -223,7 +587,31 @@ public class Launcher {
                 --load --compare <query_name> : Load the graph and run comparison
                 --load <path_to_csv_file> --query <query_name> : Load the graph from a specified file and query it with the given query name
                 --load <path_to_csv_file> --compare <query_name> : Load the graph from a specified file and run comparison
+                --compare-all [concurrent|isolated] : Compare every query on both databases unattended (after --load, if given)
+                --stream <path_to_csv_file> : Stream the file without loading it, reporting the live top courses
+                --bitmap <path_to_csv_file> : Index the actions of the file in bitmaps and count the ones passing ad-hoc filters
+                --nearest <path_to_csv_file> : Index the feature vectors of the file and find the actions or users nearest to one
+                --nearest-benchmark <path_to_csv_file> : Compare the recall and latency of the nearest neighbour searches on the file
+                --aggregate <path_to_csv_file> : Aggregate the actions of the file by course over primitive columns, comparing the scalar and Vector API kernels
+                --sequences <path_to_csv_file> : Export the time-ordered actions of every user of the file as binary files under sequences/
+                --generate <path_to_csv_file> [scale] : Write a synthetic file fitted from the given one, scale times its users and actions (default 1), under generated/
+                --similar <path_to_csv_file> : Project the courses of the file on each other and rank the ones similar to a course, against Neo4j
+                --schema-benchmark <path_to_csv_file> : Load the file with every SQLite schema layout and compare their size and query times
+                --sweep <path_to_csv_file> : Generate the workload of the file at growing scales (SWEEP_SCALES), load and query every one, and report how each measure scales under sweeps/
                 [NO ARGS] : Just run and choose a query interactively (includes comparison options)
+
+            Options (combine with any of the above):
+                --sink <sink> : Where query rows go: preview[:N] (default, 100 rows), count, discard, csv:<path>, jsonl:<path>
+                --profile : Profile every query and record its plan under profiles/
+                --async : Pipeline Neo4j load batches and queries over asynchronous sessions
+                --timeout <seconds> : Per query timeout of --compare-all (default 60)
+                --shards <n> : Load and query SQLite split by user into n database files, queried in parallel
+                --schema <default|compact|clustered> : The SQLite schema layout new databases are loaded with
+                --memory : Keep SQLite in memory, restored from its file unless loading (set SQLITE_MMAP_SIZE to map the file instead)
+                --snapshot : Keep SQLite in memory and write it to its file once loaded
+                --concurrent : Parse once and load SQLite and Neo4j at the same time (with --load)
+                --record : Record a Flight Recorder file under recordings/ and print where the load time went
+                --metrics [port] : Serve metrics on localhost (default port 9464) and dump them under metrics/ on exit
         """;
     }
 
@@ -245,13 +633,247 @@ public class Launcher {
         System.out.print("\nChoose a query (0-9): ");
     }
 
+    /**
+     * Indexes the actions of the file in bitmaps, then counts the actions
+     * passing each filter given, per course, timing the bitmaps against
+     * checking every action.
+     */
+    private static void runBitmap(ResultSink sink) throws Exception {
+        InputReader reader = new InputReader(bitmapFileName);
+        List<Action> actions = List.copyOf(reader.getActions());
+
+        BitmapIndex index = new BitmapIndex();
+        long start = System.nanoTime();
+        actions.forEach(index);
+        LOGGER.info("Indexed {} actions in {} bitmaps of {} KB, in {} ms", index.getActionCount(), index.getBitmapCount(),
+            index.sizeInBytes() / 1024, String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0));
+
+        while (true) {
+            System.out.print("\nProvide a filter, such as label=1 feature2>0 course=3 (empty to stop): ");
+            if (!scanner.hasNextLine()) {
+                return;
+            }
+            String expression = scanner.nextLine().trim();
+            if (expression.isEmpty()) {
+                return;
+            }
+
+            ActionFilter filter;
+            try {
+                filter = ActionFilter.parse(expression);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                continue;
+            }
+
+            start = System.nanoTime();
+            RoaringBitmap matching = filter.evaluate(index);
+            long count = matching.cardinality();
+            double bitmapUs = (System.nanoTime() - start) / 1_000.0;
+
+            start = System.nanoTime();
+            actions.stream().filter(filter::test).count();
+            double scanUs = (System.nanoTime() - start) / 1_000.0;
+
+            List<Map.Entry<String, Long>> perCourse = index.countByCourse(matching).entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(TOP_K)
+                .toList();
+
+            String label = "Actions passing " + filter + " per course";
+            sink.begin(label, List.of("targetId", "actions"));
+            for (Map.Entry<String, Long> course : perCourse) {
+                sink.accept(new ListRow(List.of(course.getKey(), course.getValue())));
+            }
+            System.out.println("\n> " + label);
+            sink.end();
+            System.out.printf("%d actions pass (bitmaps %.1f us, checking every action %.1f us)\n", count, bitmapUs, scanUs);
+        }
+    }
+
+    /**
+     * Indexes the feature vectors of the actions of the file, and the mean
+     * vector of every user, then finds the ones nearest to each action or
+     * user given, through the k-d tree, timing it against scanning every vector.
+     */
+    private static void runNearest(ResultSink sink) throws Exception {
+        InputReader reader = new InputReader(nearestFileName);
+        List<Action> actions = List.copyOf(reader.getActions());
+
+        long start = System.nanoTime();
+        VectorIndex byAction = VectorIndex.ofActions(actions);
+        VectorIndex byUser = VectorIndex.ofUsers(actions);
+        LOGGER.info("Indexed {} action and {} user vectors in {} ms", byAction.size(), byUser.size(),
+            String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0));
+
+        while (true) {
+            System.out.print("\nProvide an action id, or user <user id> (empty to stop): ");
+            if (!scanner.hasNextLine()) {
+                return;
+            }
+            String[] query = scanner.nextLine().trim().split("\\s+");
+            if (query[0].isEmpty()) {
+                return;
+            }
+
+            boolean byUserQuery = query.length == 2 && query[0].equalsIgnoreCase("user");
+            VectorIndex index = byUserQuery ? byUser : byAction;
+            String id = query[query.length - 1];
+            if (index.vectorOf(id) == null) {
+                System.out.println("No " + (byUserQuery ? "user " : "action ") + id);
+                continue;
+            }
+
+            start = System.nanoTime();
+            List<VectorIndex.Neighbour> nearest = index.approximate(id, TOP_K);
+            double treeUs = (System.nanoTime() - start) / 1_000.0;
+
+            start = System.nanoTime();
+            index.exact(id, TOP_K);
+            double scanUs = (System.nanoTime() - start) / 1_000.0;
+
+            String label = (byUserQuery ? "Users nearest to user " : "Actions nearest to action ") + id;
+            sink.begin(label, List.of(byUserQuery ? "userId" : "actionId", "distance"));
+            for (VectorIndex.Neighbour neighbour : nearest) {
+                sink.accept(new ListRow(List.of(neighbour.id(), neighbour.distance())));
+            }
+            System.out.println("\n> " + label);
+            sink.end();
+            System.out.printf("k-d tree %.1f us (at most %d leaves), scanning every vector %.1f us\n",
+                treeUs, index.getMaxLeaves(), scanUs);
+        }
+    }
+
+    /**
+     * Lays the actions of the file out as columns grouped by course, reports
+     * their per-course aggregates with the fastest kernels available, then
+     * times every kernel of every implementation.
+     */
+    private static void runAggregate(ResultSink sink) throws Exception {
+        InputReader reader = new InputReader(aggregateFileName);
+
+        long start = System.nanoTime();
+        ActionColumns columns = ActionColumns.of(reader.getActions());
+        LOGGER.info("Laid out {} actions of {} courses in {} MB of columns, in {} ms", columns.getRows(),
+            columns.getCourseCount(), String.format("%.1f", columns.sizeInBytes() / (1024.0 * 1024.0)),
+            String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0));
+
+        AggregationKernels kernels = AggregationKernels.best();
+        start = System.nanoTime();
+        CourseAggregates aggregates = CourseAggregates.compute(columns, kernels);
+        double aggregateMs = (System.nanoTime() - start) / 1_000_000.0;
+        aggregates.report(sink, TOP_K);
+        System.out.printf("\nAggregated every course with the %s kernels in %.2f ms\n", kernels.name(), aggregateMs);
+
+        new AggregationBenchmark(columns).run();
+    }
+
+    /**
+     * Exports the actions of every user of the file, ordered by time,
+     * in memory-mappable binary files.
+     */
+    private static void runSequences() throws Exception {
+        long start = System.nanoTime();
+        InputReader reader = new InputReader(sequencesFileName);
+        double readMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        SequenceExporter exporter = new SequenceExporter();
+        SequenceExporter.Summary summary = exporter.export(reader.getActions());
+
+        System.out.printf("\nExported %d sequences of %d actions, %.1f MB, to %s\n", summary.users(), summary.actions(),
+            summary.bytes() / (1024.0 * 1024.0), exporter.getDirectory().toAbsolutePath());
+        System.out.printf("read %.2f ms, group %.2f ms, sort %.2f ms, write %.2f ms\n",
+            readMs, summary.groupMs(), summary.sortMs(), summary.writeMs());
+    }
+
+    /**
+     * Fits a workload profile from the file, and writes a synthetic file
+     * with that profile, scaled, under generated/.
+     */
+    private static void runGenerate() throws Exception {
+        long start = System.nanoTime();
+        WorkloadProfile profile = WorkloadProfile.fit(generateFileName);
+        LOGGER.info("Fitted in {} ms: {}", String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0), profile);
+
+        Path file = WorkloadGenerator.outputFile(generateFileName, generateScale);
+        WorkloadGenerator.Summary summary = new WorkloadGenerator().generate(profile.scaled(generateScale), file);
+        System.out.printf("\nGenerated %d actions, %.1f MB, in %.2f ms (%.1f MB/s) to %s\n", summary.actions(),
+            summary.bytes() / (1024.0 * 1024.0), summary.ms(), summary.bytes() / (1024.0 * 1024.0) / (summary.ms() / 1000),
+            file.toAbsolutePath());
+    }
+
+    /**
+     * Projects the user-course graph of the file on the courses, in parallel,
+     * then ranks the courses related to one, first from the projection and
+     * then with the equivalent two-hop query on Neo4j.
+     */
+    private static void runSimilar(Neo4jConnection neo4jConnection, ResultSink sink, QueryProfiler profiler)
+            throws Exception {
+        InputReader reader = new InputReader(similarFileName);
+
+        long start = System.nanoTime();
+        CourseProjection projection = CourseProjection.build(reader.getUserCourses());
+        LOGGER.info("Projected {} courses, {} pairs sharing users, in {} ms", projection.getCourseCount(),
+            projection.getPairCount(), String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0));
+
+        String courseId = "";
+        do {
+            System.out.print("Provide a course id: ");
+            courseId = scanner.nextLine().trim();
+        } while (courseId.isBlank());
+
+        start = System.nanoTime();
+        projection.topSimilar(courseId, TOP_K);
+        double projectionMs = (System.nanoTime() - start) / 1_000_000.0;
+        projection.report(sink, courseId, TOP_K);
+
+        GraphReader graphReader = new GraphReader(neo4jConnection, new Scanner(courseId + "\n"));
+        graphReader.setSink(sink);
+        graphReader.setProfiler(profiler);
+        double neo4jMs = graphReader.run("similarcourses");
+
+        System.out.printf("\nSimilar courses: projection %.2f ms, Neo4j two hops %.2f ms\n", projectionMs, neo4jMs);
+    }
+
+    /**
+     * Feeds the file to the heavy hitters one action at a time, as a
+     * continuous ingest would, reporting the live top courses along the way.
+     */
+    private static void runStream(ResultSink sink) throws Exception {
+        HeavyHitters heavyHitters = new HeavyHitters();
+
+        long start = System.nanoTime();
+        long rows = InputReader.stream(streamFileName, action -> {
+            heavyHitters.accept(action);
+            if (heavyHitters.getRows() % STREAM_REPORT_EVERY == 0) {
+                try {
+                    heavyHitters.report(sink, TOP_K);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        double duration = (System.nanoTime() - start) / 1_000_000.0;
+
+        heavyHitters.report(sink, TOP_K);
+        System.out.printf("\nStreamed %d actions in %.2f ms (%.0f rows/s)\n", rows, duration, rows / (duration / 1000));
+    }
+
     private static void runAllQueries(GraphReader reader) {
-        reader.run("graphsize");
-        reader.run("actionstargetsofuser");
-        reader.run("actionsperuser");
-        reader.run("toptargets");
-        reader.run("avgactions");
-        reader.run("positivefeature2");
-        reader.run("label1pertarget");
+        List<String> queries = List.of(
+            "graphsize",
+            "actionstargetsofuser",
+            "actionsperuser",
+            "toptargets",
+            "avgactions",
+            "positivefeature2",
+            "label1pertarget"
+        );
+
+        if (shouldRunAsync) {
+            reader.runAsync(queries);
+        } else {
+            queries.forEach(reader::run);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package gr.network.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, time-limited cache of query results.
+ * Entries are keyed by query alias, statement and parameters, so the
+ * summary and scan variants of a query are cached apart, and tagged with
+ * the dataset version they were computed against. Loading data
+ * bumps the version, so every older entry stops being served.
+ * @version 1.0
+ */
+public class ResultCache<V> {
+
+    /** Identifies one cached statement of a query alias, by the statement actually run. */
+    public record Key(String alias, String label, String statement, List<?> params) {}
+
+    private record Entry<V>(V value, long version, long createdAt) {}
+
+    /** Maximum entries kept, least recently used are evicted first. */
+    private final int maxEntries;
+
+    /** Maximum age of an entry, in nanoseconds. */
+    private final long ttlNanos;
+
+    private final AtomicLong datasetVersion = new AtomicLong();
+
+    /** Access ordered, so the eldest entry is the least recently used. */
+    private final LinkedHashMap<Key, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ResultCache(int maxEntries, Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Whether the cache keeps anything at all.
+     * A cache of zero entries or zero ttl is disabled.
+     */
+    public boolean isEnabled() {
+        return maxEntries > 0 && ttlNanos > 0;
+    }
+
+    /**
+     * The dataset version entries are currently validated against.
+     * Callers should read it before running a query and pass it to
+     * {@link #put}, so a load finishing mid-query does not get a
+     * stale result tagged as fresh.
+     */
+    public long getVersion() {
+        return datasetVersion.get();
+    }
+
+    /**
+     * Marks the underlying data as changed.
+     * Every entry computed against an older version is dropped.
+     */
+    public synchronized long bumpVersion() {
+        invalidations.add(entries.size());
+        entries.clear();
+        return datasetVersion.incrementAndGet();
+    }
+
+    /**
+     * Retrieves a fresh entry for the given key.
+     * @return the cached value, or null on a miss
+     */
+    public synchronized V get(Key key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (entry.version() != datasetVersion.get()
+                || System.nanoTime() - entry.createdAt() > ttlNanos) {
+            entries.remove(key);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.value();
+    }
+
+    /**
+     * Stores a value computed against the given dataset version.
+     * Values of an outdated version are not stored.
+     */
+    public synchronized void put(Key key, V value, long version) {
+        if (!isEnabled() || version != datasetVersion.get()) {
+            return;
+        }
+
+        entries.put(key, new Entry<>(value, version, System.nanoTime()));
+        evictExpired();
+
+        // drop the least recently used entries over the size limit
+        Iterator<Map.Entry<Key, Entry<V>>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().createdAt() > ttlNanos) {
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Fraction of lookups served from the cache.
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Human readable summary of the cache counters.
+     */
+    public String getStats() {
+        return String.format(
+            "entries=%d, hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, invalidations=%d, version=%d",
+            size(), getHits(), getMisses(), getHitRate() * 100, getEvictions(), getInvalidations(), getVersion()
+        );
+    }
+}
@@ -1,20 +1,35 @@
 package gr.network.client;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Config;
 import org.neo4j.driver.GraphDatabase;
 import org.neo4j.driver.Session;
 import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.ConnectionPoolMetrics;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.cdimascio.dotenv.Dotenv;
 
+import gr.network.cache.ResultCache;
+import gr.network.domain.QueryResult;
+import gr.network.metrics.Metrics;
+
 
 /**
  * Handles the connection to the Neo4j database.
- * @version 1.0
+ * The driver keeps a pool of connections and is safe to share between
+ * threads; sessions are not, so every unit of work opens its own
+ * short-lived session from the pool.
+ * @version 1.1
  */
 public class Neo4jConnection implements AutoCloseable{
 
@@ -26,13 +41,27 @@ public class Neo4jConnection implements AutoCloseable{
     private final String password;
     private final String dbName;
 
-    private Driver driver;
-    private Session connectionSession;
+    /** The driver tuning. */
+    private final int maxPoolSize;
+    private final long acquisitionTimeoutMs;
+    private final int fetchSize;
+    private final int maxInFlight;
+
+    private volatile Driver driver;
 
     private static final Dotenv dotenv = Dotenv.configure()
         .directory("./")
         .load();
 
+    /** Cached results of queries against this database. */
+    private final ResultCache<QueryResult> resultCache = new ResultCache<>(
+        Integer.parseInt(dotenv.get("RESULT_CACHE_MAX_ENTRIES", "256")),
+        Duration.ofSeconds(Long.parseLong(dotenv.get("RESULT_CACHE_TTL_SECONDS", "300")))
+    );
+
+    /** Stops exporting the pool and cache of this connection once closed, keeping what they counted. */
+    private final List<Runnable> untrackMetrics;
+
     public Neo4jConnection() {
         this(
             dotenv.get("NEO4J_URI"),
@@ -47,17 +76,46 @@ public class Neo4jConnection implements AutoCloseable{
         this.user = user;
         this.dbName = dbName;
         this.password = password;
+
+        this.maxPoolSize = Integer.parseInt(dotenv.get("NEO4J_MAX_POOL_SIZE", "100"));
+        this.acquisitionTimeoutMs = Long.parseLong(dotenv.get("NEO4J_ACQUISITION_TIMEOUT_MS", "60000"));
+        this.fetchSize = Integer.parseInt(dotenv.get("NEO4J_FETCH_SIZE", "1000"));
+        this.maxInFlight = Integer.parseInt(dotenv.get("NEO4J_MAX_IN_FLIGHT", "8"));
+
+        this.untrackMetrics = List.of(
+            Metrics.resultCache("neo4j", resultCache),
+            Metrics.REGISTRY.gauge("neo4j_pool_in_use", "Driver connections in use",
+                () -> sumPoolMetrics(ConnectionPoolMetrics::inUse), "backend", "neo4j"),
+            Metrics.REGISTRY.gauge("neo4j_pool_idle", "Driver connections idle",
+                () -> sumPoolMetrics(ConnectionPoolMetrics::idle), "backend", "neo4j"),
+            Metrics.REGISTRY.counter("neo4j_pool_acquired_total", "Driver connections acquired",
+                () -> sumPoolMetrics(ConnectionPoolMetrics::acquired), "backend", "neo4j"),
+            Metrics.REGISTRY.counter("neo4j_pool_timed_out_to_acquire_total",
+                "Driver connection acquisitions that timed out",
+                () -> sumPoolMetrics(ConnectionPoolMetrics::timedOutToAcquire), "backend", "neo4j")
+        );
     }
 
     /**
-     * Retrieves the current Neo4j session.
-     * if no session is open, it opens a new one.
+     * Sums one metric over the pools of the driver, zero before it is opened.
      */
-    public Session getSession() {
-        if (this.connectionSession == null) {
-            this.initializeSession();
+    private long sumPoolMetrics(ToLongFunction<ConnectionPoolMetrics> metric) {
+        Driver current = this.driver;
+        if (current == null) {
+            return 0;
         }
-        return this.connectionSession;
+        return current.metrics().connectionPoolMetrics().stream().mapToLong(metric).sum();
+    }
+
+    /**
+     * Opens a new session, backed by a pooled connection.
+     * The caller must close it once its work is done.
+     */
+    public Session openSession() {
+        return this.getDriver().session(SessionConfig.builder()
+            .withDatabase(dbName)
+            .withFetchSize(fetchSize)
+            .build());
     }
 
     /**
@@ -65,45 +123,89 @@ public class Neo4jConnection implements AutoCloseable{
      * if no driver exists, it sets a new one.
      */
     public Driver getDriver() {
-        if (this.driver == null) {
-            this.initializeDriver();
+        Driver current = this.driver;
+        if (current == null) {
+            synchronized (this) {
+                if (this.driver == null) {
+                    this.initializeDriver();
+                }
+                current = this.driver;
+            }
         }
-        return this.driver;
+        return current;
     }
 
     /**
-     * Initializes the Neo4j session.
+     * Opens a new asynchronous session.
+     * The caller must close it once its work completes.
      */
-    private void initializeSession() {
-        logger.info("Opening New Neo4j Session...");
-
-        this.connectionSession = this.getDriver().session(SessionConfig.builder()
+    public AsyncSession openAsyncSession() {
+        return this.getDriver().session(AsyncSession.class, SessionConfig.builder()
             .withDatabase(dbName)
+            .withFetchSize(fetchSize)
             .build());
     }
 
+    /**
+     * The maximum number of asynchronous requests to keep in flight.
+     * Further requests wait for one of them to complete.
+     */
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    /**
+     * Retrieves the result cache of this database.
+     */
+    public ResultCache<QueryResult> getResultCache() {
+        return this.resultCache;
+    }
+
+    /**
+     * Summarizes the usage of the driver's connection pools.
+     */
+    public String getPoolMetrics() {
+        if (this.driver == null) {
+            return "no connections opened";
+        }
+
+        StringBuilder metrics = new StringBuilder();
+        for (ConnectionPoolMetrics pool : this.driver.metrics().connectionPoolMetrics()) {
+            metrics.append(String.format(
+                "[%s] inUse=%d, idle=%d, acquired=%d, created=%d, timedOutToAcquire=%d, totalAcquisitionTime=%d ms ",
+                pool.id(), pool.inUse(), pool.idle(), pool.acquired(), pool.created(),
+                pool.timedOutToAcquire(), pool.totalAcquisitionTime()
+            ));
+        }
+        return metrics.toString().trim();
+    }
+
     /**
      * Initializes the Neo4j driver.
      */
     private void initializeDriver() {
         logger.info("Opening New Neo4j Connection...");
 
-        this.driver = GraphDatabase.driver(uri, AuthTokens.basic(user, password));
+        Config config = Config.builder()
+            .withMaxConnectionPoolSize(maxPoolSize)
+            .withConnectionAcquisitionTimeout(acquisitionTimeoutMs, TimeUnit.MILLISECONDS)
+            .withFetchSize(fetchSize)
+            .withDriverMetrics()
+            .build();
+
+        this.driver = GraphDatabase.driver(uri, AuthTokens.basic(user, password), config);
     }
 
     /**
-     * Closes the Neo4j session and driver.
+     * Closes the Neo4j driver and its pooled connections.
      */
     @Override
     public void close() {
-        logger.info("Closing Neo4j Session...");
-
-        if (this.connectionSession != null) {
-            this.connectionSession.close();
-            logger.info("Neo4j Session closed.");
-        }
+        logger.info("Neo4j result cache: {}", resultCache.getStats());
+        logger.info("Neo4j connection pool: {}", getPoolMetrics());
 
         logger.info("Closing Neo4j Connection...");
+        untrackMetrics.forEach(Runnable::run);
 
         if (this.driver != null) {
             this.driver.close();
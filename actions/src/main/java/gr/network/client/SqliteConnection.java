@@ -1,38 +1,290 @@
 package gr.network.client;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.github.cdimascio.dotenv.Dotenv;
 
+import gr.network.cache.ResultCache;
+import gr.network.domain.QueryResult;
+import gr.network.metrics.Metrics;
+
+/**
+ * Handles the connections to the SQLite database:
+ * a single writer connection, used by the loaders, and a pool
+ * of read-only connections, so that readers on different threads
+ * query concurrently instead of serializing on one handle.
+ * In WAL mode readers are not blocked by the writer.
+ * <p>
+ * The database can also be kept in memory, shared by the writer and
+ * the readers, and filled by the loaders or restored from its file
+ * with the online backup API. It only reaches the file again through
+ * an explicit {@link #snapshot()}. On disk, reads can go through
+ * memory mapped I/O instead of read calls, up to {@code SQLITE_MMAP_SIZE} bytes.
+ * @version 1.2
+ */
 public class SqliteConnection implements AutoCloseable {
 
+    private final Logger logger = LoggerFactory.getLogger(SqliteConnection.class);
+
+    private static final String URI_PREFIX = "jdbc:sqlite:";
+
+    /** The URI of the database file. */
     private final String uri;
+    private final String name;
+    private final boolean wal;
+    private final boolean memory;
+    private final long mmapSize;
+
+    /** The layout tables are created in by the loaders. */
+    private SqliteSchema schema;
 
     private Connection connection;
 
+    private final SqliteReaderPool readers;
+
     private static final Dotenv dotenv = Dotenv.configure()
         .directory("./")
         .load();
 
+    /** Cached results of queries against this database. */
+    private final ResultCache<QueryResult> resultCache = new ResultCache<>(
+        Integer.parseInt(dotenv.get("RESULT_CACHE_MAX_ENTRIES", "256")),
+        Duration.ofSeconds(Long.parseLong(dotenv.get("RESULT_CACHE_TTL_SECONDS", "300")))
+    );
+
+    /** Stops exporting the readers and cache of this database once closed, keeping what they counted. */
+    private final List<Runnable> untrackMetrics;
+
     public SqliteConnection() {
         this(dotenv.get("SQLITE_URI"));
     }
 
+    /**
+     * @param memory whether the database is kept in memory instead of in its file
+     */
+    public SqliteConnection(boolean memory) {
+        this(dotenv.get("SQLITE_URI"), "sqlite", memory);
+    }
+
     public SqliteConnection(String uri) {
+        this(uri, "sqlite");
+    }
+
+    /**
+     * @param name names the database in the logs and metrics, such as a shard
+     */
+    public SqliteConnection(String uri, String name) {
+        this(uri, name, Boolean.parseBoolean(dotenv.get("SQLITE_MEMORY", "false")));
+    }
+
+    /**
+     * @param memory whether the database is kept in memory instead of in its file
+     */
+    public SqliteConnection(String uri, String name, boolean memory) {
         this.uri = uri;
+        this.name = name;
+        this.memory = memory;
+        this.wal = Boolean.parseBoolean(dotenv.get("SQLITE_WAL", "true"));
+        this.mmapSize = Long.parseLong(dotenv.get("SQLITE_MMAP_SIZE", "0"));
+        this.schema = SqliteSchema.parse(dotenv.get("SQLITE_SCHEMA", "default"));
+        this.readers = new SqliteReaderPool(
+            openUri(),
+            Integer.parseInt(dotenv.get(
+                "SQLITE_READERS",
+                String.valueOf(Runtime.getRuntime().availableProcessors())
+            )),
+            mmapSize
+        );
+
+        this.untrackMetrics = List.of(
+            Metrics.resultCache(name, resultCache),
+            Metrics.REGISTRY.gauge("sqlite_readers_open", "Reader connections opened",
+                readers::getOpenCount, "backend", name),
+            Metrics.REGISTRY.gauge("sqlite_readers_in_use", "Reader connections leased",
+                () -> readers.getOpenCount() - readers.getIdleCount(), "backend", name),
+            Metrics.REGISTRY.counter("sqlite_reader_acquisitions_total", "Reader leases",
+                readers::getAcquisitions, "backend", name),
+            Metrics.REGISTRY.counter("sqlite_reader_waits_total", "Reader leases that waited for a free reader",
+                readers::getWaits, "backend", name)
+        );
     }
 
-    public Connection getConnection() throws SQLException {
+    /**
+     * The URI connections open: the file, or a shared in-memory database named after this one.
+     */
+    private String openUri() {
+        return memory ? URI_PREFIX + "file:" + name + "?mode=memory&cache=shared" : uri;
+    }
+
+    /**
+     * Retrieves the writer connection, opening it on first use.
+     * Only one thread at a time should write through it.
+     * An in-memory database lives as long as this connection.
+     */
+    public synchronized Connection getConnection() throws SQLException {
         if (this.connection == null) {
-            this.connection = DriverManager.getConnection(this.uri);
+            this.connection = DriverManager.getConnection(openUri());
+
+            try (Statement stmt = this.connection.createStatement()) {
+                // journaling of an in-memory database always stays in memory
+                if (wal && !memory) {
+                    stmt.execute("PRAGMA journal_mode=WAL");
+                }
+                if (mmapSize > 0 && !memory) {
+                    stmt.execute("PRAGMA mmap_size=" + mmapSize);
+                }
+            }
         }
         return this.connection;
     }
 
+    /**
+     * Leases a read-only connection from the pool.
+     * The lease must be closed to return the connection.
+     */
+    public SqliteReaderPool.Lease acquireReader() throws SQLException {
+        if (memory) {
+            // the readers would otherwise see a database that vanishes with them
+            getConnection();
+        }
+        return this.readers.acquire();
+    }
+
+    /**
+     * Replaces the in-memory database with the contents of its file,
+     * copied page by page with the online backup API.
+     * @return the time taken in milliseconds
+     */
+    public double restore() throws SQLException {
+        requireMemory("restore");
+        if (!Files.exists(Path.of(getFile()))) {
+            throw new SQLException("There is no " + getFile() + " to restore " + name + " from, load it first");
+        }
+        long start = System.nanoTime();
+        synchronized (this) {
+            try (Statement stmt = getConnection().createStatement()) {
+                stmt.executeUpdate("restore from " + getFile());
+            }
+        }
+        // cached query results no longer reflect the database
+        resultCache.bumpVersion();
+
+        double duration = (System.nanoTime() - start) / 1_000_000.0;
+        logger.info("Restored {} into memory in {} ms", getFile(), String.format("%.2f", duration));
+        return duration;
+    }
+
+    /**
+     * Writes the in-memory database to its file, replacing the file,
+     * with the online backup API.
+     * @return the time taken in milliseconds
+     */
+    public double snapshot() throws SQLException {
+        requireMemory("snapshot");
+        long start = System.nanoTime();
+        synchronized (this) {
+            try (Statement stmt = getConnection().createStatement()) {
+                stmt.executeUpdate("backup to " + getFile());
+            }
+        }
+
+        double duration = (System.nanoTime() - start) / 1_000_000.0;
+        logger.info("Snapshot of {} written to {} in {} ms", name, getFile(), String.format("%.2f", duration));
+        return duration;
+    }
+
+    private void requireMemory(String operation) {
+        if (!memory) {
+            throw new IllegalStateException("Cannot " + operation + " " + name + ", it is not kept in memory");
+        }
+    }
+
+    /**
+     * The URI of a file next to the database one: mooc.db becomes mooc.&lt;suffix&gt;.db.
+     */
+    public static String siblingUri(String uri, String suffix) {
+        int dot = uri.lastIndexOf('.');
+        int separator = Math.max(uri.lastIndexOf('/'), uri.lastIndexOf(':'));
+        if (dot > separator) {
+            return uri.substring(0, dot) + "." + suffix + uri.substring(dot);
+        }
+        return uri + "." + suffix;
+    }
+
+    /**
+     * The URI of the database file.
+     */
+    public String getUri() {
+        return this.uri;
+    }
+
+    /**
+     * The path of the database file.
+     */
+    public String getFile() {
+        return uri.startsWith(URI_PREFIX) ? uri.substring(URI_PREFIX.length()) : uri;
+    }
+
+    public boolean isMemory() {
+        return this.memory;
+    }
+
+    public SqliteSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Chooses the layout of the tables created by the next load.
+     * Tables that already exist keep theirs.
+     */
+    public void setSchema(SqliteSchema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Describes where the database is read from, such as "on disk, WAL, mmap 256 MB".
+     */
+    public String describeStorage() {
+        if (memory) {
+            return "in memory";
+        }
+        String storage = wal ? "on disk, WAL" : "on disk";
+        return mmapSize > 0 ? storage + String.format(", mmap %d MB", mmapSize >> 20) : storage;
+    }
+
+    /**
+     * Summarizes the usage of the reader pool.
+     */
+    public String getPoolMetrics() {
+        return this.readers.getMetrics();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public ResultCache<QueryResult> getResultCache() {
+        return this.resultCache;
+    }
+
     @Override
-    public void close() throws Exception {
+    public synchronized void close() throws SQLException {
+        logger.info("SQLite result cache ({}): {}", name, resultCache.getStats());
+        logger.info("SQLite reader pool ({}): {}", name, readers.getMetrics());
+
+        untrackMetrics.forEach(Runnable::run);
+        readers.close();
+
         if (this.connection != null) {
             this.connection.close();
         }
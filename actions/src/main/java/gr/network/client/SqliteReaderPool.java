@@ -0,0 +1,200 @@
+package gr.network.client;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * A fixed size pool of read-only SQLite connections.
+ * Each connection keeps its own prepared statements, so a query
+ * is compiled once per connection rather than once per execution.
+ * Connections are opened lazily, up to the pool size, and a thread
+ * asking for one while all are leased waits for one to be returned.
+ * @version 1.0
+ */
+public class SqliteReaderPool implements AutoCloseable {
+
+    private final String uri;
+    private final int size;
+    private final long mmapSize;
+
+    private final BlockingQueue<PooledReader> idle;
+    private final List<PooledReader> opened = new ArrayList<>();
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    public SqliteReaderPool(String uri, int size) {
+        this(uri, size, 0);
+    }
+
+    /**
+     * @param mmapSize the bytes of the database each connection reads through memory mapped I/O, 0 for none
+     */
+    public SqliteReaderPool(String uri, int size, long mmapSize) {
+        this.uri = uri;
+        this.size = size;
+        this.mmapSize = mmapSize;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Leases a connection, opening one if the pool is not full,
+     * or waiting for one to be returned otherwise.
+     */
+    public Lease acquire() throws SQLException {
+        acquisitions.increment();
+
+        PooledReader reader = idle.poll();
+        if (reader == null) {
+            reader = openIfNotFull();
+        }
+        if (reader == null) {
+            waits.increment();
+            long start = System.nanoTime();
+            try {
+                reader = idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a SQLite connection", e);
+            } finally {
+                waitNanos.add(System.nanoTime() - start);
+            }
+        }
+        return new Lease(reader);
+    }
+
+    private PooledReader openIfNotFull() throws SQLException {
+        synchronized (opened) {
+            if (opened.size() >= size) {
+                return null;
+            }
+
+            SQLiteConfig config = new SQLiteConfig();
+            config.setReadOnly(true);
+            if (mmapSize > 0) {
+                config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSize));
+            }
+            PooledReader reader = new PooledReader(DriverManager.getConnection(uri, config.toProperties()));
+            opened.add(reader);
+            return reader;
+        }
+    }
+
+    /**
+     * Summarizes the usage of the pool.
+     */
+    public String getMetrics() {
+        int open;
+        synchronized (opened) {
+            open = opened.size();
+        }
+        return String.format(
+            "size=%d, open=%d, idle=%d, acquisitions=%d, waits=%d, waitTime=%.2f ms, statementHits=%d, statementMisses=%d",
+            size, open, idle.size(), acquisitions.sum(), waits.sum(), waitNanos.sum() / 1_000_000.0,
+            statementHits.sum(), statementMisses.sum()
+        );
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getOpenCount() {
+        synchronized (opened) {
+            return opened.size();
+        }
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        synchronized (opened) {
+            for (PooledReader reader : opened) {
+                reader.connection.close();
+            }
+            opened.clear();
+            idle.clear();
+        }
+    }
+
+    /** A pooled connection with its prepared statements. */
+    private static final class PooledReader {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledReader(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * A connection leased to a single thread until closed.
+     * Statements it prepares belong to the pool and must not be closed.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private PooledReader reader;
+
+        private Lease(PooledReader reader) {
+            this.reader = reader;
+        }
+
+        public Connection getConnection() {
+            return reader.connection;
+        }
+
+        /**
+         * Retrieves the cached statement of the given SQL,
+         * preparing it on first use.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = reader.statements.get(sql);
+            if (statement == null) {
+                statementMisses.increment();
+                statement = reader.connection.prepareStatement(sql);
+                reader.statements.put(sql, statement);
+            } else {
+                statementHits.increment();
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        /**
+         * Returns the connection to the pool.
+         */
+        @Override
+        public void close() {
+            if (reader != null) {
+                idle.offer(reader);
+                reader = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package gr.network.client;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * The layouts the Users, Courses and Actions tables can be stored in.
+ * Every layout keeps the same table and column names, so the queries
+ * run unchanged on any of them.
+ * @version 1.0
+ */
+public enum SqliteSchema {
+
+    /** Text keys over rowid tables, timestamps as text, as in create.sql. */
+    DEFAULT(
+        """
+        CREATE TABLE IF NOT EXISTS Users(
+            userId TEXT PRIMARY KEY
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS Courses(
+            courseId TEXT PRIMARY KEY
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS Actions(
+            actionId TEXT PRIMARY KEY,
+            userId TEXT,
+            courseId TEXT,
+            tmsmp DATETIME,
+            epochMillis INTEGER,
+            label INTEGER,
+            feature0 REAL,
+            feature1 REAL,
+            feature2 REAL,
+            feature3 REAL,
+            FOREIGN KEY (userId) REFERENCES Users(userId),
+            FOREIGN KEY (courseId) REFERENCES Courses(courseId)
+        )
+        """
+    ),
+
+    /**
+     * STRICT tables with integer keys, the action id being the rowid itself.
+     * The columns scans read come first, the raw timestamp last.
+     */
+    COMPACT(
+        """
+        CREATE TABLE IF NOT EXISTS Users(
+            userId INTEGER PRIMARY KEY
+        ) STRICT
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS Courses(
+            courseId INTEGER PRIMARY KEY
+        ) STRICT
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS Actions(
+            actionId INTEGER PRIMARY KEY,
+            userId INTEGER NOT NULL REFERENCES Users(userId),
+            courseId INTEGER NOT NULL REFERENCES Courses(courseId),
+            epochMillis INTEGER,
+            label INTEGER NOT NULL,
+            feature0 REAL NOT NULL,
+            feature1 REAL NOT NULL,
+            feature2 REAL NOT NULL,
+            feature3 REAL NOT NULL,
+            tmsmp TEXT
+        ) STRICT
+        """
+    ),
+
+    /**
+     * As compact, but the actions are clustered by user, in a
+     * WITHOUT ROWID table keyed on (userId, actionId), so the actions
+     * of a user are stored together.
+     */
+    CLUSTERED(
+        COMPACT.usersTable,
+        COMPACT.coursesTable,
+        """
+        CREATE TABLE IF NOT EXISTS Actions(
+            userId INTEGER NOT NULL REFERENCES Users(userId),
+            actionId INTEGER NOT NULL,
+            courseId INTEGER NOT NULL REFERENCES Courses(courseId),
+            epochMillis INTEGER,
+            label INTEGER NOT NULL,
+            feature0 REAL NOT NULL,
+            feature1 REAL NOT NULL,
+            feature2 REAL NOT NULL,
+            feature3 REAL NOT NULL,
+            tmsmp TEXT,
+            PRIMARY KEY (userId, actionId)
+        ) STRICT, WITHOUT ROWID
+        """
+    );
+
+    private final String usersTable;
+    private final String coursesTable;
+    private final String actionsTable;
+
+    SqliteSchema(String usersTable, String coursesTable, String actionsTable) {
+        this.usersTable = usersTable;
+        this.coursesTable = coursesTable;
+        this.actionsTable = actionsTable;
+    }
+
+    /**
+     * Whether the ids of actions, users and courses are stored as integers.
+     */
+    public boolean hasIntegerKeys() {
+        return this != DEFAULT;
+    }
+
+    /**
+     * Creates the Users, Courses and Actions tables, if missing.
+     */
+    public void createTables(Statement stmt) throws SQLException {
+        stmt.execute(usersTable);
+        stmt.execute(coursesTable);
+        stmt.execute(actionsTable);
+    }
+
+    /**
+     * The layout the Actions table of a database was created with.
+     * @return null if there is no Actions table yet
+     */
+    public static SqliteSchema detect(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT sql FROM sqlite_master WHERE type = 'table' AND name = 'Actions'")) {
+            if (!rs.next()) {
+                return null;
+            }
+            String sql = rs.getString(1).toUpperCase(Locale.ROOT);
+            if (sql.contains("WITHOUT ROWID")) {
+                return CLUSTERED;
+            }
+            return sql.contains("STRICT") ? COMPACT : DEFAULT;
+        }
+    }
+
+    /**
+     * Parses a layout name, such as "compact".
+     */
+    public static SqliteSchema parse(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,230 @@
+package gr.network.client;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import gr.network.cache.ResultCache;
+import gr.network.domain.QueryResult;
+import gr.network.metrics.Metrics;
+import gr.network.sketch.Hashing;
+
+/**
+ * SQLite split into shards, one database file per shard, with the
+ * actions of each user in the shard its id hashes to. Every shard
+ * also holds every course, so course lookups need no other shard.
+ * Work on the shards runs in parallel on a thread per shard.
+ * @version 1.0
+ */
+public class SqliteShards implements AutoCloseable {
+
+    /** Work done on one shard. */
+    @FunctionalInterface
+    public interface ShardTask<T> {
+        T run(int shard, SqliteConnection connection) throws Exception;
+    }
+
+    /** How long closing waits for the work running on the shards. */
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private static final Dotenv dotenv = Dotenv.configure()
+        .directory("./")
+        .load();
+
+    private final List<SqliteConnection> shards;
+    private final ExecutorService executor;
+
+    /** Cached results of queries merged from every shard. */
+    private final ResultCache<QueryResult> resultCache = new ResultCache<>(
+        Integer.parseInt(dotenv.get("RESULT_CACHE_MAX_ENTRIES", "256")),
+        Duration.ofSeconds(Long.parseLong(dotenv.get("RESULT_CACHE_TTL_SECONDS", "300")))
+    );
+
+    /** Stops exporting the merged result cache once closed, keeping the lookups counted. */
+    private final Runnable untrackMetrics;
+
+    public SqliteShards(int count) {
+        this(dotenv.get("SQLITE_URI"), count);
+    }
+
+    /**
+     * @param memory whether every shard is kept in memory instead of in its file
+     */
+    public SqliteShards(int count, boolean memory) {
+        this(dotenv.get("SQLITE_URI"), count, memory);
+    }
+
+    public SqliteShards(String uri, int count) {
+        this(uri, count, Boolean.parseBoolean(dotenv.get("SQLITE_MEMORY", "false")));
+    }
+
+    /**
+     * @param uri the URI of the unsharded database, each shard gets its own file next to it
+     */
+    public SqliteShards(String uri, int count, boolean memory) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one shard is needed, not " + count);
+        }
+        this.shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(new SqliteConnection(shardUri(uri, i), "sqlite_shard" + i, memory));
+        }
+        this.executor = Executors.newFixedThreadPool(count, Thread.ofPlatform().name("sqlite-shard-", 0).factory());
+
+        this.untrackMetrics = Metrics.resultCache("sqlite_sharded", resultCache);
+    }
+
+    /**
+     * The URI of a shard: mooc.db becomes mooc.shard0.db, mooc.shard1.db and so on.
+     */
+    static String shardUri(String uri, int shard) {
+        return SqliteConnection.siblingUri(uri, "shard" + shard);
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    public SqliteConnection getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Chooses the layout of the tables created in every shard by the next load.
+     */
+    public void setSchema(SqliteSchema schema) {
+        shards.forEach(shard -> shard.setSchema(schema));
+    }
+
+    /**
+     * The shard holding the actions of a user.
+     */
+    public int shardOf(String userId) {
+        return (int) Long.remainderUnsigned(Hashing.hash64(userId), shards.size());
+    }
+
+    /**
+     * Runs the task on every shard at once.
+     * @return the result of each shard, in shard order
+     * @throws Exception the first failure of any shard, once all have finished
+     */
+    public <T> List<T> onEachShard(ShardTask<T> task) throws Exception {
+        List<Integer> all = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            all.add(i);
+        }
+        return onShards(all, task);
+    }
+
+    /**
+     * Runs the task on the given shards at once, such as the one shard of a user.
+     * A single shard runs on the calling thread.
+     * @return the result of each given shard, in the given order
+     * @throws Exception the first failure of any shard, once all have finished
+     */
+    public <T> List<T> onShards(List<Integer> targets, ShardTask<T> task) throws Exception {
+        if (targets.size() == 1) {
+            int shard = targets.get(0);
+            List<T> results = new ArrayList<>(1);
+            results.add(task.run(shard, shards.get(shard)));
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(targets.size());
+        for (int shard : targets) {
+            futures.add(executor.submit(() -> task.run(shard, shards.get(shard))));
+        }
+
+        List<T> results = new ArrayList<>(targets.size());
+        Exception failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception cause ? cause : e;
+                }
+                results.add(null);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Restores every in-memory shard from its file, all at once.
+     * @return the time taken in milliseconds
+     */
+    public double restore() throws Exception {
+        long start = System.nanoTime();
+        onEachShard((shard, connection) -> connection.restore());
+        resultCache.bumpVersion();
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    /**
+     * Writes every in-memory shard to its file, all at once.
+     * @return the time taken in milliseconds
+     */
+    public double snapshot() throws Exception {
+        long start = System.nanoTime();
+        onEachShard((shard, connection) -> connection.snapshot());
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    /**
+     * Describes where the shards are read from.
+     */
+    public String describeStorage() {
+        return shards.size() + " shards, " + shards.get(0).describeStorage();
+    }
+
+    public ResultCache<QueryResult> getResultCache() {
+        return this.resultCache;
+    }
+
+    /**
+     * Waits for the work running on the shards, then closes every shard,
+     * even when closing one of them fails.
+     * @throws SQLException the first failure to close a shard
+     */
+    @Override
+    public void close() throws SQLException {
+        untrackMetrics.run();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        SQLException failure = null;
+        for (SqliteConnection shard : shards) {
+            try {
+                shard.close();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
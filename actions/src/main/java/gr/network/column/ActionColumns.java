@@ -0,0 +1,114 @@
+package gr.network.column;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gr.network.domain.Action;
+
+/**
+ * The actions as primitive columns, one array per feature and one for the
+ * labels, with the actions of every course stored together. A per-course
+ * aggregate is then a kernel over one contiguous range of a column, with
+ * no course id compared along the way.
+ * @version 1.0
+ */
+public final class ActionColumns {
+
+    /** The features, feature0 to feature3. */
+    public static final int FEATURES = 4;
+
+    private final List<String> courses;
+
+    /** The rows of every course, from {@code offsets[course]} up to {@code offsets[course + 1]}. */
+    private final int[] offsets;
+
+    private final double[][] features;
+    private final int[] labels;
+
+    private ActionColumns(List<String> courses, int[] offsets, double[][] features, int[] labels) {
+        this.courses = courses;
+        this.offsets = offsets;
+        this.features = features;
+        this.labels = labels;
+    }
+
+    /**
+     * Lays the actions out by course, in the order their courses first appear:
+     * the rows of every course are counted, then every action is written at the
+     * next row of its course.
+     */
+    public static ActionColumns of(Collection<Action> actions) {
+        Map<String, Integer> courseIndex = new HashMap<>();
+        List<String> courses = new ArrayList<>();
+        int[] courseOf = new int[actions.size()];
+        int row = 0;
+        for (Action action : actions) {
+            courseOf[row++] = courseIndex.computeIfAbsent(action.getCourse(), course -> {
+                courses.add(course);
+                return courses.size() - 1;
+            });
+        }
+
+        int[] offsets = new int[courses.size() + 1];
+        for (int course : courseOf) {
+            offsets[course + 1]++;
+        }
+        for (int i = 0; i < courses.size(); i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] next = offsets.clone();
+        double[][] features = new double[FEATURES][actions.size()];
+        int[] labels = new int[actions.size()];
+        row = 0;
+        for (Action action : actions) {
+            int at = next[courseOf[row++]]++;
+            features[0][at] = action.getFeature0();
+            features[1][at] = action.getFeature1();
+            features[2][at] = action.getFeature2();
+            features[3][at] = action.getFeature3();
+            labels[at] = action.getLabel();
+        }
+        return new ActionColumns(List.copyOf(courses), offsets, features, labels);
+    }
+
+    public int getCourseCount() {
+        return courses.size();
+    }
+
+    public String getCourse(int course) {
+        return courses.get(course);
+    }
+
+    /** The first row of the course. */
+    public int from(int course) {
+        return offsets[course];
+    }
+
+    /** The row after the last one of the course. */
+    public int to(int course) {
+        return offsets[course + 1];
+    }
+
+    public int getRows() {
+        return labels.length;
+    }
+
+    /** The column of a feature, all courses included. */
+    public double[] feature(int feature) {
+        return features[feature];
+    }
+
+    /** The column of the labels, all courses included. */
+    public int[] labels() {
+        return labels;
+    }
+
+    /** The bytes of every column. */
+    public long sizeInBytes() {
+        return (long) getRows() * (FEATURES * Double.BYTES + Integer.BYTES);
+    }
+}
@@ -0,0 +1,157 @@
+package gr.network.column;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the aggregation kernels on the same columns, single threaded.
+ * Every kernel runs over the four feature columns (or the labels) whole,
+ * and its throughput is set against copying the same columns, which reads
+ * and writes each byte once, both counted, as a measure of the memory bandwidth.
+ * The per-course aggregation of every course is timed the same way.
+ * Throughputs count the bytes each kernel reads: the per-course aggregation
+ * reads feature2 twice, once for its statistics and once for its count
+ * above zero, and the labels once.
+ * @version 1.1
+ */
+public class AggregationBenchmark {
+
+    private final Logger logger = LoggerFactory.getLogger(AggregationBenchmark.class);
+
+    /** Runs of every kernel, after the ones warming the JIT up. */
+    private static final int RUNS = 15;
+    private static final int WARMUP_RUNS = 50;
+
+    private final ActionColumns columns;
+
+    /** The columns are copied into, allocated once so copying writes no zeroes first. */
+    private final double[][] copies;
+
+    /** Keeps the results alive, so the JIT cannot drop the work. */
+    private double blackhole;
+
+    public AggregationBenchmark(ActionColumns columns) {
+        this.columns = columns;
+        this.copies = new double[ActionColumns.FEATURES][columns.getRows()];
+    }
+
+    /**
+     * Times every kernel of every implementation available, then prints them side by side.
+     */
+    public void run() {
+        List<AggregationKernels> implementations = new ArrayList<>(List.of(AggregationKernels.scalar()));
+        if (AggregationKernels.isVectorAvailable()) {
+            implementations.add(AggregationKernels.vector());
+        } else {
+            logger.warn("Running the scalar kernels only, build with -Pvector and start the JVM with"
+                + " --add-modules jdk.incubator.vector for the Vector API ones");
+        }
+
+        long featureBytes = (long) columns.getRows() * ActionColumns.FEATURES * Double.BYTES;
+        long labelBytes = (long) columns.getRows() * Integer.BYTES;
+        // a copy moves every byte twice, read from the column and written to the copy
+        double copyGbs = 2 * featureBytes / time(this::copy) / 1e9;
+
+        Map<String, Long> bytesRead = new LinkedHashMap<>();
+        for (String kernel : List.of("sum", "min", "max", "sum, min, max", "count > 0")) {
+            bytesRead.put(kernel, featureBytes);
+        }
+        bytesRead.put("count label = 1", labelBytes);
+        bytesRead.put("per course, all", featureBytes + (long) columns.getRows() * Double.BYTES + labelBytes);
+
+        Map<String, double[]> seconds = new LinkedHashMap<>();
+        for (int i = 0; i < implementations.size(); i++) {
+            AggregationKernels kernels = implementations.get(i);
+            put(seconds, "sum", i, implementations.size(), time(() -> forEachFeature(kernels::sum)));
+            put(seconds, "min", i, implementations.size(), time(() -> forEachFeature(kernels::min)));
+            put(seconds, "max", i, implementations.size(), time(() -> forEachFeature(kernels::max)));
+            put(seconds, "sum, min, max", i, implementations.size(),
+                time(() -> forEachFeature((values, from, to) -> kernels.sumMinMax(values, from, to)[0])));
+            put(seconds, "count > 0", i, implementations.size(),
+                time(() -> forEachFeature((values, from, to) -> kernels.countAbove(values, from, to, 0))));
+            put(seconds, "count label = 1", i, implementations.size(),
+                time(() -> blackhole += kernels.countEqual(columns.labels(), 0, columns.getRows(), 1)));
+            put(seconds, "per course, all", i, implementations.size(),
+                time(() -> blackhole += CourseAggregates.compute(columns, kernels).getStats().size()));
+        }
+
+        printSummary(implementations, seconds, bytesRead, copyGbs);
+    }
+
+    private static void put(Map<String, double[]> seconds, String kernel, int implementation, int implementations,
+                            double value) {
+        seconds.computeIfAbsent(kernel, k -> new double[implementations])[implementation] = value;
+    }
+
+    private interface Kernel {
+        double apply(double[] values, int from, int to);
+    }
+
+    private void forEachFeature(Kernel kernel) {
+        for (int feature = 0; feature < ActionColumns.FEATURES; feature++) {
+            blackhole += kernel.apply(columns.feature(feature), 0, columns.getRows());
+        }
+    }
+
+    private void copy() {
+        for (int feature = 0; feature < ActionColumns.FEATURES; feature++) {
+            double[] column = columns.feature(feature);
+            System.arraycopy(column, 0, copies[feature], 0, column.length);
+        }
+    }
+
+    /**
+     * The median seconds of the task.
+     */
+    private static double time(Runnable task) {
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            task.run();
+        }
+        double[] times = new double[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            task.run();
+            times[run] = (System.nanoTime() - start) / 1e9;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    /**
+     * Prints the median time and throughput of every kernel, per implementation,
+     * with the speedup of each over the scalar one.
+     */
+    private void printSummary(List<AggregationKernels> implementations, Map<String, double[]> seconds,
+                              Map<String, Long> bytesRead, double copyGbs) {
+        int width = 20 + 32 * implementations.size();
+
+        System.out.println("\n" + "=".repeat(width));
+        System.out.printf("AGGREGATION KERNELS (%d actions, %d courses, %.1f MB of columns, median of %d runs)\n",
+            columns.getRows(), columns.getCourseCount(), columns.sizeInBytes() / (1024.0 * 1024.0), RUNS);
+        System.out.println("=".repeat(width));
+        System.out.printf("%-20s", "");
+        implementations.forEach(kernels -> System.out.printf("%32s", kernels.name()));
+        System.out.println();
+
+        for (Map.Entry<String, double[]> kernel : seconds.entrySet()) {
+            long bytes = bytesRead.get(kernel.getKey());
+            System.out.printf("%-20s", kernel.getKey());
+            double[] times = kernel.getValue();
+            for (double time : times) {
+                String cell = String.format("%.3f ms, %.1f GB/s (%.2fx)", time * 1000, bytes / time / 1e9,
+                    times[0] / time);
+                System.out.printf("%32s", cell);
+            }
+            System.out.println();
+        }
+        System.out.println("=".repeat(width));
+        System.out.printf("Copying the feature columns: %.1f GB/s, read and written\n", copyGbs);
+        logger.debug("Checksum of every run: {}", blackhole);
+    }
+}
@@ -0,0 +1,70 @@
+package gr.network.column;
+
+/**
+ * Aggregates over a range of a primitive column, {@code from} inclusive
+ * to {@code to} exclusive. Implemented with plain loops, and with the
+ * incubating Vector API when built with the {@code vector} profile and
+ * the JVM runs with {@code --add-modules jdk.incubator.vector}.
+ * @version 1.1
+ */
+public interface AggregationKernels {
+
+    /** The name of the implementation, as reported. */
+    String name();
+
+    double sum(double[] values, int from, int to);
+
+    /** The least value, positive infinity if the range is empty. */
+    double min(double[] values, int from, int to);
+
+    /** The greatest value, negative infinity if the range is empty. */
+    double max(double[] values, int from, int to);
+
+    /**
+     * The sum, least and greatest value in one pass, so the range is read once.
+     * @return the sum, the minimum and the maximum, in this order
+     */
+    double[] sumMinMax(double[] values, int from, int to);
+
+    /** The values greater than the threshold. */
+    int countAbove(double[] values, int from, int to, double threshold);
+
+    /** The values equal to the one given. */
+    int countEqual(int[] values, int from, int to, int value);
+
+    /** The loops of the JIT, on every JVM. */
+    static AggregationKernels scalar() {
+        return new ScalarKernels();
+    }
+
+    /**
+     * Whether the Vector API kernels were built and their module was added to this JVM.
+     */
+    static boolean isVectorAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && AggregationKernels.class.getResource("VectorKernels.class") != null;
+    }
+
+    /**
+     * The Vector API kernels, using the widest vectors of the CPU.
+     * They are loaded by name, since only the vector profile builds them.
+     * @throws IllegalStateException if they were not built or the JVM runs without the Vector API module
+     */
+    static AggregationKernels vector() {
+        if (!isVectorAvailable()) {
+            throw new IllegalStateException("The Vector API kernels need a build with -Pvector"
+                + " and a JVM started with --add-modules jdk.incubator.vector");
+        }
+        try {
+            return (AggregationKernels) Class.forName("gr.network.column.VectorKernels").getDeclaredConstructor()
+                .newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load the Vector API kernels", e);
+        }
+    }
+
+    /** The Vector API kernels if available, otherwise the scalar ones. */
+    static AggregationKernels best() {
+        return isVectorAvailable() ? vector() : scalar();
+    }
+}
@@ -0,0 +1,105 @@
+package gr.network.column;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import gr.network.read.sink.ListRow;
+import gr.network.read.sink.ResultSink;
+
+/**
+ * The aggregates of every course over the action columns: the sum, mean,
+ * minimum and maximum of every feature, the actions with label 1, as
+ * {@code label1pertarget} counts them on the databases, and the actions
+ * with a positive feature2. The latter counts actions, not the distinct
+ * user and course pairs {@code positivefeature2} lists.
+ * @version 1.1
+ */
+public final class CourseAggregates {
+
+    /** The aggregates of one course. */
+    public record Stats(String course, int actions, double[] sums, double[] mins, double[] maxs,
+                        int positiveFeature2, int labelOne) {
+
+        public double mean(int feature) {
+            return actions == 0 ? 0 : sums[feature] / actions;
+        }
+    }
+
+    private final List<Stats> stats;
+
+    private CourseAggregates(List<Stats> stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Aggregates every course, reading the range of the course once per column,
+     * and feature2 once more for its positive values.
+     */
+    public static CourseAggregates compute(ActionColumns columns, AggregationKernels kernels) {
+        List<Stats> stats = new ArrayList<>(columns.getCourseCount());
+        for (int course = 0; course < columns.getCourseCount(); course++) {
+            int from = columns.from(course);
+            int to = columns.to(course);
+
+            double[] sums = new double[ActionColumns.FEATURES];
+            double[] mins = new double[ActionColumns.FEATURES];
+            double[] maxs = new double[ActionColumns.FEATURES];
+            for (int feature = 0; feature < ActionColumns.FEATURES; feature++) {
+                double[] aggregates = kernels.sumMinMax(columns.feature(feature), from, to);
+                sums[feature] = aggregates[0];
+                mins[feature] = aggregates[1];
+                maxs[feature] = aggregates[2];
+            }
+
+            stats.add(new Stats(columns.getCourse(course), to - from, sums, mins, maxs,
+                kernels.countAbove(columns.feature(2), from, to, 0),
+                kernels.countEqual(columns.labels(), from, to, 1)));
+        }
+        return new CourseAggregates(stats);
+    }
+
+    public List<Stats> getStats() {
+        return stats;
+    }
+
+    /**
+     * Passes the courses with the most label 1 actions, the most actions with
+     * a positive feature2, and the feature means of the busiest courses to the sink.
+     */
+    public void report(ResultSink sink, int n) throws IOException {
+        reportCount(sink, "Label=1 actions per target (columns)", "label_1_count", Stats::labelOne, n);
+        reportCount(sink, "Feature2 > 0 actions per target (columns)", "positive_feature2_count",
+            Stats::positiveFeature2, n);
+
+        String label = "Feature means of the busiest targets (columns)";
+        sink.begin(label, List.of("targetId", "actions", "feature0", "feature1", "feature2", "feature3"));
+        for (Stats course : top(Stats::actions, n)) {
+            sink.accept(new ListRow(List.of(course.course(), course.actions(),
+                course.mean(0), course.mean(1), course.mean(2), course.mean(3))));
+        }
+        System.out.println("\n> " + label);
+        sink.end();
+    }
+
+    private void reportCount(ResultSink sink, String label, String column, ToIntFunction<Stats> count, int n)
+            throws IOException {
+        sink.begin(label, List.of("targetId", column));
+        for (Stats course : top(count, n)) {
+            if (count.applyAsInt(course) > 0) {
+                sink.accept(new ListRow(List.of(course.course(), count.applyAsInt(course))));
+            }
+        }
+        System.out.println("\n> " + label);
+        sink.end();
+    }
+
+    private List<Stats> top(ToIntFunction<Stats> count, int n) {
+        return stats.stream()
+            .sorted(Comparator.comparingInt(count).reversed().thenComparing(Stats::course))
+            .limit(n)
+            .toList();
+    }
+}
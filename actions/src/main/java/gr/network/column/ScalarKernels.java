@@ -0,0 +1,76 @@
+package gr.network.column;
+
+/**
+ * The kernels as plain loops, one value at a time. The JIT keeps
+ * floating point sums in order, so they are not vectorized.
+ * @version 1.0
+ */
+final class ScalarKernels implements AggregationKernels {
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public double sum(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double min(double[] values, int from, int to) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    @Override
+    public double max(double[] values, int from, int to) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    @Override
+    public double[] sumMinMax(double[] values, int from, int to) {
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        return new double[] {sum, min, max};
+    }
+
+    @Override
+    public int countAbove(double[] values, int from, int to, double threshold) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (values[i] > threshold) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int countEqual(int[] values, int from, int to, int value) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (values[i] == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,133 @@
+package gr.network.column;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels over whole vectors of the widest size the CPU supports,
+ * with the values left over at the end of a range taken one at a time.
+ * Sums keep two vectors of partial sums, so consecutive additions do not
+ * wait on each other, and are added in another order than the scalar ones,
+ * so they may differ in their last bits.
+ * Only loaded once {@link AggregationKernels#vector()} found the module.
+ * @version 1.0
+ */
+final class VectorKernels implements AggregationKernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public String name() {
+        return "vector (" + DOUBLES.vectorBitSize() + "-bit)";
+    }
+
+    @Override
+    public double sum(double[] values, int from, int to) {
+        int lanes = DOUBLES.length();
+        DoubleVector even = DoubleVector.zero(DOUBLES);
+        DoubleVector odd = DoubleVector.zero(DOUBLES);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from) - lanes; i < bound; i += 2 * lanes) {
+            even = even.add(DoubleVector.fromArray(DOUBLES, values, i));
+            odd = odd.add(DoubleVector.fromArray(DOUBLES, values, i + lanes));
+        }
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += lanes) {
+            even = even.add(DoubleVector.fromArray(DOUBLES, values, i));
+        }
+
+        double sum = even.add(odd).reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double min(double[] values, int from, int to) {
+        DoubleVector min = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            min = min.min(DoubleVector.fromArray(DOUBLES, values, i));
+        }
+
+        double result = min.reduceLanes(VectorOperators.MIN);
+        for (; i < to; i++) {
+            result = Math.min(result, values[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public double max(double[] values, int from, int to) {
+        DoubleVector max = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            max = max.max(DoubleVector.fromArray(DOUBLES, values, i));
+        }
+
+        double result = max.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++) {
+            result = Math.max(result, values[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public double[] sumMinMax(double[] values, int from, int to) {
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        DoubleVector min = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+        DoubleVector max = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            DoubleVector vector = DoubleVector.fromArray(DOUBLES, values, i);
+            sum = sum.add(vector);
+            min = min.min(vector);
+            max = max.max(vector);
+        }
+
+        double[] result = {
+            sum.reduceLanes(VectorOperators.ADD),
+            min.reduceLanes(VectorOperators.MIN),
+            max.reduceLanes(VectorOperators.MAX)
+        };
+        for (; i < to; i++) {
+            result[0] += values[i];
+            result[1] = Math.min(result[1], values[i]);
+            result[2] = Math.max(result[2], values[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public int countAbove(double[] values, int from, int to, double threshold) {
+        int count = 0;
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            count += DoubleVector.fromArray(DOUBLES, values, i).compare(VectorOperators.GT, threshold).trueCount();
+        }
+        for (; i < to; i++) {
+            if (values[i] > threshold) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int countEqual(int[] values, int from, int to, int value) {
+        int count = 0;
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            count += IntVector.fromArray(INTS, values, i).compare(VectorOperators.EQ, value).trueCount();
+        }
+        for (; i < to; i++) {
+            if (values[i] == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
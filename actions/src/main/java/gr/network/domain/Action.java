@@ -1,11 +1,16 @@
 package gr.network.domain;
 
+import java.util.Objects;
+
 import com.opencsv.bean.CsvBindByName;
 
 /**
  * Represents an action edge in the graph.
  * Each action is associated with a user and a course.
- * @version 1.0
+ * Actions are equal when they have the same id, so a set keeps one of
+ * the rows repeating an action, as the databases do; actions without
+ * an id are only equal to themselves.
+ * @version 1.1
  */
 public class Action {
     @CsvBindByName(column = "ACTIONID")
@@ -35,6 +40,9 @@ public class Action {
     @CsvBindByName(column = "LABEL")
     private int label;
 
+    /** The timestamp in epoch milliseconds, parsed once at ingest. */
+    private long epochMillis;
+
     public Action() {}
 
     public String getAction() { return action; }
@@ -62,4 +70,19 @@ public class Action {
 
     public int getLabel() { return label; }
     public void setLabel(int label) { this.label = label; }
+
+    public long getEpochMillis() { return epochMillis; }
+    public void setEpochMillis(long epochMillis) { this.epochMillis = epochMillis; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (action == null || !(o instanceof Action other)) return false;
+        return action.equals(other.action);
+    }
+
+    @Override
+    public int hashCode() {
+        return action == null ? System.identityHashCode(this) : action.hashCode();
+    }
 }
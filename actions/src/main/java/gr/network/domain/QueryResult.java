@@ -0,0 +1,14 @@
+package gr.network.domain;
+
+import java.util.List;
+
+/**
+ * A fully materialized query result,
+ * with the column names and the values of each row.
+ * @version 1.0
+ */
+public record QueryResult(List<String> columns, List<List<Object>> rows) {
+
+    /** Results with more rows are streamed only, never materialized. */
+    public static final int MAX_ROWS = 10_000;
+}
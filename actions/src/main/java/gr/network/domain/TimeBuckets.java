@@ -0,0 +1,68 @@
+package gr.network.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The minute, hour and day buckets of the rollups.
+ * A time range is covered by a handful of aligned buckets,
+ * the coarsest ones that fit, so range queries read a few
+ * rollup rows instead of every action in the range.
+ * @version 1.0
+ */
+public final class TimeBuckets {
+
+    public static final long MINUTE = 60_000L;
+    public static final long HOUR = 60 * MINUTE;
+    public static final long DAY = 24 * HOUR;
+
+    /** The bucket sizes kept by the rollups, finest first. */
+    public static final long[] SIZES = {MINUTE, HOUR, DAY};
+
+    /**
+     * Buckets of one size starting within [from, to).
+     */
+    public record Segment(long size, long from, long to) {}
+
+    private TimeBuckets() {}
+
+    /**
+     * The start of the bucket of the given size holding the time.
+     */
+    public static long floor(long epochMillis, long size) {
+        return Math.floorDiv(epochMillis, size) * size;
+    }
+
+    /**
+     * Covers [from, to) with the fewest buckets, both bounds
+     * rounded down to whole minutes, the finest bucket size.
+     * @return at most five segments, from coarsest to finest
+     */
+    public static List<Segment> cover(long from, long to) {
+        List<Segment> segments = new ArrayList<>();
+        cover(floor(from, MINUTE), floor(to, MINUTE), SIZES.length - 1, segments);
+        return segments;
+    }
+
+    private static void cover(long from, long to, int level, List<Segment> segments) {
+        if (from >= to) {
+            return;
+        }
+        long size = SIZES[level];
+        if (level == 0) {
+            segments.add(new Segment(size, from, to));
+            return;
+        }
+
+        long start = floor(from + size - 1, size);
+        long end = floor(to, size);
+        if (start >= end) {
+            cover(from, to, level - 1, segments);
+            return;
+        }
+
+        segments.add(new Segment(size, start, end));
+        cover(from, start, level - 1, segments);
+        cover(end, to, level - 1, segments);
+    }
+}
@@ -0,0 +1,58 @@
+package gr.network.domain;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Converts action timestamps to epoch milliseconds.
+ * The MOOC data holds seconds since the start of the recording,
+ * possibly fractional; ISO-8601 dates and date-times (UTC) are
+ * accepted too, so other exports and user input parse the same way.
+ * @version 1.0
+ */
+public final class Timestamps {
+
+    public static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    private Timestamps() {}
+
+    /**
+     * Parses a timestamp to epoch milliseconds.
+     * @throws IllegalArgumentException if the timestamp is in no known format
+     */
+    public static long toEpochMillis(String timestamp) {
+        String value = timestamp.trim();
+
+        try {
+            return Math.round(Double.parseDouble(value) * 1000);
+        } catch (NumberFormatException e) {
+            // not seconds, try the date formats
+        }
+
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // no zone, try a local date-time
+        }
+
+        try {
+            return LocalDateTime.parse(value.replace(' ', 'T'))
+                .toInstant(ZoneOffset.UTC)
+                .toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // no time, try a plain date
+        }
+
+        try {
+            return LocalDate.parse(value)
+                .atStartOfDay(ZoneOffset.UTC)
+                .toInstant()
+                .toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Unknown timestamp format: " + timestamp, e);
+        }
+    }
+}
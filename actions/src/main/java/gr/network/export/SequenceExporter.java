@@ -0,0 +1,199 @@
+package gr.network.export;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gr.network.domain.Action;
+
+/**
+ * Exports the actions of every user as a time-ordered sequence, in flat
+ * little-endian binary files that can be memory mapped as they are:
+ * <ul>
+ *   <li>{@code offsets.bin}: int64, one per user plus one, the actions of user
+ *   {@code u} being rows {@code offsets[u]} up to {@code offsets[u + 1]}</li>
+ *   <li>{@code timestamps.bin}: int64 epoch milliseconds, one per action</li>
+ *   <li>{@code features.bin}: float32, four per action, feature0 to feature3</li>
+ *   <li>{@code labels.bin}: int8, one per action</li>
+ *   <li>{@code users.txt}: the id of every user, one per line, in the order of the offsets</li>
+ *   <li>{@code manifest.json}: the type and shape of every file</li>
+ * </ul>
+ * Users are ordered by id, shorter ids first so numeric ids are in numeric
+ * order, and the actions of every user by timestamp, then action id.
+ * @version 1.0
+ */
+public class SequenceExporter {
+
+    private final Logger logger = LoggerFactory.getLogger(SequenceExporter.class);
+
+    /** The order of the actions within a sequence. */
+    private static final Comparator<Action> TIME_ORDER = Comparator.comparingLong(Action::getEpochMillis)
+        .thenComparing(Action::getAction, SequenceExporter::compareIds);
+
+    /** The size of the buffer every file is written through. */
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final Path directory;
+
+    /** What was exported, and the time of every step. */
+    public record Summary(int users, int actions, long bytes, double groupMs, double sortMs, double writeMs) {}
+
+    public SequenceExporter() {
+        this(Path.of("sequences"));
+    }
+
+    public SequenceExporter(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Groups the actions by user, sorts every sequence on its own thread, and writes the files.
+     */
+    public Summary export(Collection<Action> actions) throws IOException {
+        long start = System.nanoTime();
+        // number the users as they come, in one pass over the actions
+        Map<String, Integer> userIndex = new HashMap<>();
+        Action[] unordered = new Action[actions.size()];
+        int[] userOf = new int[actions.size()];
+        int row = 0;
+        for (Action action : actions) {
+            unordered[row] = action;
+            userOf[row++] = userIndex.computeIfAbsent(action.getUser(), user -> userIndex.size());
+        }
+
+        // then renumber them by id
+        String[] users = userIndex.keySet().toArray(String[]::new);
+        Arrays.sort(users, SequenceExporter::compareIds);
+        int[] rank = new int[users.length];
+        for (int i = 0; i < users.length; i++) {
+            rank[userIndex.get(users[i])] = i;
+        }
+
+        // count the actions of every user, then place each at the next row of its user
+        long[] offsets = new long[users.length + 1];
+        for (int i = 0; i < unordered.length; i++) {
+            userOf[i] = rank[userOf[i]];
+            offsets[userOf[i] + 1]++;
+        }
+        for (int i = 0; i < users.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        Action[] rows = new Action[unordered.length];
+        long[] next = offsets.clone();
+        for (int i = 0; i < unordered.length; i++) {
+            rows[(int) next[userOf[i]]++] = unordered[i];
+        }
+        double groupMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        start = System.nanoTime();
+        IntStream.range(0, users.length).parallel()
+            .forEach(user -> Arrays.sort(rows, (int) offsets[user], (int) offsets[user + 1], TIME_ORDER));
+        double sortMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        start = System.nanoTime();
+        Files.createDirectories(directory);
+        List<Runnable> writers = List.of(
+            () -> write("offsets.bin", offsets.length, Long.BYTES, (buffer, i) -> buffer.putLong(offsets[i])),
+            () -> write("timestamps.bin", rows.length, Long.BYTES,
+                (buffer, i) -> buffer.putLong(rows[i].getEpochMillis())),
+            () -> write("features.bin", rows.length, 4 * Float.BYTES, (buffer, i) -> buffer
+                .putFloat((float) rows[i].getFeature0())
+                .putFloat((float) rows[i].getFeature1())
+                .putFloat((float) rows[i].getFeature2())
+                .putFloat((float) rows[i].getFeature3())),
+            () -> write("labels.bin", rows.length, Byte.BYTES, (buffer, i) -> buffer.put((byte) rows[i].getLabel()))
+        );
+        try {
+            writers.parallelStream().forEach(Runnable::run);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.write(directory.resolve("users.txt"), Arrays.asList(users));
+        Files.writeString(directory.resolve("manifest.json"), manifest(users.length, rows.length));
+        double writeMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        long bytes = 0;
+        for (String file : List.of("offsets.bin", "timestamps.bin", "features.bin", "labels.bin", "users.txt")) {
+            bytes += Files.size(directory.resolve(file));
+        }
+        logger.info("Exported {} sequences of {} actions to {}", users.length, rows.length, directory);
+        return new Summary(users.length, rows.length, bytes, groupMs, sortMs, writeMs);
+    }
+
+    /** Writes one row of a file into the buffer. */
+    private interface RowWriter {
+        void put(ByteBuffer buffer, int row);
+    }
+
+    /**
+     * Writes the rows of a file in little-endian order, a buffer at a time.
+     */
+    private void write(String name, int rows, int rowBytes, RowWriter writer) {
+        try (FileChannel channel = FileChannel.open(directory.resolve(name),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < rows; i++) {
+                if (buffer.remaining() < rowBytes) {
+                    drain(channel, buffer);
+                }
+                writer.put(buffer, i);
+            }
+            drain(channel, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * The type and shape of every file, with numpy type codes.
+     */
+    private static String manifest(int users, int actions) {
+        return """
+            {
+              "users": %d,
+              "actions": %d,
+              "byteOrder": "little-endian",
+              "order": "users by id, the actions of each by epochMillis then action id",
+              "files": {
+                "offsets.bin": {"dtype": "<i8", "shape": [%d]},
+                "timestamps.bin": {"dtype": "<i8", "shape": [%d]},
+                "features.bin": {"dtype": "<f4", "shape": [%d, 4]},
+                "labels.bin": {"dtype": "|i1", "shape": [%d]},
+                "users.txt": {"lines": %d}
+              }
+            }
+            """.formatted(users, actions, users + 1, actions, actions, actions, users);
+    }
+
+    /** Shorter ids first, so numeric ids compare as numbers, then by their characters. */
+    private static int compareIds(String a, String b) {
+        return a.length() != b.length() ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+    }
+}
@@ -0,0 +1,73 @@
+package gr.network.generate;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.random.RandomGenerator;
+
+/**
+ * Draws indexes with given weights in constant time, with Vose's alias
+ * method: every index gets a slot holding its own share of the weight and
+ * the rest of another index, so one uniform picks a slot and another
+ * picks within it.
+ * @version 1.0
+ */
+final class AliasTable {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    AliasTable(double[] weights) {
+        int n = weights.length;
+        probability = new double[n];
+        alias = new int[n];
+
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double[] scaled = new double[n];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            (scaled[i] < 1 ? small : large).push(i);
+        }
+
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.pop();
+            int more = large.pop();
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            (scaled[more] < 1 ? small : large).push(more);
+        }
+        // what is left holds a whole slot, up to rounding
+        while (!large.isEmpty()) {
+            probability[large.pop()] = 1;
+        }
+        while (!small.isEmpty()) {
+            probability[small.pop()] = 1;
+        }
+    }
+
+    /**
+     * The weights of the rank-frequency law {@code rank^-exponent}, the first index ranking first.
+     */
+    static AliasTable ofRankLaw(int n, double exponent) {
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = Math.pow(i + 1, -exponent);
+        }
+        return new AliasTable(weights);
+    }
+
+    /** An index, from two uniforms in [0, 1). */
+    int sample(double slot, double within) {
+        int i = Math.min((int) (slot * probability.length), probability.length - 1);
+        return within < probability[i] ? i : alias[i];
+    }
+
+    int sample(RandomGenerator random) {
+        return sample(random.nextDouble(), random.nextDouble());
+    }
+}
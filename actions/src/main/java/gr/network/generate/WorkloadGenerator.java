@@ -0,0 +1,278 @@
+package gr.network.generate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+/**
+ * Writes synthetic actions in the column layout of the MOOC file, shaped by
+ * a {@link WorkloadProfile}:
+ * <ul>
+ *   <li>users act with the profile's rank-frequency law, user {@code 0} the most</li>
+ *   <li>every user has a main course, drawn by popularity, and keeps to it for
+ *   some of its actions, drawing the others by popularity, so that its main course
+ *   takes the profile's share of its actions</li>
+ *   <li>timestamps spread over the profile's span, in increasing order, and
+ *   action ids follow them, as in the MOOC file</li>
+ *   <li>features are normal with the profile's means and deviations, and
+ *   labels are 1 with the profile's ratio</li>
+ * </ul>
+ * The file is cut in slices of rows generated on parallel threads and
+ * written in order, and every slice draws from its own generator seeded by
+ * the seed and the slice, so a seed gives the same file on any number of threads.
+ * @version 1.0
+ */
+public class WorkloadGenerator {
+
+    private final Logger logger = LoggerFactory.getLogger(WorkloadGenerator.class);
+
+    private static final Dotenv dotenv = Dotenv.configure()
+        .directory("./")
+        .load();
+
+    static final String HEADER = "ACTIONID,USERID,TARGETID,TIMESTAMP,FEATURE0,FEATURE1,FEATURE2,FEATURE3,LABEL\n";
+
+    /** Rows generated as one task. */
+    private static final int SLICE_ROWS = 1 << 16;
+
+    private final long seed;
+    private final int threads;
+
+    /** What was generated, and how long it took. */
+    public record Summary(long actions, long bytes, double ms) {}
+
+    public WorkloadGenerator() {
+        this(Long.parseLong(dotenv.get("GENERATOR_SEED", "42")),
+            Integer.parseInt(dotenv.get("GENERATOR_THREADS", "0")));
+    }
+
+    /**
+     * @param threads the threads generating slices, all processors if not positive
+     */
+    public WorkloadGenerator(long seed, int threads) {
+        this.seed = seed;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Where the workload fitted from a file is written at a scale:
+     * {@code generated/<name>-x<scale>.csv}.
+     */
+    public static Path outputFile(String fileName, double scale) {
+        String name = Path.of(fileName).getFileName().toString().replaceFirst("\\.csv$", "");
+        String factor = scale == Math.rint(scale) ? String.valueOf((long) scale) : String.valueOf(scale);
+        return Path.of("generated", name + "-x" + factor + ".csv");
+    }
+
+    /**
+     * Writes the actions of the profile to the file, replacing it.
+     */
+    public Summary generate(WorkloadProfile profile, Path file) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        AliasTable users = AliasTable.ofRankLaw(profile.users(), profile.userExponent());
+        AliasTable courses = AliasTable.ofRankLaw(profile.courses(), profile.courseExponent());
+        double stay = stayOnMainCourse(profile);
+        long slices = (profile.actions() + SLICE_ROWS - 1) / SLICE_ROWS;
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long bytes = 0;
+        try (OutputStream out = Files.newOutputStream(file)) {
+            byte[] header = HEADER.getBytes();
+            out.write(header);
+            bytes += header.length;
+
+            // a few slices ahead of the one written, so every thread keeps busy
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            for (long slice = 0; slice < slices; slice++) {
+                long first = slice * SLICE_ROWS;
+                pending.add(pool.submit(() -> slice(profile, users, courses, stay, first)));
+                if (pending.size() >= 2 * threads) {
+                    bytes += write(out, pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                bytes += write(out, pending.poll());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double ms = (System.nanoTime() - start) / 1_000_000.0;
+        logger.info("Generated {} actions, {} MB, in {} ms ({} MB/s)", profile.actions(),
+            String.format("%.1f", bytes / (1024.0 * 1024.0)), String.format("%.2f", ms),
+            String.format("%.1f", bytes / (1024.0 * 1024.0) / (ms / 1000)));
+        return new Summary(profile.actions(), bytes, ms);
+    }
+
+    private static long write(OutputStream out, Future<byte[]> slice) throws IOException, InterruptedException {
+        try {
+            byte[] rows = slice.get();
+            out.write(rows);
+            return rows.length;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * How often a user acts on its main course rather than on one drawn by popularity.
+     * Drawing by popularity alone lands on the main course with the sum of the squared
+     * shares of the courses, so only the rest of the profile's share is added by staying.
+     */
+    static double stayOnMainCourse(WorkloadProfile profile) {
+        double total = 0;
+        double squares = 0;
+        for (int rank = 1; rank <= profile.courses(); rank++) {
+            double weight = Math.pow(rank, -profile.courseExponent());
+            total += weight;
+            squares += weight * weight;
+        }
+        double byPopularity = squares / (total * total);
+        if (byPopularity >= 1) {
+            return 0;
+        }
+        return Math.max(0, (profile.primaryCourseShare() - byPopularity) / (1 - byPopularity));
+    }
+
+    /**
+     * The rows of the slice starting at the given action id, with the share of
+     * the time span its rows are of the actions.
+     */
+    private byte[] slice(WorkloadProfile profile, AliasTable users, AliasTable courses, double stay, long first) {
+        int rows = (int) Math.min(SLICE_ROWS, profile.actions() - first);
+        SplittableRandom random = new SplittableRandom(mix(seed ^ mix(first)));
+
+        // sorted uniform times, from the sums of exponential gaps
+        double from = profile.startSeconds() + profile.durationSeconds() * first / profile.actions();
+        double span = profile.durationSeconds() * rows / profile.actions();
+        double[] times = new double[rows];
+        double sum = 0;
+        for (int i = 0; i < rows; i++) {
+            sum += -Math.log(1 - random.nextDouble());
+            times[i] = sum;
+        }
+        sum += -Math.log(1 - random.nextDouble());
+
+        CsvBytes csv = new CsvBytes(rows * 64);
+        double[] means = profile.featureMeans();
+        double[] stds = profile.featureStds();
+        for (int i = 0; i < rows; i++) {
+            int user = users.sample(random);
+            int course = random.nextDouble() < stay
+                ? mainCourse(courses, user)
+                : courses.sample(random);
+
+            csv.append(first + i).append(',')
+                .append(user).append(',')
+                .append(course).append(',')
+                .appendFixed(from + span * times[i] / sum, 1).append(',');
+            for (int f = 0; f < WorkloadProfile.FEATURES; f++) {
+                csv.appendFixed(means[f] + stds[f] * random.nextGaussian(), 4).append(',');
+            }
+            csv.append(random.nextDouble() < profile.labelOneRatio() ? 1 : 0).append('\n');
+        }
+        return csv.toBytes();
+    }
+
+    /**
+     * The main course of a user, drawn by popularity from a hash of the seed and
+     * the user, so it is the same in every slice without being stored.
+     */
+    private int mainCourse(AliasTable courses, int user) {
+        long hash = mix(seed + 0x9E3779B97F4A7C15L * (user + 1));
+        double slot = (hash >>> 11) * 0x1.0p-53;
+        double within = (mix(hash) >>> 11) * 0x1.0p-53;
+        return courses.sample(slot, within);
+    }
+
+    /** The finalizer of SplitMix64, spreading every bit of the input over the output. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The bytes of CSV rows, written without formatting strings.
+     */
+    private static final class CsvBytes {
+
+        private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+        private byte[] bytes;
+        private int size;
+        private final byte[] digits = new byte[20];
+
+        CsvBytes(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        CsvBytes append(char c) {
+            ensure(1);
+            bytes[size++] = (byte) c;
+            return this;
+        }
+
+        CsvBytes append(long value) {
+            ensure(21);
+            if (value < 0) {
+                bytes[size++] = '-';
+                value = -value;
+            }
+            int count = 0;
+            do {
+                digits[count++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            while (count > 0) {
+                bytes[size++] = digits[--count];
+            }
+            return this;
+        }
+
+        /** The value rounded to the given decimals, all of them written. */
+        CsvBytes appendFixed(double value, int decimals) {
+            long scale = POWERS_OF_TEN[decimals];
+            long scaled = Math.round(Math.abs(value) * scale);
+            if (value < 0 && scaled != 0) {
+                append('-');
+            }
+            append(scaled / scale).append('.');
+            long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                append((char) ('0' + fraction / digit % 10));
+            }
+            return this;
+        }
+
+        private void ensure(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+            }
+        }
+
+        byte[] toBytes() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package gr.network.generate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import gr.network.domain.Action;
+import gr.network.read.InputReader;
+
+/**
+ * The shape of an action workload, fitted from a real file:
+ * <ul>
+ *   <li>the users, courses and actions, and the span of the timestamps</li>
+ *   <li>how skewed user activity and course popularity are, as the exponent
+ *   {@code a} of the rank-frequency law {@code count(rank) ~ rank^-a},
+ *   fitted by least squares on the log-log ranking</li>
+ *   <li>the share of the actions of a user on its most frequent course</li>
+ *   <li>the share of actions with label 1</li>
+ *   <li>the mean and standard deviation of every feature</li>
+ * </ul>
+ * @version 1.0
+ */
+public record WorkloadProfile(
+    int users,
+    int courses,
+    long actions,
+    double startSeconds,
+    double durationSeconds,
+    double userExponent,
+    double courseExponent,
+    double primaryCourseShare,
+    double labelOneRatio,
+    double[] featureMeans,
+    double[] featureStds
+) {
+
+    /** The features, feature0 to feature3. */
+    static final int FEATURES = 4;
+
+    /**
+     * Reads the file once, counting what the profile is fitted from.
+     */
+    public static WorkloadProfile fit(String fileName) throws Exception {
+        Map<String, Map<String, Long>> userCourses = new HashMap<>();
+        Map<String, Long> courseActions = new HashMap<>();
+        double[] sums = new double[FEATURES];
+        double[] squares = new double[FEATURES];
+        long[] labelOne = new long[1];
+        long[] timeRange = {Long.MAX_VALUE, Long.MIN_VALUE};
+
+        long actions = InputReader.stream(fileName, action -> {
+            userCourses.computeIfAbsent(action.getUser(), user -> new HashMap<>())
+                .merge(action.getCourse(), 1L, Long::sum);
+            courseActions.merge(action.getCourse(), 1L, Long::sum);
+            double[] values = features(action);
+            for (int i = 0; i < FEATURES; i++) {
+                sums[i] += values[i];
+                squares[i] += values[i] * values[i];
+            }
+            if (action.getLabel() == 1) {
+                labelOne[0]++;
+            }
+            timeRange[0] = Math.min(timeRange[0], action.getEpochMillis());
+            timeRange[1] = Math.max(timeRange[1], action.getEpochMillis());
+        });
+        if (actions == 0) {
+            throw new IllegalArgumentException("No actions to fit a profile from in " + fileName);
+        }
+
+        long[] userActions = new long[userCourses.size()];
+        long primary = 0;
+        int i = 0;
+        for (Map<String, Long> courses : userCourses.values()) {
+            userActions[i++] = courses.values().stream().mapToLong(Long::longValue).sum();
+            primary += courses.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        }
+
+        double[] means = new double[FEATURES];
+        double[] stds = new double[FEATURES];
+        for (int f = 0; f < FEATURES; f++) {
+            means[f] = sums[f] / actions;
+            stds[f] = Math.sqrt(Math.max(0, squares[f] / actions - means[f] * means[f]));
+        }
+
+        return new WorkloadProfile(
+            userCourses.size(),
+            courseActions.size(),
+            actions,
+            timeRange[0] / 1000.0,
+            (timeRange[1] - timeRange[0]) / 1000.0,
+            rankExponent(userActions),
+            rankExponent(courseActions.values().stream().mapToLong(Long::longValue).toArray()),
+            (double) primary / actions,
+            (double) labelOne[0] / actions,
+            means,
+            stds
+        );
+    }
+
+    static double[] features(Action action) {
+        return new double[] {action.getFeature0(), action.getFeature1(), action.getFeature2(), action.getFeature3()};
+    }
+
+    /**
+     * The exponent {@code a} of {@code count(rank) ~ rank^-a}: minus the slope of
+     * the least squares line through the logarithms of the ranks and counts.
+     */
+    static double rankExponent(long[] counts) {
+        if (counts.length < 2) {
+            return 0;
+        }
+        long[] ranked = counts.clone();
+        Arrays.sort(ranked);
+
+        int n = ranked.length;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXY = 0;
+        double sumXX = 0;
+        for (int rank = 1; rank <= n; rank++) {
+            double x = Math.log(rank);
+            double y = Math.log(ranked[n - rank]);
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+        }
+        double slope = (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+        return Math.max(0, -slope);
+    }
+
+    /**
+     * The same workload with {@code factor} times the users and actions, over the same
+     * courses and time span, so the data grows as more users would make it grow.
+     */
+    public WorkloadProfile scaled(double factor) {
+        if (!(factor > 0)) {
+            throw new IllegalArgumentException("The scale must be positive, not " + factor);
+        }
+        return new WorkloadProfile(
+            (int) Math.max(1, Math.round(users * factor)),
+            courses,
+            Math.max(1, Math.round(actions * factor)),
+            startSeconds,
+            durationSeconds,
+            userExponent,
+            courseExponent,
+            primaryCourseShare,
+            labelOneRatio,
+            featureMeans,
+            featureStds
+        );
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d users, %d courses, %d actions over %.0f s, user activity ~ rank^-%.3f,"
+                + " course popularity ~ rank^-%.3f, %.1f%% of actions on a user's main course, %.3f%% label=1,"
+                + " feature means %s, stds %s",
+            users, courses, actions, durationSeconds, userExponent, courseExponent, primaryCourseShare * 100,
+            labelOneRatio * 100, format(featureMeans), format(featureStds));
+    }
+
+    private static String format(double[] values) {
+        return Arrays.stream(values).mapToObj(v -> String.format("%.4f", v)).toList().toString();
+    }
+}
@@ -0,0 +1,152 @@
+package gr.network.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import gr.network.domain.Action;
+
+/**
+ * A conjunction of conditions on actions, such as {@code label=1 feature2>0 course=3}.
+ * Labels, courses and users are matched with {@code =}, features are
+ * compared with {@code >, >=, <, <=}. Conditions may be separated by
+ * spaces, commas or {@code and}.
+ * @version 1.0
+ */
+public final class ActionFilter {
+
+    private static final Pattern TERM = Pattern.compile(
+        "(label|course|user|feature[0-3])\\s*(>=|<=|=|>|<)\\s*([^\\s,]+)", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SEPARATORS = Pattern.compile("(\\s|,|(?i:\\band\\b))*");
+
+    /** One condition, on one field. */
+    private record Term(String field, String operator, String value) {
+
+        RoaringBitmap evaluate(BitmapIndex index) {
+            return switch (field) {
+                case "label" -> index.label(Integer.parseInt(value));
+                case "course" -> index.course(value);
+                case "user" -> index.user(value);
+                default -> {
+                    int feature = feature();
+                    double bound = Double.parseDouble(value);
+                    yield operator.startsWith(">")
+                        ? index.featureAbove(feature, bound, operator.equals(">="))
+                        : index.featureBelow(feature, bound, operator.equals("<="));
+                }
+            };
+        }
+
+        boolean test(Action action) {
+            return switch (field) {
+                case "label" -> action.getLabel() == Integer.parseInt(value);
+                case "course" -> action.getCourse().equals(value);
+                case "user" -> action.getUser().equals(value);
+                default -> {
+                    double[] values = {action.getFeature0(), action.getFeature1(), action.getFeature2(), action.getFeature3()};
+                    double v = values[feature()];
+                    double bound = Double.parseDouble(value);
+                    yield switch (operator) {
+                        case ">" -> v > bound;
+                        case ">=" -> v >= bound;
+                        case "<" -> v < bound;
+                        default -> v <= bound;
+                    };
+                }
+            };
+        }
+
+        private int feature() {
+            return field.charAt(field.length() - 1) - '0';
+        }
+
+        @Override
+        public String toString() {
+            return field + operator + value;
+        }
+    }
+
+    private final List<Term> terms;
+
+    private ActionFilter(List<Term> terms) {
+        this.terms = terms;
+    }
+
+    /**
+     * Parses a filter.
+     * @throws IllegalArgumentException if a condition cannot be parsed
+     */
+    public static ActionFilter parse(String expression) {
+        List<Term> terms = new ArrayList<>();
+        Matcher matcher = TERM.matcher(expression);
+        int end = 0;
+        while (matcher.find()) {
+            requireSeparators(expression.substring(end, matcher.start()));
+            String field = matcher.group(1).toLowerCase(Locale.ROOT);
+            String operator = matcher.group(2);
+            String value = matcher.group(3);
+
+            boolean feature = field.startsWith("feature");
+            if (feature == operator.equals("=")) {
+                throw new IllegalArgumentException(feature
+                    ? "Features are compared with >, >=, < or <=, not = in " + matcher.group()
+                    : "Only = applies to " + field + ", not " + operator);
+            }
+            try {
+                if (feature && Double.isNaN(Double.parseDouble(value))) {
+                    throw new IllegalArgumentException("A feature bound cannot be NaN: " + matcher.group());
+                } else if (field.equals("label")) {
+                    Integer.parseInt(value);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number: " + matcher.group(), e);
+            }
+
+            terms.add(new Term(field, operator, value));
+            end = matcher.end();
+        }
+        requireSeparators(expression.substring(end));
+
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("No condition in: " + expression);
+        }
+        return new ActionFilter(terms);
+    }
+
+    private static void requireSeparators(String text) {
+        if (!SEPARATORS.matcher(text).matches()) {
+            throw new IllegalArgumentException("Cannot parse: " + text.trim());
+        }
+    }
+
+    /**
+     * The actions passing every condition: the intersection of their bitmaps.
+     */
+    public RoaringBitmap evaluate(BitmapIndex index) {
+        List<RoaringBitmap> bitmaps = new ArrayList<>(terms.size());
+        for (Term term : terms) {
+            bitmaps.add(term.evaluate(index));
+        }
+        return BitmapIndex.and(bitmaps);
+    }
+
+    /**
+     * Whether the action passes every condition, checking them one by one.
+     */
+    public boolean test(Action action) {
+        for (Term term : terms) {
+            if (!term.test(action)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" ", terms.stream().map(Term::toString).toList());
+    }
+}
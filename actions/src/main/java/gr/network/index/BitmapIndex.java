@@ -0,0 +1,221 @@
+package gr.network.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import gr.network.domain.Action;
+
+/**
+ * Bitmap indexes over the actions, numbered in the order they are added:
+ * a bitmap of the actions of every label, course and user, and for every
+ * feature a bitmap per range of values, {@code BITMAP_FEATURE_BUCKET_WIDTH}
+ * wide. A filter on several of them is the intersection of their bitmaps,
+ * and counting its actions is the cardinality of that intersection,
+ * so no action is read one by one except the ones of the ranges a feature
+ * bound falls in, which are checked against their values.
+ * @version 1.0
+ */
+public final class BitmapIndex implements Consumer<Action> {
+
+    private static final Dotenv dotenv = Dotenv.configure()
+        .directory("./")
+        .load();
+
+    /** The features indexed, in the order of their columns. */
+    static final int FEATURES = 4;
+
+    private final double bucketWidth;
+
+    private final Map<Integer, RoaringBitmap> byLabel = new HashMap<>();
+    private final Map<String, RoaringBitmap> byCourse = new HashMap<>();
+    private final Map<String, RoaringBitmap> byUser = new HashMap<>();
+
+    /** The bitmaps of every feature, by the range of values they hold. */
+    private final List<TreeMap<Long, RoaringBitmap>> byFeature = new ArrayList<>(FEATURES);
+
+    /** The feature values of every action, to check the actions of the ranges a bound falls in. */
+    private double[][] features = new double[FEATURES][1024];
+
+    private int actions;
+
+    public BitmapIndex() {
+        this(Double.parseDouble(dotenv.get("BITMAP_FEATURE_BUCKET_WIDTH", "0.25")));
+    }
+
+    /**
+     * @param bucketWidth the width of the ranges of feature values with a bitmap each
+     */
+    public BitmapIndex(double bucketWidth) {
+        if (!(bucketWidth > 0)) {
+            throw new IllegalArgumentException("The bucket width must be positive, not " + bucketWidth);
+        }
+        this.bucketWidth = bucketWidth;
+        for (int i = 0; i < FEATURES; i++) {
+            byFeature.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * Indexes an action under the next number.
+     */
+    @Override
+    public synchronized void accept(Action action) {
+        int ordinal = actions++;
+        if (ordinal == features[0].length) {
+            for (int i = 0; i < FEATURES; i++) {
+                features[i] = Arrays.copyOf(features[i], ordinal * 2);
+            }
+        }
+
+        byLabel.computeIfAbsent(action.getLabel(), label -> new RoaringBitmap()).add(ordinal);
+        byCourse.computeIfAbsent(action.getCourse(), course -> new RoaringBitmap()).add(ordinal);
+        byUser.computeIfAbsent(action.getUser(), user -> new RoaringBitmap()).add(ordinal);
+
+        double[] values = {action.getFeature0(), action.getFeature1(), action.getFeature2(), action.getFeature3()};
+        for (int i = 0; i < FEATURES; i++) {
+            features[i][ordinal] = values[i];
+            // NaN is neither above nor below any bound, so it is in no range
+            if (!Double.isNaN(values[i])) {
+                byFeature.get(i).computeIfAbsent(bucketOf(values[i]), bucket -> new RoaringBitmap()).add(ordinal);
+            }
+        }
+    }
+
+    private static void requireBound(double bound) {
+        if (Double.isNaN(bound)) {
+            throw new IllegalArgumentException("A feature bound cannot be NaN");
+        }
+    }
+
+    private long bucketOf(double value) {
+        return (long) Math.floor(value / bucketWidth);
+    }
+
+    /** The actions with the label, empty if none. */
+    public synchronized RoaringBitmap label(int label) {
+        return byLabel.getOrDefault(label, new RoaringBitmap());
+    }
+
+    /** The actions on the course, empty if none. */
+    public synchronized RoaringBitmap course(String courseId) {
+        return byCourse.getOrDefault(courseId, new RoaringBitmap());
+    }
+
+    /** The actions of the user, empty if none. */
+    public synchronized RoaringBitmap user(String userId) {
+        return byUser.getOrDefault(userId, new RoaringBitmap());
+    }
+
+    /**
+     * The actions whose feature is above (or at, if inclusive) the bound:
+     * the union of the ranges wholly above it, and the actions of its own range that pass.
+     */
+    public synchronized RoaringBitmap featureAbove(int feature, double bound, boolean inclusive) {
+        requireBound(bound);
+        long bucket = bucketOf(bound);
+        TreeMap<Long, RoaringBitmap> buckets = byFeature.get(feature);
+
+        List<RoaringBitmap> ranges = new ArrayList<>(buckets.tailMap(bucket, false).values());
+        RoaringBitmap edge = buckets.get(bucket);
+        if (edge != null) {
+            double[] values = features[feature];
+            RoaringBitmap passing = new RoaringBitmap();
+            edge.forEach(ordinal -> {
+                if (values[ordinal] > bound || (inclusive && values[ordinal] == bound)) {
+                    passing.add(ordinal);
+                }
+            });
+            ranges.add(passing);
+        }
+        return RoaringBitmap.or(ranges);
+    }
+
+    /**
+     * The actions whose feature is below (or at, if inclusive) the bound.
+     */
+    public synchronized RoaringBitmap featureBelow(int feature, double bound, boolean inclusive) {
+        requireBound(bound);
+        long bucket = bucketOf(bound);
+        TreeMap<Long, RoaringBitmap> buckets = byFeature.get(feature);
+
+        List<RoaringBitmap> ranges = new ArrayList<>(buckets.headMap(bucket, false).values());
+        RoaringBitmap edge = buckets.get(bucket);
+        if (edge != null) {
+            double[] values = features[feature];
+            RoaringBitmap passing = new RoaringBitmap();
+            edge.forEach(ordinal -> {
+                if (values[ordinal] < bound || (inclusive && values[ordinal] == bound)) {
+                    passing.add(ordinal);
+                }
+            });
+            ranges.add(passing);
+        }
+        return RoaringBitmap.or(ranges);
+    }
+
+    /**
+     * The intersection of the bitmaps, smallest first, so every step shrinks the result.
+     * The result is always a new bitmap, never one held by the index.
+     */
+    public static RoaringBitmap and(List<RoaringBitmap> bitmaps) {
+        List<RoaringBitmap> ordered = new ArrayList<>(bitmaps);
+        ordered.sort(Comparator.comparingLong(RoaringBitmap::cardinality));
+
+        if (ordered.size() == 1 || ordered.get(0).isEmpty()) {
+            return ordered.get(0).copy();
+        }
+        RoaringBitmap result = RoaringBitmap.and(ordered.get(0), ordered.get(1));
+        for (int i = 2; i < ordered.size() && !result.isEmpty(); i++) {
+            result = RoaringBitmap.and(result, ordered.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * The actions of every course among the given ones, one intersection count per course.
+     */
+    public synchronized Map<String, Long> countByCourse(RoaringBitmap matching) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, RoaringBitmap> course : byCourse.entrySet()) {
+            long count = RoaringBitmap.andCardinality(matching, course.getValue());
+            if (count > 0) {
+                counts.put(course.getKey(), count);
+            }
+        }
+        return counts;
+    }
+
+    /** Every action indexed. */
+    public synchronized RoaringBitmap all() {
+        return RoaringBitmap.or(byLabel.values());
+    }
+
+    public synchronized int getActionCount() {
+        return actions;
+    }
+
+    public synchronized int getBitmapCount() {
+        return byLabel.size() + byCourse.size() + byUser.size()
+            + byFeature.stream().mapToInt(Map::size).sum();
+    }
+
+    /** The bytes of every bitmap, without the feature values kept for the range bounds. */
+    public synchronized long sizeInBytes() {
+        long bytes = 0;
+        for (Map<?, RoaringBitmap> bitmaps : List.of(byLabel, byCourse, byUser)) {
+            bytes += bitmaps.values().stream().mapToLong(RoaringBitmap::sizeInBytes).sum();
+        }
+        for (Map<Long, RoaringBitmap> buckets : byFeature) {
+            bytes += buckets.values().stream().mapToLong(RoaringBitmap::sizeInBytes).sum();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,138 @@
+package gr.network.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gr.network.domain.Action;
+import gr.network.index.VectorIndex.Neighbour;
+import gr.network.read.InputReader;
+
+/**
+ * Compares the searches of the vector index on the same queries: the
+ * brute-force scan, the exact k-d tree search, and the approximate one
+ * stopping after more and more leaves. The queries are actions and users
+ * of the index, drawn with a fixed seed, and the recall of every search is
+ * the share of its neighbours no farther than the k-th true one.
+ * @version 1.0
+ */
+public class VectorBenchmark {
+
+    private final Logger logger = LoggerFactory.getLogger(VectorBenchmark.class);
+
+    /** Queries per index, drawn from its ids. */
+    private static final int QUERIES = 500;
+
+    /** Neighbours per query. */
+    private static final int K = 10;
+
+    /** The leaves the approximate searches stop after. */
+    private static final int[] MAX_LEAVES = {1, 2, 4, 8, 16, 32, 64};
+
+    private static final long SEED = 42;
+
+    private record Result(String search, double meanUs, double recall) {}
+
+    /**
+     * Indexes the actions of the file and the mean vectors of its users, and times every search on each.
+     */
+    public void run(String fileName) throws Exception {
+        InputReader reader = new InputReader(fileName);
+        List<Action> actions = List.copyOf(reader.getActions());
+
+        long start = System.nanoTime();
+        VectorIndex byAction = VectorIndex.ofActions(actions);
+        logger.info("Indexed {} action vectors in {} ms", byAction.size(),
+            String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0));
+        List<String> actionIds = actions.stream().map(Action::getAction).toList();
+        printSummary("ACTIONS", byAction.size(), benchmark(byAction, actionIds));
+
+        start = System.nanoTime();
+        VectorIndex byUser = VectorIndex.ofUsers(actions);
+        logger.info("Indexed {} user vectors in {} ms", byUser.size(),
+            String.format("%.2f", (System.nanoTime() - start) / 1_000_000.0));
+        List<String> userIds = List.copyOf(reader.getUserIds());
+        printSummary("USERS (mean vectors)", byUser.size(), benchmark(byUser, userIds));
+    }
+
+    private List<Result> benchmark(VectorIndex index, List<String> ids) {
+        List<String> queries = new ArrayList<>(ids);
+        Collections.sort(queries);
+        Collections.shuffle(queries, new Random(SEED));
+        queries = queries.subList(0, Math.min(QUERIES, queries.size()));
+
+        List<List<Neighbour>> truth = new ArrayList<>(queries.size());
+        List<Result> results = new ArrayList<>();
+        results.add(time("brute-force scan", queries, truth, id -> index.exact(id, K)));
+        results.add(time("k-d tree, exact", queries, truth, id -> index.approximate(id, K, 0)));
+        for (int maxLeaves : MAX_LEAVES) {
+            results.add(time("k-d tree, " + maxLeaves + " leaves", queries, truth,
+                id -> index.approximate(id, K, maxLeaves)));
+        }
+        return results;
+    }
+
+    /**
+     * The mean time and recall of the search over the queries, after one run
+     * warming it up. The first search timed fills the true neighbours.
+     */
+    private static Result time(String search, List<String> queries, List<List<Neighbour>> truth,
+                               Function<String, List<Neighbour>> searcher) {
+        queries.forEach(searcher::apply);
+
+        List<List<Neighbour>> found = new ArrayList<>(queries.size());
+        long start = System.nanoTime();
+        for (String query : queries) {
+            found.add(searcher.apply(query));
+        }
+        double meanUs = (System.nanoTime() - start) / 1_000.0 / queries.size();
+
+        if (truth.isEmpty()) {
+            truth.addAll(found);
+        }
+        return new Result(search, meanUs, recall(truth, found));
+    }
+
+    /**
+     * The share of the neighbours found within the distance of the k-th true one,
+     * so ties at that distance count whichever of them was kept.
+     */
+    private static double recall(List<List<Neighbour>> truth, List<List<Neighbour>> found) {
+        long expected = 0;
+        long hits = 0;
+        for (int i = 0; i < truth.size(); i++) {
+            List<Neighbour> exact = truth.get(i);
+            if (exact.isEmpty()) {
+                continue;
+            }
+            double farthest = exact.get(exact.size() - 1).distance();
+            expected += exact.size();
+            hits += found.get(i).stream().filter(neighbour -> neighbour.distance() <= farthest).count();
+        }
+        return expected == 0 ? 1 : (double) hits / expected;
+    }
+
+    /**
+     * Prints every search with its recall and its speedup over the brute-force scan.
+     */
+    private static void printSummary(String title, int size, List<Result> results) {
+        double baseline = results.get(0).meanUs();
+        int width = 28 + 3 * 16;
+
+        System.out.println("\n" + "=".repeat(width));
+        System.out.printf("%s NEAREST %d (%d vectors, mean of %d queries)\n", title, K, size,
+            Math.min(QUERIES, size));
+        System.out.println("=".repeat(width));
+        System.out.printf("%-28s%16s%16s%16s\n", "", "us/query", "speedup", "recall@" + K);
+        for (Result result : results) {
+            System.out.printf("%-28s%16.1f%16s%16.3f\n", result.search(), result.meanUs(),
+                String.format("%.2fx", baseline / result.meanUs()), result.recall());
+        }
+        System.out.println("=".repeat(width));
+    }
+}
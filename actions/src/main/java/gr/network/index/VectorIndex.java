@@ -0,0 +1,432 @@
+package gr.network.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import gr.network.domain.Action;
+
+/**
+ * The nearest neighbours of four-dimensional feature vectors, by Euclidean
+ * distance, over either the actions or the mean vector of every user.
+ * The vectors are kept by column, one array per feature, so a brute-force
+ * scan is one pass of plain arithmetic over four arrays, which the JIT
+ * compiles to SIMD instructions. A k-d tree over the same columns, reordered
+ * so every leaf is a contiguous range of them, answers exactly or
+ * approximately: searching its most promising leaves first and stopping after
+ * a given number of them trades recall for latency.
+ * @version 1.0
+ */
+public final class VectorIndex {
+
+    private static final Dotenv dotenv = Dotenv.configure()
+        .directory("./")
+        .load();
+
+    /** One neighbour found, with its distance to the vector searched. */
+    public record Neighbour(String id, double distance) {}
+
+    /** The dimensions of every vector: feature0 to feature3. */
+    public static final int DIMENSIONS = BitmapIndex.FEATURES;
+
+    /** Vectors per leaf of the tree, scanned as one block. */
+    private static final int LEAF_SIZE = 32;
+
+    /** Vectors per block of a brute-force scan, whose distances stay in the L1 cache. */
+    private static final int SCAN_BLOCK = 1024;
+
+    private final String[] ids;
+    private final Map<String, Integer> positions;
+
+    /** The vectors by column, in tree order. */
+    private final double[][] columns;
+
+    /** The internal nodes of the tree, in the order they were split, children after their parent. */
+    private final int[] splitDimension;
+    private final double[] splitValue;
+    private final int[] lowChild;
+    private final int[] highChild;
+
+    /** The range of vectors of every node, children included. */
+    private final int[] from;
+    private final int[] to;
+
+    private int nodes;
+
+    /** The leaves an approximate search stops after, unless given. */
+    private final int maxLeaves = Integer.parseInt(dotenv.get("VECTOR_MAX_LEAVES", "8"));
+
+    private VectorIndex(List<String> ids, List<double[]> vectors) {
+        int size = vectors.size();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        double[][] unordered = new double[DIMENSIONS][size];
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < DIMENSIONS; d++) {
+                unordered[d][i] = vectors.get(i)[d];
+            }
+        }
+
+        // ranges over LEAF_SIZE are halved, so leaves hold at least LEAF_SIZE / 2 vectors
+        int capacity = 2 * (size / (LEAF_SIZE / 2) + 1);
+        splitDimension = new int[capacity];
+        splitValue = new double[capacity];
+        lowChild = new int[capacity];
+        highChild = new int[capacity];
+        from = new int[capacity];
+        to = new int[capacity];
+        build(unordered, order, 0, size);
+
+        this.ids = new String[size];
+        this.positions = new HashMap<>(size * 2);
+        this.columns = new double[DIMENSIONS][size];
+        for (int i = 0; i < size; i++) {
+            this.ids[i] = ids.get(order[i]);
+            this.positions.put(this.ids[i], i);
+            for (int d = 0; d < DIMENSIONS; d++) {
+                columns[d][i] = unordered[d][order[i]];
+            }
+        }
+    }
+
+    /**
+     * Indexes the vector of every action, by action id.
+     */
+    public static VectorIndex ofActions(Collection<Action> actions) {
+        List<String> ids = new ArrayList<>(actions.size());
+        List<double[]> vectors = new ArrayList<>(actions.size());
+        for (Action action : actions) {
+            ids.add(action.getAction());
+            vectors.add(vector(action));
+        }
+        return new VectorIndex(ids, vectors);
+    }
+
+    /**
+     * Indexes the mean vector of the actions of every user, by user id.
+     */
+    public static VectorIndex ofUsers(Collection<Action> actions) {
+        Map<String, double[]> sums = new LinkedHashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (Action action : actions) {
+            double[] sum = sums.computeIfAbsent(action.getUser(), user -> new double[DIMENSIONS]);
+            double[] vector = vector(action);
+            for (int d = 0; d < DIMENSIONS; d++) {
+                sum[d] += vector[d];
+            }
+            counts.merge(action.getUser(), 1, Integer::sum);
+        }
+
+        List<String> ids = new ArrayList<>(sums.size());
+        List<double[]> vectors = new ArrayList<>(sums.size());
+        for (Map.Entry<String, double[]> user : sums.entrySet()) {
+            int count = counts.get(user.getKey());
+            double[] mean = user.getValue();
+            for (int d = 0; d < DIMENSIONS; d++) {
+                mean[d] /= count;
+            }
+            ids.add(user.getKey());
+            vectors.add(mean);
+        }
+        return new VectorIndex(ids, vectors);
+    }
+
+    private static double[] vector(Action action) {
+        return new double[] {action.getFeature0(), action.getFeature1(), action.getFeature2(), action.getFeature3()};
+    }
+
+    /**
+     * Splits the vectors of the range at the median of the dimension they spread most along,
+     * until the ranges fit in a leaf. Returns the node of the range.
+     */
+    private int build(double[][] vectors, int[] order, int start, int end) {
+        int node = nodes++;
+        from[node] = start;
+        to[node] = end;
+        lowChild[node] = -1;
+        highChild[node] = -1;
+        if (end - start <= LEAF_SIZE) {
+            return node;
+        }
+
+        int dimension = 0;
+        double widest = -1;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                double value = vectors[d][order[i]];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widest) {
+                widest = max - min;
+                dimension = d;
+            }
+        }
+
+        int middle = (start + end) >>> 1;
+        select(vectors[dimension], order, start, end - 1, middle);
+        splitDimension[node] = dimension;
+        splitValue[node] = vectors[dimension][order[middle]];
+        lowChild[node] = build(vectors, order, start, middle);
+        highChild[node] = build(vectors, order, middle, end);
+        return node;
+    }
+
+    /**
+     * Reorders the range so the k-th position holds the vector it would in sorted order,
+     * with no greater value before it and no smaller one after it.
+     */
+    private static void select(double[] values, int[] order, int left, int right, int k) {
+        while (left < right) {
+            double pivot = values[order[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[order[i]] < pivot) {
+                    i++;
+                }
+                while (values[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** The vector of an action or user indexed, null if not indexed. */
+    public double[] vectorOf(String id) {
+        Integer position = positions.get(id);
+        if (position == null) {
+            return null;
+        }
+        double[] vector = new double[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = columns[d][position];
+        }
+        return vector;
+    }
+
+    public int getMaxLeaves() {
+        return maxLeaves;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * The k nearest vectors to the one of the given id, itself excluded, scanning every vector.
+     * Empty if the id is not indexed.
+     */
+    public List<Neighbour> exact(String id, int k) {
+        double[] vector = vectorOf(id);
+        return vector == null ? List.of() : exact(vector, k, id);
+    }
+
+    /**
+     * The k nearest vectors to the query, scanning every vector.
+     * @param excluded the id left out of the results, null for none
+     * @throws IllegalArgumentException if k is below 1
+     */
+    public List<Neighbour> exact(double[] query, int k, String excluded) {
+        Nearest nearest = new Nearest(k, positions.getOrDefault(excluded, -1));
+        double[] distances = new double[SCAN_BLOCK];
+        double bound = nearest.bound();
+        for (int start = 0; start < ids.length; start += SCAN_BLOCK) {
+            int end = Math.min(start + SCAN_BLOCK, ids.length);
+            distances(query, start, end, distances);
+            for (int i = start; i < end; i++) {
+                if (distances[i - start] < bound) {
+                    nearest.offer(i, distances[i - start]);
+                    bound = nearest.bound();
+                }
+            }
+        }
+        return nearest.toList();
+    }
+
+    /**
+     * The squared distances of the vectors of the range to the query, one column at a time.
+     */
+    private void distances(double[] query, int start, int end, double[] distances) {
+        double[] column = columns[0];
+        double q = query[0];
+        for (int i = start; i < end; i++) {
+            double delta = column[i] - q;
+            distances[i - start] = delta * delta;
+        }
+        for (int d = 1; d < DIMENSIONS; d++) {
+            column = columns[d];
+            q = query[d];
+            for (int i = start; i < end; i++) {
+                double delta = column[i] - q;
+                distances[i - start] += delta * delta;
+            }
+        }
+    }
+
+    /**
+     * The k nearest vectors to the one of the given id, itself excluded, through the tree,
+     * stopping after {@code VECTOR_MAX_LEAVES} leaves. Empty if the id is not indexed.
+     */
+    public List<Neighbour> approximate(String id, int k) {
+        return approximate(id, k, maxLeaves);
+    }
+
+    /**
+     * The k nearest vectors to the one of the given id, itself excluded, through the tree.
+     * Empty if the id is not indexed.
+     * @param maxLeaves the leaves searched at most, 0 to search until the result is exact
+     */
+    public List<Neighbour> approximate(String id, int k, int maxLeaves) {
+        double[] vector = vectorOf(id);
+        return vector == null ? List.of() : approximate(vector, k, maxLeaves, id);
+    }
+
+    /**
+     * The k nearest vectors to the query through the tree, searching the leaves
+     * closest to it first, and stopping once no other leaf can hold a nearer vector
+     * or after {@code maxLeaves} leaves, if positive.
+     * @param excluded the id left out of the results, null for none
+     * @throws IllegalArgumentException if k is below 1
+     */
+    public List<Neighbour> approximate(double[] query, int k, int maxLeaves, String excluded) {
+        Nearest nearest = new Nearest(k, positions.getOrDefault(excluded, -1));
+        double[] distances = new double[LEAF_SIZE];
+
+        // the nodes still to search, by the least squared distance any of their vectors may have
+        PriorityQueue<double[]> pending = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        pending.add(new double[] {0, 0});
+        int leaves = 0;
+        while (!pending.isEmpty() && (maxLeaves <= 0 || leaves < maxLeaves)) {
+            double[] next = pending.poll();
+            if (next[0] >= nearest.bound()) {
+                break;
+            }
+
+            int node = (int) next[1];
+            while (lowChild[node] >= 0) {
+                double delta = query[splitDimension[node]] - splitValue[node];
+                int near = delta < 0 ? lowChild[node] : highChild[node];
+                int far = delta < 0 ? highChild[node] : lowChild[node];
+                pending.add(new double[] {Math.max(next[0], delta * delta), far});
+                node = near;
+            }
+
+            distances(query, from[node], to[node], distances);
+            for (int i = from[node]; i < to[node]; i++) {
+                nearest.offer(i, distances[i - from[node]]);
+            }
+            leaves++;
+        }
+        return nearest.toList();
+    }
+
+    /**
+     * The k nearest vectors offered so far, in a heap with the farthest on top.
+     */
+    private final class Nearest {
+
+        private final int k;
+        private final int excluded;
+        private final int[] kept;
+        private final double[] distances;
+        private int size;
+
+        Nearest(int k, int excluded) {
+            if (k < 1) {
+                throw new IllegalArgumentException("At least one neighbour must be searched for, not " + k);
+            }
+            this.k = k;
+            this.excluded = excluded;
+            this.kept = new int[k];
+            this.distances = new double[k];
+        }
+
+        /** The squared distance a vector must be under to be kept. */
+        double bound() {
+            return size < k ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(int position, double distance) {
+            if (distance >= bound() || position == excluded) {
+                return;
+            }
+            if (size < k) {
+                kept[size] = position;
+                distances[size] = distance;
+                up(size++);
+            } else {
+                kept[0] = position;
+                distances[0] = distance;
+                down(0);
+            }
+        }
+
+        private void up(int i) {
+            while (i > 0 && distances[(i - 1) / 2] < distances[i]) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void down(int i) {
+            while (true) {
+                int largest = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                    if (distances[child] > distances[largest]) {
+                        largest = child;
+                    }
+                }
+                if (largest == i) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int position = kept[i];
+            kept[i] = kept[j];
+            kept[j] = position;
+            double distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+        }
+
+        /** The vectors kept, nearest first, ties by id. */
+        List<Neighbour> toList() {
+            Neighbour[] neighbours = new Neighbour[size];
+            for (int i = 0; i < size; i++) {
+                neighbours[i] = new Neighbour(ids[kept[i]], Math.sqrt(distances[i]));
+            }
+            Arrays.sort(neighbours, (a, b) -> a.distance() != b.distance()
+                ? Double.compare(a.distance(), b.distance())
+                : a.id().compareTo(b.id()));
+            return List.of(neighbours);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package gr.network.load;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.ResultCursor;
+
+import gr.network.client.Neo4jConnection;
+import gr.network.trace.LoadTimer;
+
+/**
+ * Pipelines write batches to Neo4j over asynchronous sessions.
+ * At most a fixed number of batches are in flight; submitting
+ * another blocks until one completes, which keeps memory bounded
+ * when the database is slower than the producer. Batches run on the
+ * driver's own event loop, no extra threads are started.
+ * @version 1.0
+ */
+class AsyncBatchWriter {
+
+    private final Neo4jConnection connection;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+
+    /** The first batch failure, reported once all batches complete. */
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    AsyncBatchWriter(Neo4jConnection connection) {
+        this.connection = connection;
+        this.maxInFlight = connection.getMaxInFlight();
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Submits a batch of rows to run in its own write transaction.
+     * Blocks while the maximum number of batches is in flight.
+     */
+    void submit(String cypher, Map<String, Object> params, int rows, long bytes) {
+        if (failure.get() != null) {
+            throw new IllegalStateException("A previous batch failed", failure.get());
+        }
+
+        inFlight.acquireUninterruptibly();
+
+        LoadTimer timer = LoadTimer.batch("neo4j_write");
+        AsyncSession session = null;
+        try {
+            session = connection.openAsyncSession();
+            AsyncSession opened = session;
+            session.executeWriteAsync(tx -> tx.runAsync(cypher, params).thenCompose(ResultCursor::consumeAsync))
+                .whenComplete((summary, error) -> {
+                    if (error != null) {
+                        failure.compareAndSet(null, error);
+                    } else {
+                        timer.end(rows, bytes);
+                    }
+                    opened.closeAsync().whenComplete((ignored, closeError) -> inFlight.release());
+                });
+        } catch (RuntimeException e) {
+            // the batch never started, so nothing else gives the permit back
+            failure.compareAndSet(null, e);
+            if (session != null) {
+                session.closeAsync().whenComplete((ignored, closeError) -> inFlight.release());
+            } else {
+                inFlight.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for every submitted batch to complete.
+     * @throws IllegalStateException if any batch failed
+     */
+    void awaitAll() {
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("Asynchronous batch failed", failure.get());
+        }
+    }
+}
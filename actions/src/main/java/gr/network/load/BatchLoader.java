@@ -0,0 +1,37 @@
+package gr.network.load;
+
+import java.util.Collection;
+
+import gr.network.domain.Action;
+
+/**
+ * A loader fed one batch at a time, so a file can be loaded
+ * while it is parsed. Batches only name the users and courses
+ * not seen in earlier batches, which are loaded before their actions.
+ * @version 1.0
+ */
+public interface BatchLoader {
+
+    /**
+     * The database loaded, for logging.
+     */
+    String getTarget();
+
+    /**
+     * Prepares the database for the batches.
+     */
+    void begin() throws Exception;
+
+    void loadBatch(Collection<String> users, Collection<String> courses, Collection<Action> actions) throws Exception;
+
+    /**
+     * Brings the summaries up to date with every batch and makes the load visible.
+     */
+    void finish() throws Exception;
+
+    /**
+     * Gives up on a load that failed, leaving the database as it was
+     * or marked for a rebuild of its summaries.
+     */
+    void abort();
+}
@@ -0,0 +1,247 @@
+package gr.network.load;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gr.network.domain.Action;
+import gr.network.read.InputReader;
+import io.github.cdimascio.dotenv.Dotenv;
+
+/**
+ * Loads several databases from one parse of the input.
+ * Every parsed batch is fanned out to one writer thread per database,
+ * each behind a bounded queue, so the parser runs ahead of the slowest
+ * writer by at most the queue capacity and the load takes about as long
+ * as the slowest database instead of the sum of all of them.
+ * A writer that fails is aborted and skipped, the others load every batch.
+ * A row repeating an action already parsed is skipped, as the set of
+ * actions a whole-file load is given keeps only the first one, so both
+ * load the same actions.
+ * @version 1.1
+ */
+public class ConcurrentLoader {
+
+    private final Logger logger = LoggerFactory.getLogger(ConcurrentLoader.class);
+
+    private static final Dotenv dotenv = Dotenv.configure()
+        .directory("./")
+        .load();
+
+    /** Actions per batch handed to the writers. */
+    private static final int BATCH_SIZE = 10000;
+
+    /** How often a parser waiting on a full queue checks whether its writer failed. */
+    private static final long OFFER_WAIT_MS = 100;
+
+    /** The actions of a batch, with the users and courses first seen in it. */
+    private record Batch(List<String> users, List<String> courses, List<Action> actions) {}
+
+    /** Tells a writer that every batch was submitted. */
+    private static final Batch END = new Batch(List.of(), List.of(), List.of());
+
+    /** Tells a writer that parsing failed, so its load must be aborted. */
+    private static final Batch ABORT = new Batch(List.of(), List.of(), List.of());
+
+    private final List<BatchLoader> loaders;
+    private final int queueCapacity;
+
+    public ConcurrentLoader(List<BatchLoader> loaders) {
+        this(loaders, Integer.parseInt(dotenv.get("LOAD_QUEUE_BATCHES", "4")));
+    }
+
+    /**
+     * @param queueCapacity the batches each writer may fall behind the parser
+     */
+    public ConcurrentLoader(List<BatchLoader> loaders, int queueCapacity) {
+        this.loaders = loaders;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Parses the file once, loading every database while it is parsed.
+     * @param listener sees every action as it is parsed
+     * @throws IllegalStateException if any database failed to load, after the others finished
+     */
+    public void load(String fileName, Consumer<Action> listener) throws Exception {
+        List<Writer> writers = loaders.stream().map(Writer::new).toList();
+        long start = System.nanoTime();
+        writers.forEach(writer -> writer.thread.start());
+
+        Batcher batcher = new Batcher(writers, listener);
+        long parsed;
+        try {
+            parsed = InputReader.stream(fileName, batcher);
+            batcher.flush();
+        } catch (Exception e) {
+            // no writer may commit a partial input
+            for (Writer writer : writers) {
+                writer.submit(ABORT);
+            }
+            joinAll(writers);
+            throw e;
+        }
+
+        for (Writer writer : writers) {
+            writer.submit(END);
+        }
+        joinAll(writers);
+
+        logger.info("Parsed {} actions ({} repeated, skipped) once for {} databases in {} ms",
+            parsed, batcher.repeated, writers.size(), (System.nanoTime() - start) / 1_000_000);
+
+        List<Writer> failed = writers.stream().filter(writer -> writer.failure != null).toList();
+        if (!failed.isEmpty()) {
+            IllegalStateException exception = new IllegalStateException(
+                "Loading failed for " + failed.stream().map(writer -> writer.loader.getTarget()).toList()
+                + ", the other databases were loaded");
+            failed.forEach(writer -> exception.addSuppressed(writer.failure));
+            throw exception;
+        }
+    }
+
+    private static void joinAll(List<Writer> writers) throws InterruptedException {
+        for (Writer writer : writers) {
+            writer.thread.join();
+        }
+    }
+
+    /**
+     * Groups the parsed actions in batches, skipping repeated ones, and submits every full batch to the writers.
+     */
+    private static final class Batcher implements Consumer<Action> {
+
+        private final List<Writer> writers;
+        private final Consumer<Action> listener;
+
+        private final Set<String> seenUsers = new HashSet<>();
+        private final Set<String> seenCourses = new HashSet<>();
+        /** The ids only, so the actions themselves are not kept once loaded. */
+        private final Set<String> seenActionIds = new HashSet<>();
+        private long repeated;
+
+        private List<String> users = new ArrayList<>();
+        private List<String> courses = new ArrayList<>();
+        private List<Action> actions = new ArrayList<>(BATCH_SIZE);
+
+        Batcher(List<Writer> writers, Consumer<Action> listener) {
+            this.writers = writers;
+            this.listener = listener;
+        }
+
+        @Override
+        public void accept(Action action) {
+            listener.accept(action);
+
+            // equal as actions are: by id, and never without one
+            if (action.getAction() != null && !seenActionIds.add(action.getAction())) {
+                repeated++;
+                return;
+            }
+            if (seenUsers.add(action.getUser())) {
+                users.add(action.getUser());
+            }
+            if (seenCourses.add(action.getCourse())) {
+                courses.add(action.getCourse());
+            }
+            actions.add(action);
+
+            if (actions.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (actions.isEmpty() && users.isEmpty() && courses.isEmpty()) {
+                return;
+            }
+
+            // batches are shared by the writers, so they are never changed once submitted
+            Batch batch = new Batch(users, courses, actions);
+            for (Writer writer : writers) {
+                writer.submit(batch);
+            }
+            users = new ArrayList<>();
+            courses = new ArrayList<>();
+            actions = new ArrayList<>(BATCH_SIZE);
+        }
+    }
+
+    /**
+     * Loads the batches of one database on its own thread.
+     */
+    private final class Writer implements Runnable {
+
+        private final BatchLoader loader;
+        private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final Thread thread;
+
+        private volatile Throwable failure;
+        private long actions;
+
+        Writer(BatchLoader loader) {
+            this.loader = loader;
+            this.thread = Thread.ofPlatform().name(loader.getTarget() + "-loader").unstarted(this);
+        }
+
+        /**
+         * Queues a batch, waiting while the queue is full, unless the writer failed.
+         */
+        void submit(Batch batch) {
+            try {
+                while (failure == null && !queue.offer(batch, OFFER_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                    // the writer is behind, wait for it
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queueing a batch for " + loader.getTarget(), e);
+            }
+        }
+
+        @Override
+        public void run() {
+            String target = loader.getTarget();
+            long start = System.nanoTime();
+            try {
+                loader.begin();
+
+                while (true) {
+                    Batch batch = queue.take();
+                    if (batch == END) {
+                        break;
+                    }
+                    if (batch == ABORT) {
+                        failure = new IllegalStateException("The input could not be parsed");
+                        loader.abort();
+                        return;
+                    }
+
+                    loader.loadBatch(batch.users(), batch.courses(), batch.actions());
+                    actions += batch.actions().size();
+
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    logger.info("[{}] {} actions loaded ({} actions/s, {} batches queued)",
+                        target, actions, Math.round(actions / seconds), queue.size());
+                }
+
+                loader.finish();
+                logger.info("[{}] Loaded {} actions in {} ms",
+                    target, actions, (System.nanoTime() - start) / 1_000_000);
+            } catch (Exception | Error e) {
+                failure = e;
+                logger.error("[{}] Load failed after {} actions, aborting it", target, actions, e);
+                loader.abort();
+                // release the batches still queued, later ones are not queued at all
+                queue.clear();
+            }
+        }
+    }
+}
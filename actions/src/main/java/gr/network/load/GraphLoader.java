@@ -1,15 +1,25 @@
 package gr.network.load;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import gr.network.client.Neo4jConnection;
 import gr.network.domain.Action;
+import gr.network.trace.LoadTimer;
+import gr.network.sketch.HyperLogLog;
 
 /**
  * Communicates with the Neo4j database
@@ -17,7 +27,7 @@ import gr.network.domain.Action;
  * provided by the InputReader.
  * @version 1.0
  */
-public class GraphLoader {
+public class GraphLoader implements BatchLoader {
 
     private final Logger logger = LoggerFactory.getLogger(GraphLoader.class);
 
@@ -33,6 +43,15 @@ public class GraphLoader {
     /** The action (user-course) edges to be loaded */
     private final Set<Action> actions;
 
+    /** Pipelines the batches, when loading asynchronously */
+    private AsyncBatchWriter asyncWriter;
+
+    /** Whether the summaries matched the edges when the load began */
+    private boolean summariesFresh;
+
+    /** The aggregates of the edges loaded by the batches so far */
+    private SummaryAggregates loaded;
+
     public GraphLoader(
         Set<String> users,
         Set<String> courses,
@@ -45,22 +64,109 @@ public class GraphLoader {
         this.connection = connection;
     }
 
+    /**
+     * Enables or disables asynchronous loading.
+     * Asynchronously, batches are pipelined over several
+     * connections instead of being written one after the other.
+     */
+    public void setAsync(boolean async) {
+        this.asyncWriter = async ? new AsyncBatchWriter(connection) : null;
+    }
+
+    /**
+     * Creates a loader fed with {@link #loadBatch}.
+     */
+    public GraphLoader(Neo4jConnection connection) {
+        this(Set.of(), Set.of(), Set.of(), connection);
+    }
+
     /**
      * Load the graph to the database.
      */
     public void load() {
+        begin();
+        loadBatch(users, courses, actions);
+        finish();
+    }
+
+    @Override
+    public String getTarget() {
+        return "neo4j";
+    }
+
+    /**
+     * Marks the summaries as changed until the load finishes,
+     * so a load that fails leaves them to be rebuilt.
+     */
+    @Override
+    public void begin() {
         logger.info("Loading graph...");
-        loadNodes();
 
-        loadEdges();
+        // summaries can only be updated in place if they already match the edges
+        try (Session session = connection.openSession()) {
+            summariesFresh = session.run(GraphSummaries.ARE_FRESH).single().get("fresh").asBoolean();
+            session.run(GraphSummaries.MARK_ACTIONS_CHANGED).consume();
+        }
+        loaded = new SummaryAggregates();
+    }
+
+    @Override
+    public void loadBatch(Collection<String> users, Collection<String> courses, Collection<Action> actions) {
+        LoadTimer nodeStage = LoadTimer.stage("neo4j_nodes");
+        loadNodes(users, courses);
+        // edges match their nodes, so every node must be written first
+        awaitBatches();
+        nodeStage.end(users.size() + courses.size());
+
+        LoadTimer edgeStage = LoadTimer.stage("neo4j_edges");
+        loadEdges(actions);
+        awaitBatches();
+        edgeStage.end(actions.size());
+    }
 
+    /**
+     * Creates the indexes and brings the summaries up to date with every batch.
+     */
+    @Override
+    public void finish() {
+        LoadTimer indexStage = LoadTimer.stage("neo4j_indexes");
         createIndexes();
+        backfillEpochMillis();
+        indexStage.end(0);
+
+        LoadTimer summaryStage = LoadTimer.stage("neo4j_summaries");
+        if (summariesFresh) {
+            updateSummaries(loaded);
+            awaitBatches();
+        } else {
+            rebuildSummaries();
+        }
+        runBatch(GraphSummaries.MARK_FRESH, Map.of(), 0);
+        summaryStage.end(loaded.getActionCount());
+
+        // cached query results no longer reflect the graph
+        connection.getResultCache().bumpVersion();
+    }
+
+    /**
+     * Waits for the batches still in flight. Batches commit on their own,
+     * so the edges written stay, but the summaries remain marked as changed
+     * and are rebuilt by the next load.
+     */
+    @Override
+    public void abort() {
+        try {
+            awaitBatches();
+        } catch (RuntimeException e) {
+            // already reported by the batch that failed
+        }
+        logger.warn("Graph load aborted, its summaries will be rebuilt by the next load");
     }
 
     /**
      * Load the nodes to the database.
      */
-    private void loadNodes() {
+    private void loadNodes(Collection<String> users, Collection<String> courses) {
         logger.info("Loading nodes...");
 
         // load users in batches
@@ -75,7 +181,7 @@ public class GraphLoader {
      * Load the set of nodes into the database
      * as batches. Loading them all by once would be inefficient.
      */
-    private void loadNodesInBatches(Set<String> nodeIds, String nodeLabel, int batchSize) {
+    private void loadNodesInBatches(Collection<String> nodeIds, String nodeLabel, int batchSize) {
         // convert to list to split into batches
         List<String> nodeList = new ArrayList<>(nodeIds);
 
@@ -84,7 +190,7 @@ public class GraphLoader {
             List<String> batch = nodeList.subList(i, endIndex);
 
             String cypher = String.format("UNWIND $nodeIds AS nodeId MERGE (:%s {id: nodeId})", nodeLabel);
-            connection.getSession().run(cypher, Map.of("nodeIds", batch));
+            runBatch(cypher, Map.of("nodeIds", batch), batch.size());
 
             logger.info("Loaded {} {} nodes ({}/{})",
                     batch.size(), nodeLabel, endIndex, nodeList.size());
@@ -96,7 +202,7 @@ public class GraphLoader {
      * This method assumes that the nodes have already been loaded,
      * and it creates the edges between them.
      */
-    private void loadEdges() {
+    private void loadEdges(Collection<Action> actions) {
         logger.info("Loading edges...");
 
         // load actions in batches
@@ -108,35 +214,41 @@ public class GraphLoader {
     /**
      * Load the set of edges into the database
      * as batches. Loading them all by once would be inefficient.
+     * Adds the loaded edges to the aggregates.
      */
-    private void loadEdgesInBatches(Set<Action> actions, int batchSize) {
+    private void loadEdgesInBatches(Collection<Action> actions, int batchSize) {
         List<Action> actionList = new ArrayList<>(actions);
+        ActionBatchColumns columns = new ActionBatchColumns(batchSize);
+
+        // one list per property, zipped by index
+        String cypher = ActionBatchColumns.UNWIND_INDEX + """
+
+                MATCH (u:User {id: $user[i]})
+                MATCH (c:Course {id: $course[i]})
+                CREATE (u)-[:ACTION {
+                    action: $action[i],
+                    timestamp: $timestamp[i],
+                    epochMillis: $epochMillis[i],
+                    feature0: $feature0[i],
+                    feature1: $feature1[i],
+                    feature2: $feature2[i],
+                    feature3: $feature3[i],
+                    label: $label[i]
+                }]->(c)
+                """;
 
         for (int i = 0; i < actionList.size(); i += batchSize) {
             int endIndex = Math.min(i + batchSize, actionList.size());
             List<Action> batch = actionList.subList(i, endIndex);
 
-            // Convert to maps for parameterized query
-            List<Map<String, Object>> actionMaps = batch.stream()
-                .map(this::actionToMap)
-                .toList();
-
-            String cypher = """
-                    UNWIND $actions AS action
-                    MATCH (u:User {id: action.user})
-                    MATCH (c:Course {id: action.course})
-                    CREATE (u)-[:ACTION {
-                        action: action.action,
-                        timestamp: action.timestamp,
-                        feature0: action.feature0,
-                        feature1: action.feature1,
-                        feature2: action.feature2,
-                        feature3: action.feature3,
-                        label: action.label
-                    }]->(c)
-                    """;
-
-            connection.getSession().run(cypher, Map.of("actions", actionMaps));
+            // Convert to columns for parameterized query
+            LoadTimer mapTimer = LoadTimer.batch("map");
+            columns.fill(batch);
+            Map<String, Object> params = columns.toParameters();
+            mapTimer.end(batch);
+            batch.forEach(loaded::add);
+
+            runBatch(cypher, params, batch.size(), LoadTimer.recordedPayloadBytes(batch));
 
             logger.info("Loaded {} edges ({}/{})",
                     batch.size(), endIndex, actionList.size());
@@ -144,20 +256,151 @@ public class GraphLoader {
     }
 
     /**
-     * Transform an action to a map
+     * Adds the aggregates of the loaded edges to the
+     * summary properties and relationships.
+     */
+    private void updateSummaries(SummaryAggregates loaded) {
+        logger.info("Updating summaries...");
+
+        runInBatches(GraphSummaries.UPDATE_USERS, loaded.getUserActions().entrySet(), user -> Map.of(
+            "id", user.getKey(),
+            "actions", user.getValue()
+        ));
+
+        runInBatches(GraphSummaries.UPDATE_PAIRS, loaded.getPairs().entrySet(), pair -> Map.of(
+            "user", pair.getKey().user(),
+            "course", pair.getKey().course(),
+            "actions", pair.getValue().actions,
+            "positiveFeature2", pair.getValue().positiveFeature2
+        ));
+
+        runInBatches(GraphSummaries.UPDATE_COURSES, loaded.getCourses().entrySet(), course -> Map.of(
+            "id", course.getKey(),
+            "actions", course.getValue().actions,
+            "labelOne", course.getValue().labelOne
+        ));
+
+        runInBatches(GraphSummaries.UPDATE_USER_ROLLUPS, loaded.getUserRollups().entrySet(), this::rollupToMap);
+        runInBatches(GraphSummaries.UPDATE_COURSE_ROLLUPS, loaded.getCourseRollups().entrySet(), this::rollupToMap);
+
+        mergeSketches(loaded.getCourseUsers());
+
+        logger.info("Summaries updated.");
+    }
+
+    /**
+     * Recomputes the summaries from all the edges.
+     * Used when the summaries are missing or out of date.
+     */
+    private void rebuildSummaries() {
+        logger.info("Rebuilding summaries...");
+
+        try (Session session = connection.openSession()) {
+            for (String cypher : GraphSummaries.REBUILD) {
+                session.run(cypher).consume();
+            }
+        }
+
+        // sketch every distinct pair once, they are already grouped by ENGAGED
+        Map<String, HyperLogLog> courseUsers = new HashMap<>();
+        try (Session session = connection.openSession()) {
+            Result pairs = session.run(GraphSummaries.SKETCH_PAIRS);
+            while (pairs.hasNext()) {
+                Record pair = pairs.next();
+                courseUsers.computeIfAbsent(pair.get("course").asString(), c -> new HyperLogLog())
+                    .add(pair.get("user").asString());
+            }
+        }
+        // the sketches are not merged with stale ones, so clear those first
+        try (Session session = connection.openSession()) {
+            session.run("MATCH (c:Course) REMOVE c.userSketch, c.userCountEstimate").consume();
+        }
+        mergeSketches(courseUsers);
+
+        logger.info("Summaries rebuilt.");
+    }
+
+    /**
+     * Merges the sketches of newly loaded edges into the stored sketch
+     * of each course, and stores the new distinct user estimates.
+     */
+    private void mergeSketches(Map<String, HyperLogLog> courseUsers) {
+        try (Session session = connection.openSession()) {
+            Result stored = session.run(GraphSummaries.READ_SKETCHES, Map.of("ids", List.copyOf(courseUsers.keySet())));
+            while (stored.hasNext()) {
+                Record course = stored.next();
+                courseUsers.get(course.get("id").asString())
+                    .merge(HyperLogLog.fromBytes(course.get("sketch").asByteArray()));
+            }
+        }
+
+        runInBatches(GraphSummaries.WRITE_SKETCHES, courseUsers.entrySet(), course -> Map.of(
+            "id", course.getKey(),
+            "sketch", course.getValue().toBytes(),
+            "estimate", course.getValue().estimate()
+        ));
+        awaitBatches();
+    }
+
+    /**
+     * Runs an UNWIND query over the given rows in batches.
+     */
+    private <T> void runInBatches(String cypher, Set<T> items, Function<T, Map<String, Object>> toRow) {
+        List<Map<String, Object>> rows = items.stream().map(toRow).toList();
+
+        for (int i = 0; i < rows.size(); i += 5000) {
+            int endIndex = Math.min(i + 5000, rows.size());
+            runBatch(cypher, Map.of("rows", rows.subList(i, endIndex)), endIndex - i);
+        }
+    }
+
+    /**
+     * Runs a batch of rows in its own session, or pipelines it when loading asynchronously.
+     */
+    private void runBatch(String cypher, Map<String, Object> params, int rows) {
+        runBatch(cypher, params, rows, 0);
+    }
+
+    /**
+     * Runs a batch of rows, recording the approximate bytes of its payload.
+     */
+    private void runBatch(String cypher, Map<String, Object> params, int rows, long bytes) {
+        if (asyncWriter != null) {
+            asyncWriter.submit(cypher, params, rows, bytes);
+        } else {
+            LoadTimer timer = LoadTimer.batch("neo4j_write");
+            try (Session session = connection.openSession()) {
+                session.run(cypher, params).consume();
+            }
+            // every batch commits on its own
+            timer.end(rows, bytes);
+        }
+    }
+
+    /**
+     * Waits for the pipelined batches, when loading asynchronously.
+     */
+    private void awaitBatches() {
+        if (asyncWriter != null) {
+            asyncWriter.awaitAll();
+        }
+    }
+
+    /**
+     * Transform the rollup of a bucket to a map
      * to be used in the cypher query.
      */
-    private Map<String, Object> actionToMap(Action action) {
+    private Map<String, Object> rollupToMap(Map.Entry<SummaryAggregates.Bucket, SummaryAggregates.RollupCounts> bucket) {
+        SummaryAggregates.RollupCounts counts = bucket.getValue();
         return Map.of(
-            "user", action.getUser(),
-            "course", action.getCourse(),
-            "action", action.getAction(),
-            "timestamp", action.getTimestamp(),
-            "feature0", action.getFeature0(),
-            "feature1", action.getFeature1(),
-            "feature2", action.getFeature2(),
-            "feature3", action.getFeature3(),
-            "label", action.getLabel()
+            "size", bucket.getKey().size(),
+            "start", bucket.getKey().start(),
+            "id", bucket.getKey().id(),
+            "actions", counts.actions,
+            "labelOne", counts.labelOne,
+            "featureSums", Arrays.stream(counts.featureSums).boxed().toList(),
+            "featureMins", Arrays.stream(counts.featureMins).boxed().toList(),
+            "featureMaxs", Arrays.stream(counts.featureMaxs).boxed().toList()
         );
     }
 
@@ -167,21 +410,55 @@ public class GraphLoader {
     private void createIndexes() {
         logger.info("Creating indexes...");
 
-        var session = connection.getSession();
+        try (Session session = connection.openSession()) {
+            // Create index for User(id)
+            session.run("CREATE INDEX user_id_index IF NOT EXISTS FOR (u:User) ON (u.id)");
 
-        // Create index for User(id)
-        session.run("CREATE INDEX user_id_index IF NOT EXISTS FOR (u:User) ON (u.id)");
+            // Create index for Course(id)
+            session.run("CREATE INDEX course_id_index IF NOT EXISTS FOR (c:Course) ON (c.id)");
 
-        // Create index for Course(id)
-        session.run("CREATE INDEX course_id_index IF NOT EXISTS FOR (c:Course) ON (c.id)");
+            // Create index for relationship feature2
+            session.run("CREATE INDEX feature2_index IF NOT EXISTS FOR ()-[r:ACTION]-() ON (r.feature2)");
 
-        // Create index for relationship feature2
-        session.run("CREATE INDEX feature2_index IF NOT EXISTS FOR ()-[r:ACTION]-() ON (r.feature2)");
+            // Create index for relationship label
+            session.run("CREATE INDEX label_index IF NOT EXISTS FOR ()-[r:ACTION]-() ON (r.label)");
 
-        // Create index for relationship label
-        session.run("CREATE INDEX label_index IF NOT EXISTS FOR ()-[r:ACTION]-() ON (r.label)");
+            // Create index for relationship epochMillis, used by the time-windowed queries
+            session.run("CREATE INDEX action_epoch_index IF NOT EXISTS FOR ()-[r:ACTION]-() ON (r.epochMillis)");
+
+            // Create indexes for the rollups, looked up by bucket and ranged over bucket starts
+            session.run("CREATE INDEX user_rollup_index IF NOT EXISTS "
+                + "FOR (r:UserRollup) ON (r.bucketSize, r.bucketStart, r.userId)");
+            session.run("CREATE INDEX course_rollup_index IF NOT EXISTS "
+                + "FOR (r:CourseRollup) ON (r.bucketSize, r.bucketStart, r.courseId)");
+        }
 
         logger.info("Indexes created.");
     }
 
+    /**
+     * Sets epochMillis on edges loaded before it existed,
+     * parsing the timestamp the same way as the InputReader.
+     */
+    private void backfillEpochMillis() {
+        String cypher = """
+                MATCH ()-[r:ACTION]->()
+                WHERE r.epochMillis IS NULL AND r.timestamp IS NOT NULL
+                CALL {
+                    WITH r
+                    SET r.epochMillis = CASE
+                        WHEN toFloat(r.timestamp) IS NOT NULL THEN toInteger(round(toFloat(r.timestamp) * 1000))
+                        ELSE datetime(replace(r.timestamp, ' ', 'T')).epochMillis
+                    END
+                } IN TRANSACTIONS OF 5000 ROWS
+                """;
+
+        try (Session session = connection.openSession()) {
+            long updated = session.run(cypher).consume().counters().propertiesSet();
+            if (updated > 0) {
+                logger.info("Backfilled epochMillis on {} edges.", updated);
+            }
+        }
+    }
+
 }
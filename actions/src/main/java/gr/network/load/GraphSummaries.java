@@ -0,0 +1,181 @@
+package gr.network.load;
+
+import gr.network.domain.TimeBuckets;
+
+/**
+ * Cypher of the Neo4j summaries: action counters stored as properties
+ * on the User and Course nodes, ENGAGED relationships summarizing the
+ * actions of each user-course pair, UserRollup and CourseRollup nodes
+ * holding the actions of a user or course per minute, hour and day,
+ * a HyperLogLog sketch of the distinct users on every Course node,
+ * and a Dataset node recording whether each of the counters, the rollups
+ * and the sketches matches the ACTION relationships, so summaries built
+ * before one of them existed are rebuilt rather than read.
+ * @version 1.1
+ */
+public final class GraphSummaries {
+
+    private GraphSummaries() {}
+
+    /** Marks the actions as changed, before loading edges. */
+    static final String MARK_ACTIONS_CHANGED = """
+        MERGE (d:Dataset {name: 'mooc'})
+        SET d.actionsVersion = coalesce(d.actionsVersion, 0) + 1
+        """;
+
+    /**
+     * Marks every summary as matching the actions, after updating them,
+     * dropping the single marker of the summaries before each had its own.
+     */
+    static final String MARK_FRESH = """
+        MATCH (d:Dataset {name: 'mooc'})
+        SET d.countersVersion = d.actionsVersion,
+            d.rollupsVersion = d.actionsVersion,
+            d.sketchesVersion = d.actionsVersion
+        REMOVE d.summaryVersion
+        """;
+
+    /** Whether every summary matches the actions, before any edges are loaded. */
+    public static final String ARE_FRESH = """
+        OPTIONAL MATCH (d:Dataset {name: 'mooc'})
+        RETURN d IS NOT NULL
+           AND d.countersVersion = d.actionsVersion
+           AND d.rollupsVersion = d.actionsVersion
+           AND d.sketchesVersion = d.actionsVersion AS fresh
+        """;
+
+    static final String UPDATE_USERS = """
+        UNWIND $rows AS row
+        MATCH (u:User {id: row.id})
+        SET u.actionCount = coalesce(u.actionCount, 0) + row.actions
+        """;
+
+    /** A pair engaged for the first time adds a distinct user to its course. */
+    static final String UPDATE_PAIRS = """
+        UNWIND $rows AS row
+        MATCH (u:User {id: row.user})
+        MATCH (c:Course {id: row.course})
+        MERGE (u)-[e:ENGAGED]->(c)
+        ON CREATE SET
+            e.actionCount = 0,
+            e.positiveFeature2Count = 0,
+            c.userCount = coalesce(c.userCount, 0) + 1
+        SET e.actionCount = e.actionCount + row.actions,
+            e.positiveFeature2Count = e.positiveFeature2Count + row.positiveFeature2
+        """;
+
+    static final String UPDATE_COURSES = """
+        UNWIND $rows AS row
+        MATCH (c:Course {id: row.id})
+        SET c.actionCount = coalesce(c.actionCount, 0) + row.actions,
+            c.labelOneCount = coalesce(c.labelOneCount, 0) + row.labelOne,
+            c.userCount = coalesce(c.userCount, 0)
+        """;
+
+    static final String READ_SKETCHES = """
+        MATCH (c:Course)
+        WHERE c.id IN $ids AND c.userSketch IS NOT NULL
+        RETURN c.id AS id, c.userSketch AS sketch
+        """;
+
+    static final String WRITE_SKETCHES = """
+        UNWIND $rows AS row
+        MATCH (c:Course {id: row.id})
+        SET c.userSketch = row.sketch, c.userCountEstimate = row.estimate
+        """;
+
+    /** Every distinct user-course pair, to sketch after rebuilding the ENGAGED relationships. */
+    static final String SKETCH_PAIRS = """
+        MATCH (u:User)-[:ENGAGED]->(c:Course)
+        RETURN c.id AS course, u.id AS user
+        """;
+
+    static final String UPDATE_USER_ROLLUPS = updateRollups("UserRollup", "userId");
+
+    static final String UPDATE_COURSE_ROLLUPS = updateRollups("CourseRollup", "courseId");
+
+    /** Recomputes every summary from the ACTION relationships. */
+    static final String[] REBUILD = {
+        """
+        MATCH (u:User)
+        OPTIONAL MATCH (u)-[r:ACTION]->()
+        WITH u, count(r) AS actions
+        SET u.actionCount = actions
+        """,
+        """
+        MATCH (c:Course)
+        OPTIONAL MATCH (u:User)-[r:ACTION]->(c)
+        WITH c, count(r) AS actions, count(DISTINCT u) AS users,
+             sum(CASE WHEN r.label = 1 THEN 1 ELSE 0 END) AS labelOne
+        SET c.actionCount = actions, c.userCount = users, c.labelOneCount = labelOne
+        """,
+        """
+        MATCH (:User)-[e:ENGAGED]->(:Course)
+        DELETE e
+        """,
+        """
+        MATCH (u:User)-[r:ACTION]->(c:Course)
+        WITH u, c, count(r) AS actions,
+             sum(CASE WHEN r.feature2 > 0 THEN 1 ELSE 0 END) AS positiveFeature2
+        CREATE (u)-[:ENGAGED {actionCount: actions, positiveFeature2Count: positiveFeature2}]->(c)
+        """,
+        """
+        MATCH (r:UserRollup|CourseRollup)
+        CALL { WITH r DETACH DELETE r } IN TRANSACTIONS OF 10000 ROWS
+        """,
+        rebuildRollups("UserRollup", "userId", "(n:User)-[a:ACTION]->()"),
+        rebuildRollups("CourseRollup", "courseId", "()-[a:ACTION]->(n:Course)")
+    };
+
+    /**
+     * Adds per-bucket aggregates to the rollups, which may already
+     * hold earlier actions of the same bucket.
+     */
+    private static String updateRollups(String label, String idProperty) {
+        return """
+            UNWIND $rows AS row
+            MERGE (r:%s {bucketSize: row.size, bucketStart: row.start, %s: row.id})
+            ON CREATE SET
+                r.actionCount = 0,
+                r.labelOneCount = 0,
+                r.featureSums = [0.0, 0.0, 0.0, 0.0],
+                r.featureMins = row.featureMins,
+                r.featureMaxs = row.featureMaxs
+            SET r.actionCount = r.actionCount + row.actions,
+                r.labelOneCount = r.labelOneCount + row.labelOne,
+                r.featureSums = [i IN range(0, 3) | r.featureSums[i] + row.featureSums[i]],
+                r.featureMins = [i IN range(0, 3) |
+                    CASE WHEN row.featureMins[i] < r.featureMins[i] THEN row.featureMins[i] ELSE r.featureMins[i] END],
+                r.featureMaxs = [i IN range(0, 3) |
+                    CASE WHEN row.featureMaxs[i] > r.featureMaxs[i] THEN row.featureMaxs[i] ELSE r.featureMaxs[i] END]
+            """.formatted(label, idProperty);
+    }
+
+    /**
+     * Recomputes the rollups from the ACTION relationships matched by the pattern,
+     * rounding bucket starts down as TimeBuckets.floor does.
+     */
+    private static String rebuildRollups(String label, String idProperty, String pattern) {
+        return """
+            MATCH %s
+            WHERE a.epochMillis IS NOT NULL
+            UNWIND [%d, %d, %d] AS size
+            WITH size, n.id AS id, a.epochMillis - (a.epochMillis %% size + size) %% size AS start, a
+            WITH size, start, id, count(a) AS actions,
+                 sum(CASE WHEN a.label = 1 THEN 1 ELSE 0 END) AS labelOne,
+                 sum(a.feature0) AS sum0, sum(a.feature1) AS sum1, sum(a.feature2) AS sum2, sum(a.feature3) AS sum3,
+                 min(a.feature0) AS min0, min(a.feature1) AS min1, min(a.feature2) AS min2, min(a.feature3) AS min3,
+                 max(a.feature0) AS max0, max(a.feature1) AS max1, max(a.feature2) AS max2, max(a.feature3) AS max3
+            CREATE (:%s {
+                bucketSize: size,
+                bucketStart: start,
+                %s: id,
+                actionCount: actions,
+                labelOneCount: labelOne,
+                featureSums: [sum0, sum1, sum2, sum3],
+                featureMins: [min0, min1, min2, min3],
+                featureMaxs: [max0, max1, max2, max3]
+            })
+            """.formatted(pattern, TimeBuckets.MINUTE, TimeBuckets.HOUR, TimeBuckets.DAY, label, idProperty);
+    }
+}
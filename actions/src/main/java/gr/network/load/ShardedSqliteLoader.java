@@ -0,0 +1,142 @@
+package gr.network.load;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gr.network.client.SqliteShards;
+import gr.network.domain.Action;
+
+/**
+ * Loads the SQLite shards in parallel, one {@link SqliteLoader} per shard.
+ * Users and their actions go to the shard their id hashes to, courses
+ * go to every shard. Each shard keeps its own summaries, which only
+ * count its users, so merging them across shards stays exact.
+ * Each shard commits on its own, once every shard is ready to.
+ * @version 1.1
+ */
+public class ShardedSqliteLoader implements BatchLoader {
+
+    private final Logger logger = LoggerFactory.getLogger(ShardedSqliteLoader.class);
+
+    private final SqliteShards shards;
+    private final List<SqliteLoader> loaders;
+
+    private final Set<String> users;
+    private final Set<String> courses;
+    private final Set<Action> actions;
+
+    public ShardedSqliteLoader(Set<String> users, Set<String> courses, Set<Action> actions, SqliteShards shards)
+            throws SQLException {
+        this.shards = shards;
+        this.users = users;
+        this.courses = courses;
+        this.actions = actions;
+
+        this.loaders = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            loaders.add(new SqliteLoader(shards.getShard(i)));
+        }
+    }
+
+    /**
+     * Creates a loader fed with {@link #loadBatch}.
+     */
+    public ShardedSqliteLoader(SqliteShards shards) throws SQLException {
+        this(Set.of(), Set.of(), Set.of(), shards);
+    }
+
+    public void load() throws Exception {
+        try {
+            begin();
+            loadBatch(users, courses, actions);
+            finish();
+        } catch (Exception e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getTarget() {
+        return "sqlite_sharded";
+    }
+
+    @Override
+    public void begin() throws Exception {
+        shards.onEachShard((shard, connection) -> {
+            loaders.get(shard).begin();
+            return null;
+        });
+    }
+
+    /**
+     * Splits the batch by shard and loads every shard's part at once.
+     */
+    @Override
+    public void loadBatch(Collection<String> users, Collection<String> courses, Collection<Action> actions)
+            throws Exception {
+        List<List<String>> shardUsers = new ArrayList<>(shards.size());
+        List<List<Action>> shardActions = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            shardUsers.add(new ArrayList<>());
+            shardActions.add(new ArrayList<>());
+        }
+        for (String user : users) {
+            shardUsers.get(shards.shardOf(user)).add(user);
+        }
+        for (Action action : actions) {
+            shardActions.get(shards.shardOf(action.getUser())).add(action);
+        }
+
+        shards.onEachShard((shard, connection) -> {
+            loaders.get(shard).loadBatch(shardUsers.get(shard), courses, shardActions.get(shard));
+            return null;
+        });
+    }
+
+    /**
+     * Brings the summaries of every shard up to date at once, then commits the shards
+     * one after the other. A shard failing to commit rolls back the shards left,
+     * and fails the load naming the shards that had already committed, which now
+     * hold batches the others lack and have to be loaded again.
+     */
+    @Override
+    public void finish() throws Exception {
+        shards.onEachShard((shard, connection) -> {
+            loaders.get(shard).prepareCommit();
+            return null;
+        });
+
+        for (int shard = 0; shard < shards.size(); shard++) {
+            try {
+                loaders.get(shard).commit();
+            } catch (SQLException e) {
+                abort();
+                if (shard == 0) {
+                    throw e;
+                }
+                throw new SQLException("Shard " + shard + " failed to commit after shards 0 to " + (shard - 1)
+                    + " committed: the shards are inconsistent, load them again", e);
+            }
+        }
+
+        // merged results no longer reflect the shards
+        shards.getResultCache().bumpVersion();
+        logger.info("Loaded {} SQLite shards", shards.size());
+    }
+
+    /**
+     * Rolls back the shards that have not committed yet, committed ones keep their batches.
+     */
+    @Override
+    public void abort() {
+        loaders.forEach(SqliteLoader::abort);
+        shards.getResultCache().bumpVersion();
+    }
+}
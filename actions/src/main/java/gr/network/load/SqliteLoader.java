@@ -2,15 +2,31 @@ package gr.network.load;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import gr.network.client.SqliteConnection;
+import gr.network.client.SqliteSchema;
 import gr.network.domain.Action;
+import gr.network.domain.TimeBuckets;
+import gr.network.domain.Timestamps;
+import gr.network.metrics.Metrics;
+import gr.network.sketch.HyperLogLog;
+import gr.network.trace.LoadTimer;
 
 
-public class SqliteLoader {
+public class SqliteLoader implements BatchLoader {
 
+    private final SqliteConnection sqliteConnection;
     private final Connection connection;
+    private final SqliteSchema schema;
 
     private final Set<String> users;
     private final Set<String> courses;
@@ -18,94 +34,232 @@ public class SqliteLoader {
 
     private static final int BATCH_SIZE = 10000;
 
-    public SqliteLoader(Set<String> users, Set<String> courses, Set<Action> actions, Connection connection) {
-        this.connection = connection;
+    /** Whether the summaries matched the actions when the load began. */
+    private boolean summariesFresh;
+
+    /** The aggregates of the actions inserted by the batches so far. */
+    private SummaryAggregates inserted;
+
+    private long userCount;
+    private long courseCount;
+    private long actionCount;
+
+    public SqliteLoader(Set<String> users, Set<String> courses, Set<Action> actions, SqliteConnection sqliteConnection)
+            throws SQLException {
+        this.sqliteConnection = sqliteConnection;
+        this.connection = sqliteConnection.getConnection();
+        this.schema = sqliteConnection.getSchema();
         this.users = users;
         this.courses = courses;
         this.actions = actions;
     }
 
+    /**
+     * Creates a loader fed with {@link #loadBatch}.
+     */
+    public SqliteLoader(SqliteConnection sqliteConnection) throws SQLException {
+        this(Set.of(), Set.of(), Set.of(), sqliteConnection);
+    }
+
     public void load() throws SQLException {
+        try {
+            begin();
+            loadBatch(users, courses, actions);
+            finish();
+        } catch (SQLException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getTarget() {
+        return "sqlite";
+    }
 
+    /**
+     * Opens the transaction every batch is written in, creating the tables first.
+     */
+    @Override
+    public void begin() throws SQLException {
         connection.setAutoCommit(false);
 
-        try {
-            // Create tables first
-            createTables();
+        // Create tables first
+        createTables();
+
+        // summaries can only be updated in place if they already match the actions
+        summariesFresh = SqliteSummaries.areFresh(connection);
 
-            // insert users
-            bulkInsertUsers(users);
+        inserted = new SummaryAggregates();
+        userCount = 0;
+        courseCount = 0;
+        actionCount = 0;
+    }
 
-            // insert courses
-            bulkInsertCourses(courses);
+    @Override
+    public void loadBatch(Collection<String> users, Collection<String> courses, Collection<Action> actions)
+            throws SQLException {
+        // insert users
+        bulkInsertUsers(users);
 
-            // insert actions
-            bulkInsertActions(actions);
+        // insert courses
+        bulkInsertCourses(courses);
 
-            connection.commit();
+        // insert actions, counting the ones actually inserted
+        LoadTimer insertStage = LoadTimer.stage("sqlite_actions");
+        bulkInsertActions(actions);
+        insertStage.end(actions.size());
 
-            System.out.println("Successfully inserted:");
-            System.out.println("- " + users.size() + " users");
-            System.out.println("- " + courses.size() + " courses");
-            System.out.println("- " + actions.size() + " actions");
+        userCount += users.size();
+        courseCount += courses.size();
+        actionCount += actions.size();
+    }
 
-        } catch (SQLException e) {
+    /**
+     * Updates the summaries and commits the transaction, so the batches become visible at once.
+     */
+    @Override
+    public void finish() throws SQLException {
+        prepareCommit();
+        commit();
+    }
+
+    /**
+     * Updates the summaries in the transaction of the batches, leaving only the commit,
+     * so the shards of a sharded load all get this far before any of them commits.
+     */
+    void prepareCommit() throws SQLException {
+        // maintain the summaries in the same transaction as the actions
+        LoadTimer summaryStage = LoadTimer.stage("sqlite_summaries");
+        if (summariesFresh) {
+            updateSummaries(inserted);
+        } else {
+            rebuildSummaries();
+        }
+        SqliteSummaries.markFresh(connection);
+        summaryStage.end(inserted.getActionCount());
+    }
+
+    /**
+     * Commits the transaction prepared by {@link #prepareCommit()}.
+     */
+    void commit() throws SQLException {
+        LoadTimer commitStage = LoadTimer.stage("sqlite_commit");
+        long commitStart = System.nanoTime();
+        connection.commit();
+        Metrics.loadCommit("sqlite", System.nanoTime() - commitStart);
+        commitStage.end(0);
+        connection.setAutoCommit(true);
+
+        // cached query results no longer reflect the database
+        sqliteConnection.getResultCache().bumpVersion();
+
+        System.out.println("Successfully inserted:");
+        System.out.println("- " + userCount + " users");
+        System.out.println("- " + courseCount + " courses");
+        System.out.println("- " + actionCount + " actions");
+    }
+
+    /**
+     * Rolls back every batch, leaving the database as it was before the load.
+     */
+    @Override
+    public void abort() {
+        try {
+            // a committed load has nothing left to roll back
+            if (connection.getAutoCommit()) {
+                return;
+            }
             connection.rollback();
-            throw e;
-        } finally {
             connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.err.println("Could not roll back the SQLite load: " + e.getMessage());
         }
     }
 
     private void createTables() throws SQLException {
-        String createUsersTable = """
-            CREATE TABLE IF NOT EXISTS Users(
-                userId TEXT PRIMARY KEY
-            )
-            """;
+        // tables are only created if missing, so a database keeps the layout it was created with
+        SqliteSchema existing = SqliteSchema.detect(connection);
+        if (existing != null && existing != schema) {
+            throw new SQLException("The database was created with the " + existing
+                + " schema, not the " + schema + " one: load into a new file or choose the " + existing + " schema");
+        }
 
-        String createCoursesTable = """
-            CREATE TABLE IF NOT EXISTS Courses(
-                courseId TEXT PRIMARY KEY
-            )
-            """;
+        try (Statement stmt = connection.createStatement()) {
+            schema.createTables(stmt);
+            addEpochMillis(stmt);
+            SqliteSummaries.createTables(stmt, schema);
 
-        String createActionsTable = """
-            CREATE TABLE IF NOT EXISTS Actions(
-                actionId TEXT PRIMARY KEY,
-                userId TEXT,
-                courseId TEXT,
-                tmsmp DATETIME,
-                label INTEGER,
-                feature0 REAL,
-                feature1 REAL,
-                feature2 REAL,
-                feature3 REAL,
-                FOREIGN KEY (userId) REFERENCES Users(userId),
-                FOREIGN KEY (courseId) REFERENCES Courses(courseId)
-            )
-            """;
+            System.out.println("Tables created successfully (" + schema + " schema)");
+        }
+    }
 
-        try (var stmt1 = connection.prepareStatement(createUsersTable);
-             var stmt2 = connection.prepareStatement(createCoursesTable);
-             var stmt3 = connection.prepareStatement(createActionsTable)) {
+    /**
+     * Binds an id of an action, user or course as the schema stores it.
+     */
+    private void setId(PreparedStatement pstmt, int index, String id) throws SQLException {
+        if (!schema.hasIntegerKeys()) {
+            pstmt.setString(index, id);
+            return;
+        }
+        try {
+            pstmt.setLong(index, Long.parseLong(id.trim()));
+        } catch (NumberFormatException e) {
+            throw new SQLException("The " + schema + " schema stores integer ids, but the input has the id '" + id + "'", e);
+        }
+    }
+
+    /**
+     * Adds the epochMillis column and its index to databases created before them,
+     * filling it in from the timestamps already stored.
+     */
+    private void addEpochMillis(Statement stmt) throws SQLException {
+        boolean exists = false;
+        try (ResultSet columns = stmt.executeQuery("PRAGMA table_info(Actions)")) {
+            while (columns.next()) {
+                exists |= columns.getString("name").equalsIgnoreCase("epochMillis");
+            }
+        }
 
-            stmt1.execute();
-            stmt2.execute();
-            stmt3.execute();
+        if (!exists) {
+            stmt.execute("ALTER TABLE Actions ADD COLUMN epochMillis INTEGER");
+
+            // parse in Java, the same way as the InputReader does
+            Map<String, Long> parsed = new HashMap<>();
+            try (ResultSet rows = stmt.executeQuery("SELECT actionId, tmsmp FROM Actions WHERE tmsmp IS NOT NULL")) {
+                while (rows.next()) {
+                    try {
+                        parsed.put(rows.getString(1), Timestamps.toEpochMillis(rows.getString(2)));
+                    } catch (IllegalArgumentException e) {
+                        throw new SQLException("Action " + rows.getString(1) + " has the timestamp '"
+                            + rows.getString(2) + "', which cannot be converted to epochMillis", e);
+                    }
+                }
+            }
 
-            System.out.println("Tables created successfully");
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "UPDATE Actions SET epochMillis = ? WHERE actionId = ?")) {
+                for (Map.Entry<String, Long> row : parsed.entrySet()) {
+                    pstmt.setLong(1, row.getValue());
+                    pstmt.setString(2, row.getKey());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            System.out.println("Added epochMillis to " + parsed.size() + " existing actions");
         }
+
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_actions_epoch ON Actions(epochMillis)");
     }
 
-    private void bulkInsertUsers(Set<String> userIds) throws SQLException {
+    private void bulkInsertUsers(Collection<String> userIds) throws SQLException {
         String insertSQL = "INSERT OR IGNORE INTO Users (userId) VALUES (?)";
 
         try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
             int count = 0;
 
             for (String userId : userIds) {
-                pstmt.setString(1, userId);
+                setId(pstmt, 1, userId);
                 pstmt.addBatch();
                 count++;
 
@@ -122,14 +276,14 @@ public class SqliteLoader {
         }
     }
 
-    private void bulkInsertCourses(Set<String> courseIds) throws SQLException {
+    private void bulkInsertCourses(Collection<String> courseIds) throws SQLException {
         String insertSQL = "INSERT OR IGNORE INTO Courses (courseId) VALUES (?)";
 
         try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
             int count = 0;
 
             for (String courseId : courseIds) {
-                pstmt.setString(1, courseId);
+                setId(pstmt, 1, courseId);
                 pstmt.addBatch();
                 count++;
 
@@ -146,40 +300,289 @@ public class SqliteLoader {
         }
     }
 
-    private void bulkInsertActions(Set<Action> actions) throws SQLException {
+    /**
+     * Inserts the actions in batches, adding the ones actually inserted to the aggregates.
+     */
+    private void bulkInsertActions(Collection<Action> actions) throws SQLException {
         String insertSQL = """
-            INSERT OR IGNORE INTO Actions (actionId, userId, courseID, tmsmp, label, feature0, feature1, feature2, feature3)
-            SELECT ?, u.userId, c.courseId, ?, ?, ?, ?, ?, ?
+            INSERT OR IGNORE INTO Actions (actionId, userId, courseID, tmsmp, epochMillis, label, feature0, feature1, feature2, feature3)
+            SELECT ?, u.userId, c.courseId, ?, ?, ?, ?, ?, ?, ?
             FROM users u, courses c
             WHERE u.userId = ? AND c.courseId = ?
         """;
 
         try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
-            int count = 0;
+            List<Action> batch = new ArrayList<>(BATCH_SIZE);
 
             for (Action action : actions) {
-                pstmt.setString(1, action.getAction());
+                setId(pstmt, 1, action.getAction());
                 pstmt.setString(2, action.getTimestamp());
-                pstmt.setInt(3, action.getLabel());
-                pstmt.setDouble(4, action.getFeature0());
-                pstmt.setDouble(5, action.getFeature1());
-                pstmt.setDouble(6, action.getFeature2());
-                pstmt.setDouble(7, action.getFeature3());
-                pstmt.setString(8, action.getUser());
-                pstmt.setString(9, action.getCourse());
+                pstmt.setLong(3, action.getEpochMillis());
+                pstmt.setInt(4, action.getLabel());
+                pstmt.setDouble(5, action.getFeature0());
+                pstmt.setDouble(6, action.getFeature1());
+                pstmt.setDouble(7, action.getFeature2());
+                pstmt.setDouble(8, action.getFeature3());
+                setId(pstmt, 9, action.getUser());
+                setId(pstmt, 10, action.getCourse());
                 pstmt.addBatch();
-                count++;
+                batch.add(action);
 
-                if (count % BATCH_SIZE == 0) {
-                    pstmt.executeBatch();
-                    pstmt.clearBatch();
+                if (batch.size() == BATCH_SIZE) {
+                    executeActionBatch(pstmt, batch, inserted);
                 }
             }
 
             // execute remaining batch
-            if (count % BATCH_SIZE != 0) {
-                pstmt.executeBatch();
+            if (!batch.isEmpty()) {
+                executeActionBatch(pstmt, batch, inserted);
+            }
+        }
+    }
+
+    /**
+     * Executes a batch of action inserts, counting the
+     * actions that were not ignored as duplicates.
+     */
+    private void executeActionBatch(PreparedStatement pstmt, List<Action> batch, SummaryAggregates inserted)
+            throws SQLException {
+        LoadTimer timer = LoadTimer.batch("sqlite_insert");
+        int[] counts = pstmt.executeBatch();
+        pstmt.clearBatch();
+        timer.end(batch);
+
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                inserted.add(batch.get(i));
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Adds the aggregates of newly inserted actions to the summary tables.
+     */
+    private void updateSummaries(SummaryAggregates inserted) throws SQLException {
+        String upsertUser = """
+            INSERT INTO UserSummary (userId, actionCount) VALUES (?, ?)
+            ON CONFLICT(userId) DO UPDATE SET actionCount = actionCount + excluded.actionCount
+            """;
+
+        String insertPair = """
+            INSERT OR IGNORE INTO UserCourseSummary (userId, courseId, actionCount, positiveFeature2Count)
+            VALUES (?, ?, 0, 0)
+            """;
+
+        String updatePair = """
+            UPDATE UserCourseSummary
+            SET actionCount = actionCount + ?, positiveFeature2Count = positiveFeature2Count + ?
+            WHERE userId = ? AND courseId = ?
+            """;
+
+        String upsertCourse = """
+            INSERT INTO CourseSummary (courseId, actionCount, userCount, labelOneCount) VALUES (?, ?, ?, ?)
+            ON CONFLICT(courseId) DO UPDATE SET
+                actionCount = actionCount + excluded.actionCount,
+                userCount = userCount + excluded.userCount,
+                labelOneCount = labelOneCount + excluded.labelOneCount
+            """;
+
+        try (PreparedStatement userStmt = connection.prepareStatement(upsertUser);
+             PreparedStatement insertPairStmt = connection.prepareStatement(insertPair);
+             PreparedStatement updatePairStmt = connection.prepareStatement(updatePair);
+             PreparedStatement courseStmt = connection.prepareStatement(upsertCourse)) {
+
+            for (Map.Entry<String, Long> user : inserted.getUserActions().entrySet()) {
+                setId(userStmt, 1, user.getKey());
+                userStmt.setLong(2, user.getValue());
+                userStmt.addBatch();
+            }
+            userStmt.executeBatch();
+
+            // a pair seen for the first time adds a distinct user to its course
+            Map<String, Long> newUsersPerCourse = new HashMap<>();
+            for (Map.Entry<SummaryAggregates.Pair, SummaryAggregates.PairCounts> pair : inserted.getPairs().entrySet()) {
+                setId(insertPairStmt, 1, pair.getKey().user());
+                setId(insertPairStmt, 2, pair.getKey().course());
+                if (insertPairStmt.executeUpdate() > 0) {
+                    newUsersPerCourse.merge(pair.getKey().course(), 1L, Long::sum);
+                }
+
+                updatePairStmt.setLong(1, pair.getValue().actions);
+                updatePairStmt.setLong(2, pair.getValue().positiveFeature2);
+                setId(updatePairStmt, 3, pair.getKey().user());
+                setId(updatePairStmt, 4, pair.getKey().course());
+                updatePairStmt.addBatch();
+            }
+            updatePairStmt.executeBatch();
+
+            for (Map.Entry<String, SummaryAggregates.CourseCounts> course : inserted.getCourses().entrySet()) {
+                setId(courseStmt, 1, course.getKey());
+                courseStmt.setLong(2, course.getValue().actions);
+                courseStmt.setLong(3, newUsersPerCourse.getOrDefault(course.getKey(), 0L));
+                courseStmt.setLong(4, course.getValue().labelOne);
+                courseStmt.addBatch();
+            }
+            courseStmt.executeBatch();
+        }
+
+        upsertRollups(SqliteSummaries.ROLLUPS[0], inserted.getUserRollups());
+        upsertRollups(SqliteSummaries.ROLLUPS[1], inserted.getCourseRollups());
+        mergeSketches(inserted.getCourseUsers());
+
+        System.out.println("Summaries updated with " + inserted.getUserActions().values().stream()
+            .mapToLong(Long::longValue).sum() + " new actions");
+    }
+
+    /**
+     * Adds the rollups of newly inserted actions to their buckets,
+     * which may already hold earlier actions of the same bucket.
+     */
+    private void upsertRollups(String[] rollup, Map<SummaryAggregates.Bucket, SummaryAggregates.RollupCounts> buckets)
+            throws SQLException {
+        String upsert = String.format("""
+            INSERT INTO %s (bucketSize, bucketStart, %s, actionCount, labelOneCount, %s)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT DO UPDATE SET
+                actionCount = actionCount + excluded.actionCount,
+                labelOneCount = labelOneCount + excluded.labelOneCount,
+                feature0Sum = feature0Sum + excluded.feature0Sum,
+                feature0Min = MIN(feature0Min, excluded.feature0Min),
+                feature0Max = MAX(feature0Max, excluded.feature0Max),
+                feature1Sum = feature1Sum + excluded.feature1Sum,
+                feature1Min = MIN(feature1Min, excluded.feature1Min),
+                feature1Max = MAX(feature1Max, excluded.feature1Max),
+                feature2Sum = feature2Sum + excluded.feature2Sum,
+                feature2Min = MIN(feature2Min, excluded.feature2Min),
+                feature2Max = MAX(feature2Max, excluded.feature2Max),
+                feature3Sum = feature3Sum + excluded.feature3Sum,
+                feature3Min = MIN(feature3Min, excluded.feature3Min),
+                feature3Max = MAX(feature3Max, excluded.feature3Max)
+            """, rollup[0], rollup[1], SqliteSummaries.ROLLUP_FEATURE_COLUMNS);
+
+        try (PreparedStatement pstmt = connection.prepareStatement(upsert)) {
+            int pending = 0;
+            for (Map.Entry<SummaryAggregates.Bucket, SummaryAggregates.RollupCounts> bucket : buckets.entrySet()) {
+                SummaryAggregates.RollupCounts counts = bucket.getValue();
+                pstmt.setLong(1, bucket.getKey().size());
+                pstmt.setLong(2, bucket.getKey().start());
+                setId(pstmt, 3, bucket.getKey().id());
+                pstmt.setLong(4, counts.actions);
+                pstmt.setLong(5, counts.labelOne);
+                for (int i = 0; i < 4; i++) {
+                    pstmt.setDouble(6 + 3 * i, counts.featureSums[i]);
+                    pstmt.setDouble(7 + 3 * i, counts.featureMins[i]);
+                    pstmt.setDouble(8 + 3 * i, counts.featureMaxs[i]);
+                }
+                pstmt.addBatch();
+
+                if (++pending == BATCH_SIZE) {
+                    pstmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Merges the sketches of newly inserted actions into the stored sketch
+     * of each course, and stores the new distinct user estimates.
+     */
+    private void mergeSketches(Map<String, HyperLogLog> courseUsers) throws SQLException {
+        String upsert = """
+            INSERT INTO CourseSketch (courseId, registers, userCountEstimate) VALUES (?, ?, ?)
+            ON CONFLICT(courseId) DO UPDATE SET
+                registers = excluded.registers,
+                userCountEstimate = excluded.userCountEstimate
+            """;
+
+        try (PreparedStatement selectStmt = connection.prepareStatement(
+                "SELECT registers FROM CourseSketch WHERE courseId = ?");
+             PreparedStatement upsertStmt = connection.prepareStatement(upsert)) {
+
+            for (Map.Entry<String, HyperLogLog> course : courseUsers.entrySet()) {
+                HyperLogLog sketch = course.getValue();
+
+                setId(selectStmt, 1, course.getKey());
+                try (ResultSet stored = selectStmt.executeQuery()) {
+                    if (stored.next()) {
+                        sketch.merge(HyperLogLog.fromBytes(stored.getBytes(1)));
+                    }
+                }
+
+                setId(upsertStmt, 1, course.getKey());
+                upsertStmt.setBytes(2, sketch.toBytes());
+                upsertStmt.setLong(3, sketch.estimate());
+                upsertStmt.addBatch();
             }
+            upsertStmt.executeBatch();
         }
     }
+
+    /**
+     * Recomputes the summary tables from all the stored actions.
+     * Used when the summaries are missing or out of date.
+     */
+    private void rebuildSummaries() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM UserCourseSummary");
+            stmt.executeUpdate("DELETE FROM UserSummary");
+            stmt.executeUpdate("DELETE FROM CourseSummary");
+
+            stmt.executeUpdate("""
+                INSERT INTO UserCourseSummary (userId, courseId, actionCount, positiveFeature2Count)
+                SELECT userId, courseId, COUNT(*), SUM(feature2 > 0)
+                FROM Actions
+                GROUP BY userId, courseId
+                """);
+
+            stmt.executeUpdate("""
+                INSERT INTO UserSummary (userId, actionCount)
+                SELECT userId, SUM(actionCount)
+                FROM UserCourseSummary
+                GROUP BY userId
+                """);
+
+            stmt.executeUpdate("""
+                INSERT INTO CourseSummary (courseId, actionCount, userCount, labelOneCount)
+                SELECT courseId, COUNT(*), COUNT(DISTINCT userId), SUM(label = 1)
+                FROM Actions
+                GROUP BY courseId
+                """);
+
+            // bucket starts are rounded down, also before 1970, as in TimeBuckets.floor
+            for (String[] rollup : SqliteSummaries.ROLLUPS) {
+                stmt.executeUpdate("DELETE FROM " + rollup[0]);
+                stmt.executeUpdate(String.format("""
+                    INSERT INTO %s (bucketSize, bucketStart, %s, actionCount, labelOneCount, %s)
+                    SELECT s.size, a.epochMillis - (a.epochMillis %% s.size + s.size) %% s.size, a.%s,
+                           COUNT(*), SUM(a.label = 1),
+                           SUM(a.feature0), MIN(a.feature0), MAX(a.feature0),
+                           SUM(a.feature1), MIN(a.feature1), MAX(a.feature1),
+                           SUM(a.feature2), MIN(a.feature2), MAX(a.feature2),
+                           SUM(a.feature3), MIN(a.feature3), MAX(a.feature3)
+                    FROM Actions a, (SELECT %d AS size UNION ALL SELECT %d UNION ALL SELECT %d) s
+                    WHERE a.epochMillis IS NOT NULL
+                    GROUP BY 1, 2, 3
+                    """,
+                    rollup[0], rollup[1], SqliteSummaries.ROLLUP_FEATURE_COLUMNS, rollup[1],
+                    TimeBuckets.MINUTE, TimeBuckets.HOUR, TimeBuckets.DAY));
+            }
+
+            stmt.executeUpdate("DELETE FROM CourseSketch");
+        }
+
+        // sketch every distinct pair once, they are already grouped in the summary
+        Map<String, HyperLogLog> courseUsers = new HashMap<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet pairs = stmt.executeQuery("SELECT courseId, userId FROM UserCourseSummary")) {
+            while (pairs.next()) {
+                courseUsers.computeIfAbsent(pairs.getString(1), c -> new HyperLogLog()).add(pairs.getString(2));
+            }
+        }
+        mergeSketches(courseUsers);
+
+        System.out.println("Summaries rebuilt from all actions");
+    }
 }
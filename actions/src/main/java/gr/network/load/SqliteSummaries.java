@@ -0,0 +1,175 @@
+package gr.network.load;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import gr.network.client.SqliteSchema;
+
+/**
+ * Schema and freshness bookkeeping of the SQLite summary tables,
+ * which hold per-user and per-course counters maintained at load time,
+ * their per-minute, per-hour and per-day rollups, and a HyperLogLog
+ * sketch of the distinct users of every course.
+ * The summaries are fresh when every table was last updated in the same
+ * transaction as the actions it describes, each table recording so itself:
+ * tables added since the summaries were last built are stale, and the
+ * next load rebuilds them instead of adding to nothing. Their user and course ids
+ * have the type of the ids of the actions, so a query returns the same
+ * rows in the same order from the summaries as from the actions.
+ * @version 1.2
+ */
+public final class SqliteSummaries {
+
+    /** The summary tables, dropped together when their ids have the wrong type, each with its own freshness. */
+    private static final String[] TABLES = {
+        "UserSummary", "CourseSummary", "UserCourseSummary", "UserRollup", "CourseRollup", "CourseSketch"
+    };
+
+    /** The rollup tables, each with the column of the user or course it is kept for. */
+    static final String[][] ROLLUPS = {
+        {"UserRollup", "userId"},
+        {"CourseRollup", "courseId"}
+    };
+
+    /** The statistics columns kept for every feature of a rollup, in order. */
+    static final String ROLLUP_FEATURE_COLUMNS = """
+        feature0Sum, feature0Min, feature0Max, feature1Sum, feature1Min, feature1Max, \
+        feature2Sum, feature2Min, feature2Max, feature3Sum, feature3Min, feature3Max""";
+
+    private SqliteSummaries() {}
+
+    /**
+     * Creates the summary and metadata tables, if missing, with the ids typed as in the schema.
+     * Summaries whose ids have another type, as created before they followed the schema,
+     * are dropped and marked stale, so the load rebuilds them.
+     */
+    static void createTables(Statement stmt, SqliteSchema schema) throws SQLException {
+        String id = schema.hasIntegerKeys() ? "INTEGER" : "TEXT";
+
+        stmt.execute("""
+            CREATE TABLE IF NOT EXISTS DatasetMeta(
+                key TEXT PRIMARY KEY,
+                value INTEGER NOT NULL
+            )
+            """);
+
+        String existing = idType(stmt);
+        if (existing != null && !existing.equalsIgnoreCase(id)) {
+            for (String table : TABLES) {
+                stmt.execute("DROP TABLE IF EXISTS " + table);
+            }
+            stmt.executeUpdate("DELETE FROM DatasetMeta WHERE key LIKE 'summary_version%'");
+        }
+
+        stmt.execute(String.format("""
+            CREATE TABLE IF NOT EXISTS UserSummary(
+                userId %s PRIMARY KEY,
+                actionCount INTEGER NOT NULL
+            )
+            """, id));
+
+        stmt.execute(String.format("""
+            CREATE TABLE IF NOT EXISTS CourseSummary(
+                courseId %s PRIMARY KEY,
+                actionCount INTEGER NOT NULL,
+                userCount INTEGER NOT NULL,
+                labelOneCount INTEGER NOT NULL
+            )
+            """, id));
+
+        stmt.execute(String.format("""
+            CREATE TABLE IF NOT EXISTS UserCourseSummary(
+                userId %s,
+                courseId %s,
+                actionCount INTEGER NOT NULL,
+                positiveFeature2Count INTEGER NOT NULL,
+                PRIMARY KEY (userId, courseId)
+            )
+            """, id, id));
+
+        // clustered by bucket, so a range of buckets is read sequentially
+        for (String[] rollup : ROLLUPS) {
+            stmt.execute(String.format("""
+                CREATE TABLE IF NOT EXISTS %s(
+                    bucketSize INTEGER,
+                    bucketStart INTEGER,
+                    %s %s,
+                    actionCount INTEGER NOT NULL,
+                    labelOneCount INTEGER NOT NULL,
+                    feature0Sum REAL NOT NULL, feature0Min REAL NOT NULL, feature0Max REAL NOT NULL,
+                    feature1Sum REAL NOT NULL, feature1Min REAL NOT NULL, feature1Max REAL NOT NULL,
+                    feature2Sum REAL NOT NULL, feature2Min REAL NOT NULL, feature2Max REAL NOT NULL,
+                    feature3Sum REAL NOT NULL, feature3Min REAL NOT NULL, feature3Max REAL NOT NULL,
+                    PRIMARY KEY (bucketSize, bucketStart, %s)
+                ) WITHOUT ROWID
+                """, rollup[0], rollup[1], id, rollup[1]));
+        }
+
+        stmt.execute(String.format("""
+            CREATE TABLE IF NOT EXISTS CourseSketch(
+                courseId %s PRIMARY KEY,
+                registers BLOB NOT NULL,
+                userCountEstimate INTEGER NOT NULL
+            )
+            """, id));
+    }
+
+    /**
+     * The declared type of the user ids of the summaries.
+     * @return null if there are no summaries yet
+     */
+    private static String idType(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(
+                "SELECT type FROM pragma_table_info('UserSummary') WHERE name = 'userId'")) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    /** The key recording the actions version a summary table was last brought up to date with. */
+    private static String versionKey(String table) {
+        return "summary_version:" + table;
+    }
+
+    /**
+     * Records that the actions changed and every summary table was brought
+     * up to date with them.
+     */
+    static void markFresh(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                INSERT INTO DatasetMeta (key, value) VALUES ('actions_version', 1)
+                ON CONFLICT(key) DO UPDATE SET value = value + 1
+                """);
+            for (String table : TABLES) {
+                stmt.executeUpdate(String.format("""
+                    INSERT OR REPLACE INTO DatasetMeta (key, value)
+                    SELECT '%s', value FROM DatasetMeta WHERE key = 'actions_version'
+                    """, versionKey(table)));
+            }
+            // the single marker of the summaries before each table had its own
+            stmt.executeUpdate("DELETE FROM DatasetMeta WHERE key = 'summary_version'");
+        }
+    }
+
+    /**
+     * Whether every summary table exists and matches the stored actions.
+     */
+    public static boolean areFresh(Connection connection) {
+        String sql = String.format("""
+            SELECT COUNT(*) FROM DatasetMeta
+            WHERE key IN (%s)
+              AND value = (SELECT value FROM DatasetMeta WHERE key = 'actions_version')
+            """, String.join(", ", Arrays.stream(TABLES).map(table -> "'" + versionKey(table) + "'").toList()));
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet result = stmt.executeQuery(sql)) {
+            return result.next() && result.getInt(1) == TABLES.length;
+        } catch (SQLException e) {
+            // the metadata table does not exist before the first load
+            return false;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package gr.network.load;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import gr.network.domain.Action;
+import gr.network.domain.TimeBuckets;
+import gr.network.sketch.HyperLogLog;
+
+/**
+ * Per-user, per-course and per user-course counters accumulated
+ * over the actions of a load, and their per-bucket rollups. The loaders add them to the summaries
+ * persisted in each database, so the summaries are updated in place
+ * instead of being recomputed from all the actions.
+ * @version 1.0
+ */
+class SummaryAggregates {
+
+    /** Counters of a single course. */
+    static final class CourseCounts {
+        long actions;
+        long labelOne;
+    }
+
+    /** Counters of a single user-course pair. */
+    static final class PairCounts {
+        long actions;
+        long positiveFeature2;
+    }
+
+    record Pair(String user, String course) {}
+
+    /** A time bucket of a single user or course. */
+    record Bucket(long size, long start, String id) {}
+
+    /** Counters and feature statistics of a single bucket. */
+    static final class RollupCounts {
+        long actions;
+        long labelOne;
+        final double[] featureSums = new double[4];
+        final double[] featureMins = {
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY
+        };
+        final double[] featureMaxs = {
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY
+        };
+
+        void add(Action action) {
+            actions++;
+            if (action.getLabel() == 1) {
+                labelOne++;
+            }
+
+            double[] features = {
+                action.getFeature0(), action.getFeature1(), action.getFeature2(), action.getFeature3()
+            };
+            for (int i = 0; i < features.length; i++) {
+                featureSums[i] += features[i];
+                featureMins[i] = Math.min(featureMins[i], features[i]);
+                featureMaxs[i] = Math.max(featureMaxs[i], features[i]);
+            }
+        }
+    }
+
+    private final Map<String, Long> userActions = new HashMap<>();
+    private final Map<String, CourseCounts> courses = new HashMap<>();
+    private final Map<Pair, PairCounts> pairs = new HashMap<>();
+    private final Map<Bucket, RollupCounts> userRollups = new HashMap<>();
+    private final Map<Bucket, RollupCounts> courseRollups = new HashMap<>();
+    private final Map<String, HyperLogLog> courseUsers = new HashMap<>();
+
+    /**
+     * Counts the given action in every aggregate.
+     */
+    void add(Action action) {
+        userActions.merge(action.getUser(), 1L, Long::sum);
+
+        CourseCounts course = courses.computeIfAbsent(action.getCourse(), c -> new CourseCounts());
+        course.actions++;
+        if (action.getLabel() == 1) {
+            course.labelOne++;
+        }
+
+        PairCounts pair = pairs.computeIfAbsent(
+            new Pair(action.getUser(), action.getCourse()),
+            p -> new PairCounts()
+        );
+        pair.actions++;
+        if (action.getFeature2() > 0) {
+            pair.positiveFeature2++;
+        }
+
+        courseUsers.computeIfAbsent(action.getCourse(), c -> new HyperLogLog()).add(action.getUser());
+
+        for (long size : TimeBuckets.SIZES) {
+            long start = TimeBuckets.floor(action.getEpochMillis(), size);
+            userRollups.computeIfAbsent(new Bucket(size, start, action.getUser()), b -> new RollupCounts())
+                .add(action);
+            courseRollups.computeIfAbsent(new Bucket(size, start, action.getCourse()), b -> new RollupCounts())
+                .add(action);
+        }
+    }
+
+    Map<String, Long> getUserActions() {
+        return userActions;
+    }
+
+    Map<String, CourseCounts> getCourses() {
+        return courses;
+    }
+
+    Map<Pair, PairCounts> getPairs() {
+        return pairs;
+    }
+
+    Map<Bucket, RollupCounts> getUserRollups() {
+        return userRollups;
+    }
+
+    Map<Bucket, RollupCounts> getCourseRollups() {
+        return courseRollups;
+    }
+
+    /** The distinct users of each course, sketched. */
+    Map<String, HyperLogLog> getCourseUsers() {
+        return courseUsers;
+    }
+
+    /** The number of actions counted. */
+    long getActionCount() {
+        return userActions.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    boolean isEmpty() {
+        return userActions.isEmpty();
+    }
+}
@@ -0,0 +1,57 @@
+package gr.network.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A monotonically increasing count. Increments from many threads
+ * do not contend, they are only summed when the count is read.
+ * Counts kept elsewhere, such as by a connection pool, can be
+ * tracked too; when one stops being tracked its last value stays
+ * in the counter, so the count never goes back.
+ * @version 1.1
+ */
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    /** The counts kept elsewhere, summed when the count is read. */
+    private final List<LongSupplier> sources = new CopyOnWriteArrayList<>();
+
+    Counter() {}
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    /**
+     * Adds a count kept elsewhere to this counter.
+     * @return stops tracking the count, keeping its last value
+     */
+    public Runnable track(LongSupplier source) {
+        sources.add(source);
+        return () -> {
+            synchronized (sources) {
+                if (sources.remove(source)) {
+                    value.add(source.getAsLong());
+                }
+            }
+        };
+    }
+
+    public long get() {
+        synchronized (sources) {
+            long sum = value.sum();
+            for (LongSupplier source : sources) {
+                sum += source.getAsLong();
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package gr.network.metrics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import gr.network.cache.ResultCache;
+
+/**
+ * The metrics of the application, in one registry shared by
+ * the loaders, the readers and the connections.
+ * @version 1.0
+ */
+public final class Metrics {
+
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    /** The load stages whose rows per second are already exported. */
+    private static final Set<String> RATED_STAGES = ConcurrentHashMap.newKeySet();
+
+    private Metrics() {}
+
+    /**
+     * Records a batch of rows through a load stage: parse, map, sqlite_insert or neo4j_write.
+     * Rows per second of a stage are its rows over the sum of its batch durations.
+     */
+    public static void loadBatch(String stage, long rows, long nanos) {
+        Counter total = REGISTRY.counter("load_rows_total", "Rows through each load stage", "stage", stage);
+        Histogram batches = REGISTRY.histogram(
+            "load_batch_seconds", "Duration of the batches of each load stage", "stage", stage
+        );
+        total.add(rows);
+        batches.observeNanos(nanos);
+
+        if (RATED_STAGES.add(stage)) {
+            REGISTRY.gauge(
+                "load_rows_per_second", "Rows per second of each load stage, while working",
+                () -> total.get() / batches.getSumSeconds(), "stage", stage
+            );
+        }
+    }
+
+    /**
+     * Records the commit of a load transaction.
+     */
+    public static void loadCommit(String backend, long nanos) {
+        REGISTRY.histogram("load_commit_seconds", "Duration of load commits", "backend", backend)
+            .observeNanos(nanos);
+    }
+
+    /**
+     * Exports the hit rate and size of the result cache of a database.
+     * @return stops exporting the cache once it is closed, keeping the hits and misses counted
+     */
+    public static Runnable resultCache(String backend, ResultCache<?> cache) {
+        Runnable hits = REGISTRY.counter("result_cache_hits_total", "Queries served from the cache",
+            cache::getHits, "backend", backend);
+        Runnable misses = REGISTRY.counter("result_cache_misses_total", "Queries not found in the cache",
+            cache::getMisses, "backend", backend);
+        Runnable hitRatio = REGISTRY.gauge("result_cache_hit_ratio", "Share of lookups served from the cache",
+            cache::getHitRate, "backend", backend);
+        Runnable entries = REGISTRY.gauge("result_cache_entries", "Results held by the cache",
+            cache::size, "backend", backend);
+        return () -> {
+            hits.run();
+            misses.run();
+            hitRatio.run();
+            entries.run();
+        };
+    }
+
+    /**
+     * Records a query run against a database, or served from the cache.
+     */
+    public static void query(String backend, String alias, boolean cached, long nanos) {
+        REGISTRY.histogram(
+            "query_seconds", "Duration of queries, consuming every row",
+            "backend", backend, "alias", alias, "cached", String.valueOf(cached)
+        ).observeNanos(nanos);
+    }
+}
@@ -0,0 +1,79 @@
+package gr.network.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the metrics on the loopback interface while the application runs,
+ * /metrics in the Prometheus text format and /metrics.json as JSON,
+ * and dumps them as JSON when closed, so short runs keep their metrics.
+ * @version 1.0
+ */
+public class MetricsExporter implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /** The port Prometheus exporters conventionally serve on. */
+    public static final int DEFAULT_PORT = 9464;
+
+    private final MetricsRegistry registry;
+    private final HttpServer server;
+    private final Path directory;
+
+    public MetricsExporter(MetricsRegistry registry, int port) throws IOException {
+        this(registry, port, Path.of("metrics"));
+    }
+
+    public MetricsExporter(MetricsRegistry registry, int port, Path directory) throws IOException {
+        this.registry = registry;
+        this.directory = directory;
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange ->
+            respond(exchange, "text/plain; version=0.0.4; charset=utf-8", registry.toPrometheus()));
+        server.createContext("/metrics.json", exchange ->
+            respond(exchange, "application/json", registry.toJson()));
+        server.start();
+
+        logger.info("Serving metrics on http://{}:{}/metrics",
+            server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+
+        Files.createDirectories(directory);
+        Path file = directory.resolve("metrics-" + LocalDateTime.now().format(FILE_TIME) + ".json");
+        Files.writeString(file, registry.toJson());
+        logger.info("Metrics dumped to {}", file);
+    }
+}
@@ -0,0 +1,192 @@
+package gr.network.metrics;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Named metrics with labels, exported in the Prometheus text format
+ * or as JSON. Looking a metric up is a map access, so instrumented
+ * code may look it up on every use instead of keeping it.
+ * @version 1.1
+ */
+public final class MetricsRegistry {
+
+    private enum Type { COUNTER, GAUGE, HISTOGRAM }
+
+    /** Every metric of one name, one per combination of label values. */
+    private record Family(String name, String help, Type type, Map<String, Object> metrics) {}
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * The counter with the given name and label name-value pairs, created on first use.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).metrics()
+            .computeIfAbsent(labels(labels), l -> new Counter());
+    }
+
+    /**
+     * Tracks a count kept elsewhere in the counter with the given name and labels,
+     * summed with every other count tracked under the same labels.
+     * @return stops tracking the count, keeping its last value in the counter
+     */
+    public Runnable counter(String name, String help, LongSupplier value, String... labels) {
+        return counter(name, help, labels).track(value);
+    }
+
+    /**
+     * The histogram with the given name and label name-value pairs, created on first use.
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, Type.HISTOGRAM).metrics()
+            .computeIfAbsent(labels(labels), l -> new Histogram());
+    }
+
+    /**
+     * Registers a value read only when exported, replacing any with the same labels.
+     * @return stops exporting the value, unless another has replaced it since
+     */
+    public Runnable gauge(String name, String help, DoubleSupplier value, String... labels) {
+        Map<String, Object> metrics = family(name, help, Type.GAUGE).metrics();
+        String key = labels(labels);
+        metrics.put(key, value);
+        return () -> metrics.remove(key, value);
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(
+            name, n -> new Family(n, help, type, new ConcurrentHashMap<>())
+        );
+        if (family.type() != type) {
+            throw new IllegalArgumentException(name + " is already a " + family.type().name().toLowerCase());
+        }
+        return family;
+    }
+
+    /**
+     * Renders label name-value pairs as they appear in the text format.
+     */
+    private static String labels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name-value pairs");
+        }
+        List<String> pairs = new ArrayList<>();
+        for (int i = 0; i < labels.length; i += 2) {
+            String value = labels[i + 1]
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n");
+            pairs.add(labels[i] + "=\"" + value + "\"");
+        }
+        return String.join(",", pairs);
+    }
+
+    /**
+     * The metrics in the Prometheus text exposition format.
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+
+        for (Family family : families.values()) {
+            text.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+            text.append("# TYPE ").append(family.name()).append(' ')
+                .append(family.type().name().toLowerCase()).append('\n');
+
+            for (Map.Entry<String, Object> metric : new ConcurrentSkipListMap<>(family.metrics()).entrySet()) {
+                String labels = metric.getKey();
+                switch (family.type()) {
+                    case COUNTER -> sample(text, family.name(), labels, ((Counter) metric.getValue()).get());
+                    case GAUGE -> sample(text, family.name(), labels, ((DoubleSupplier) metric.getValue()).getAsDouble());
+                    case HISTOGRAM -> {
+                        Histogram histogram = (Histogram) metric.getValue();
+                        long[] counts = histogram.cumulativeCounts();
+                        String prefix = labels.isEmpty() ? "" : labels + ",";
+                        for (int i = 0; i < counts.length; i++) {
+                            String bound = i < Histogram.BOUNDS.length ? format(Histogram.BOUNDS[i]) : "+Inf";
+                            sample(text, family.name() + "_bucket", prefix + "le=\"" + bound + "\"", counts[i]);
+                        }
+                        sample(text, family.name() + "_sum", labels, histogram.getSumSeconds());
+                        sample(text, family.name() + "_count", labels, counts[counts.length - 1]);
+                    }
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, double value) {
+        text.append(name);
+        if (!labels.isEmpty()) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(format(value)).append('\n');
+    }
+
+    /**
+     * The metrics as a JSON object of metric names, each an array of
+     * its labelled values; histograms with their count, sum and buckets.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        boolean firstFamily = true;
+
+        for (Family family : families.values()) {
+            json.append(firstFamily ? "" : ",\n").append("  \"").append(family.name()).append("\": [");
+            firstFamily = false;
+
+            boolean firstMetric = true;
+            for (Map.Entry<String, Object> metric : new ConcurrentSkipListMap<>(family.metrics()).entrySet()) {
+                json.append(firstMetric ? "\n" : ",\n").append("    {\"labels\": {");
+                firstMetric = false;
+                // label values are already escaped as in the text format, which is valid JSON
+                json.append(metric.getKey().replaceAll("(\\w+)=\"", "\"$1\": \"").replace("\",\"", "\", \""));
+                json.append("}, ");
+
+                switch (family.type()) {
+                    case COUNTER -> json.append("\"value\": ").append(((Counter) metric.getValue()).get());
+                    case GAUGE -> json.append("\"value\": ")
+                        .append(jsonNumber(((DoubleSupplier) metric.getValue()).getAsDouble()));
+                    case HISTOGRAM -> {
+                        Histogram histogram = (Histogram) metric.getValue();
+                        long[] counts = histogram.cumulativeCounts();
+                        json.append("\"count\": ").append(counts[counts.length - 1])
+                            .append(", \"sum\": ").append(jsonNumber(histogram.getSumSeconds()))
+                            .append(", \"buckets\": {");
+                        for (int i = 0; i < counts.length; i++) {
+                            String bound = i < Histogram.BOUNDS.length ? format(Histogram.BOUNDS[i]) : "+Inf";
+                            json.append(i == 0 ? "" : ", ").append('"').append(bound).append("\": ").append(counts[i]);
+                        }
+                        json.append('}');
+                    }
+                }
+                json.append('}');
+            }
+            json.append(firstMetric ? "]" : "\n  ]");
+        }
+        return json.append("\n}\n").toString();
+    }
+
+    private static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+
+    private static String jsonNumber(double value) {
+        return Double.isFinite(value) ? format(value) : "null";
+    }
+}
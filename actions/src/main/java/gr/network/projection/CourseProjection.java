@@ -0,0 +1,223 @@
+package gr.network.projection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+
+import gr.network.domain.Action;
+import gr.network.read.sink.ListRow;
+import gr.network.read.sink.ResultSink;
+
+/**
+ * The user-course graph projected on the courses: for every two courses,
+ * the number of distinct users who acted on both. Courses are compared
+ * by their shared users ("also taken") or by the Jaccard similarity of
+ * their users, the shared users over the users of either course.
+ * Built in parallel from the courses of every user, then kept up to
+ * date one action at a time, as the input is parsed.
+ * @version 1.0
+ */
+public final class CourseProjection implements Consumer<Action> {
+
+    /** A course, with the users it shares with the one compared and their Jaccard similarity. */
+    public record Similar(String course, long sharedUsers, double jaccard) {}
+
+    private final Map<String, Integer> courseIndex = new HashMap<>();
+    private final List<String> courses = new ArrayList<>();
+
+    /** The distinct users of every course, by index. */
+    private long[] courseUsers = new long[16];
+
+    /** The shared users of every course with each other course, by index, kept both ways. */
+    private final List<Map<Integer, Long>> shared = new ArrayList<>();
+
+    /** The courses of every user, by index, so a new action adds only the pairs it creates. */
+    private final Map<String, Set<Integer>> userCourses = new HashMap<>();
+
+    private long pairs;
+
+    /**
+     * Projects the courses of every user, counting the pairs of each user on its own thread.
+     * @param userCourses the distinct courses of every user
+     */
+    public static CourseProjection build(Map<String, ? extends Collection<String>> userCourses) {
+        CourseProjection projection = new CourseProjection();
+
+        // indexes are assigned first, so the threads only read them
+        Map<String, int[]> indexed = new HashMap<>(userCourses.size() * 2);
+        for (Map.Entry<String, ? extends Collection<String>> user : userCourses.entrySet()) {
+            Set<Integer> taken = new HashSet<>();
+            for (String course : user.getValue()) {
+                taken.add(projection.indexOf(course));
+            }
+            projection.userCourses.put(user.getKey(), taken);
+            indexed.put(user.getKey(), taken.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        int courseCount = projection.courses.size();
+        PairCounts counts = indexed.values().parallelStream().collect(Collector.of(
+            () -> new PairCounts(courseCount),
+            PairCounts::add,
+            PairCounts::merge,
+            Collector.Characteristics.UNORDERED
+        ));
+
+        System.arraycopy(counts.users, 0, projection.courseUsers, 0, courseCount);
+        for (Map.Entry<Long, Long> pair : counts.pairs.entrySet()) {
+            int a = (int) (pair.getKey() >>> 32);
+            int b = (int) (long) pair.getKey();
+            projection.shared.get(a).put(b, pair.getValue());
+            projection.shared.get(b).put(a, pair.getValue());
+        }
+        projection.pairs = counts.pairs.size();
+        return projection;
+    }
+
+    /**
+     * Adds an action, counting its user for its course and every
+     * other course of the user, the first time the user acts on it.
+     */
+    @Override
+    public synchronized void accept(Action action) {
+        int course = indexOf(action.getCourse());
+        Set<Integer> taken = userCourses.computeIfAbsent(action.getUser(), user -> new HashSet<>());
+        if (!taken.add(course)) {
+            return;
+        }
+
+        courseUsers[course]++;
+        for (int other : taken) {
+            if (other == course) {
+                continue;
+            }
+            if (shared.get(course).merge(other, 1L, Long::sum) == 1L) {
+                pairs++;
+            }
+            shared.get(other).merge(course, 1L, Long::sum);
+        }
+    }
+
+    private int indexOf(String course) {
+        Integer index = courseIndex.get(course);
+        if (index != null) {
+            return index;
+        }
+        index = courses.size();
+        courseIndex.put(course, index);
+        courses.add(course);
+        shared.add(new HashMap<>());
+        if (index == courseUsers.length) {
+            courseUsers = Arrays.copyOf(courseUsers, index * 2);
+        }
+        return index;
+    }
+
+    /**
+     * The courses sharing the most users with the given one, by Jaccard similarity.
+     */
+    public synchronized List<Similar> topSimilar(String course, int n) {
+        return top(course, n, Comparator.comparingDouble(Similar::jaccard).reversed()
+            .thenComparing(Comparator.comparingLong(Similar::sharedUsers).reversed()));
+    }
+
+    /**
+     * The courses most users of the given one also acted on.
+     */
+    public synchronized List<Similar> alsoTaken(String course, int n) {
+        return top(course, n, Comparator.comparingLong(Similar::sharedUsers).reversed()
+            .thenComparing(Comparator.comparingDouble(Similar::jaccard).reversed()));
+    }
+
+    private List<Similar> top(String course, int n, Comparator<Similar> order) {
+        Integer index = courseIndex.get(course);
+        if (index == null) {
+            return List.of();
+        }
+
+        List<Similar> similar = new ArrayList<>(shared.get(index).size());
+        for (Map.Entry<Integer, Long> other : shared.get(index).entrySet()) {
+            long both = other.getValue();
+            long either = courseUsers[index] + courseUsers[other.getKey()] - both;
+            similar.add(new Similar(courses.get(other.getKey()), both, (double) both / either));
+        }
+        similar.sort(order.thenComparing(Similar::course));
+        return similar.size() > n ? List.copyOf(similar.subList(0, n)) : similar;
+    }
+
+    /** The distinct users of a course. */
+    public synchronized long getUsers(String course) {
+        Integer index = courseIndex.get(course);
+        return index == null ? 0 : courseUsers[index];
+    }
+
+    public synchronized int getCourseCount() {
+        return courses.size();
+    }
+
+    /** The pairs of courses sharing at least one user. */
+    public synchronized long getPairCount() {
+        return pairs;
+    }
+
+    /**
+     * Passes both rankings of the courses related to the given one to the sink.
+     */
+    public void report(ResultSink sink, String course, int n) throws IOException {
+        report(sink, "Courses also taken with " + course + " (projection)", alsoTaken(course, n));
+        report(sink, "Courses similar to " + course + " by Jaccard (projection)", topSimilar(course, n));
+    }
+
+    private void report(ResultSink sink, String label, List<Similar> similar) throws IOException {
+        sink.begin(label, List.of("targetId", "shared_users", "jaccard"));
+        for (Similar other : similar) {
+            sink.accept(new ListRow(List.of(other.course(), other.sharedUsers(), other.jaccard())));
+        }
+        System.out.println("\n> " + label);
+        sink.end();
+    }
+
+    /**
+     * The pair counts of some of the users, merged with the others once counted.
+     */
+    private static final class PairCounts {
+
+        private final long[] users;
+
+        /** Shared users by pair, the lower index in the high half of the key. */
+        private final Map<Long, Long> pairs = new HashMap<>();
+
+        PairCounts(int courses) {
+            this.users = new long[courses];
+        }
+
+        void add(int[] taken) {
+            for (int i = 0; i < taken.length; i++) {
+                users[taken[i]]++;
+                for (int j = i + 1; j < taken.length; j++) {
+                    pairs.merge(key(taken[i], taken[j]), 1L, Long::sum);
+                }
+            }
+        }
+
+        PairCounts merge(PairCounts other) {
+            for (int i = 0; i < users.length; i++) {
+                users[i] += other.users[i];
+            }
+            other.pairs.forEach((key, count) -> pairs.merge(key, count, Long::sum));
+            return this;
+        }
+
+        private static long key(int a, int b) {
+            return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+        }
+    }
+}
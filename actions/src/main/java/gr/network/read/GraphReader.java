@@ -1,15 +1,38 @@
 package gr.network.read;
 
 import org.neo4j.driver.Session;
+import org.neo4j.driver.TransactionConfig;
 import org.neo4j.driver.Result;
 import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.summary.ProfiledPlan;
+import org.neo4j.driver.summary.ResultSummary;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import gr.network.cache.ResultCache;
 import gr.network.client.Neo4jConnection;
-
+import gr.network.domain.QueryResult;
+import gr.network.domain.TimeBuckets;
+import gr.network.domain.Timestamps;
+import gr.network.load.GraphSummaries;
+import gr.network.metrics.Metrics;
+import gr.network.read.sink.PreviewSink;
+import gr.network.read.sink.ResultSink;
+import gr.network.read.sink.Row;
+import gr.network.sketch.HyperLogLog;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
 
 /**
  * Communicates with the Neo4j database
@@ -19,15 +42,124 @@ import java.util.Scanner;
 public class GraphReader {
 
     private final Logger logger = LoggerFactory.getLogger(GraphReader.class);
-    private final Session session;
+    private final Neo4jConnection connection;
+    private final ResultCache<QueryResult> cache;
 
     private Scanner scanner;
 
+    /** Whether results may be served from and stored to the cache. */
+    private boolean useCache = true;
+
+    /** Whether queries may read the summaries maintained at load time. */
+    private boolean useSummaries = true;
+
+    /** Whether the summaries match the actions, and the cache version it was checked at. */
+    private Boolean summariesFresh;
+    private long summariesCheckedAt = -1;
+
+    /** Where the rows of every query go. */
+    private ResultSink sink = new PreviewSink();
+
+    /** Records query plans, when profiling. */
+    private QueryProfiler profiler;
+
+    /** Statements queued instead of run, while running asynchronously. */
+    private List<PendingQuery> pending;
+
+    /** The alias of the query currently running. */
+    private String alias;
+
+    /** Why the last query failed, null if it completed. */
+    private volatile Exception failure;
+
+    /** How long a statement may run before the server terminates it, unlimited if null. */
+    private Duration timeout;
+
     public GraphReader(Neo4jConnection connection, Scanner scanner) {
-        this.session = connection.getSession();
+        this.connection = connection;
+        this.cache = connection.getResultCache();
         this.scanner = scanner;
     }
 
+    /**
+     * Enables or disables the result cache for this reader.
+     * Benchmarks should disable it, to time the database itself.
+     */
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    /**
+     * Sets where the rows of every query go.
+     * By default a preview of each result is printed.
+     */
+    public void setSink(ResultSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Profiles every query and records its plan.
+     * Profiled queries bypass the result cache.
+     */
+    public void setProfiler(QueryProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Has the server terminate statements running longer than the timeout.
+     * A sync session cannot be interrupted from another thread, so this is
+     * how a query given up on stops using the database.
+     */
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    private TransactionConfig transactionConfig() {
+        return timeout != null
+            ? TransactionConfig.builder().withTimeout(timeout).build()
+            : TransactionConfig.empty();
+    }
+
+    /**
+     * Why the last query failed, null if it completed.
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Enables or disables reading the load-time summaries.
+     * Disabled, every query scans the ACTION relationships.
+     */
+    public void setUseSummaries(boolean useSummaries) {
+        this.useSummaries = useSummaries;
+    }
+
+    /**
+     * Whether queries should read the summaries instead of the actions.
+     */
+    private boolean summariesAvailable() {
+        if (!useSummaries) {
+            return false;
+        }
+        // a load in this process bumps the version, and every query checks again for other processes
+        long version = cache.getVersion();
+        if (summariesFresh == null || summariesCheckedAt != version) {
+            Boolean wasFresh = summariesFresh;
+            try (Session session = connection.openSession()) {
+                summariesFresh = session.run(GraphSummaries.ARE_FRESH).single().get("fresh").asBoolean();
+            } catch (Exception e) {
+                logger.warn("Could not check the summaries, falling back to the actions", e);
+                summariesFresh = false;
+            }
+            summariesCheckedAt = version;
+            if (!summariesFresh.equals(wasFresh)) {
+                logger.info("Summaries {}", summariesFresh ? "fresh, using them" : "stale, scanning the actions");
+            }
+        }
+        return summariesFresh;
+    }
+
     /**
      * Executes the query specified by alias.
      * If queryName is null or empty, display menu and let user choose.
@@ -41,31 +173,175 @@ public class GraphReader {
         }
 
         logger.info("Running query '{}'.", queryName);
+        alias = queryName.toLowerCase();
+        failure = null;
+        summariesCheckedAt = -1;
 
         double totalTime = 0.0;
         switch (queryName.toLowerCase()) {
             case "graphsize" -> totalTime = graphSize();
-            case "actionstargetsofuser" -> {
-                // take user input for the user id
-                String userId = "";
-                do {
-                    System.out.print("Provide a user id: ");
-                    userId = scanner.nextLine().trim();
-                } while (userId.isBlank());
-
-
-                totalTime = actionsTargetsOfUser(userId);
-            }
+            case "actionstargetsofuser" ->
+                totalTime = actionsTargetsOfUser(Prompts.nonBlank(scanner, "Provide a user id: "));
             case "actionsperuser" -> totalTime = actionsPerUser();
             case "toptargets" -> totalTime = topTargets();
+            case "toptargetsapprox" -> totalTime = topTargetsApproximate();
             case "avgactions" -> totalTime = avgActionsPerUser();
             case "positivefeature2" -> totalTime = userTargetWithPositiveFeature2();
             case "label1pertarget" -> totalTime = labelOnePerTarget();
-            default -> System.out.println("Unknown query: " + queryName);
+            case "actionsperuserwindow" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = actionsPerUserInWindow(from, to);
+            }
+            case "toptargetsrecent" -> totalTime = topTargetsRecent(Prompts.hours(scanner));
+            case "label1ratebyhour" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = labelOneRateByHour(from, to);
+            }
+            case "courseactivity" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = activityInWindow("Course", from, to);
+            }
+            case "useractivity" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = activityInWindow("User", from, to);
+            }
+            case "similarcourses" ->
+                totalTime = similarCourses(Prompts.nonBlank(scanner, "Provide a course id: "));
+            default -> {
+                System.out.println("Unknown query: " + queryName);
+                failure = new IllegalArgumentException("Unknown query: " + queryName);
+            }
         }
         return totalTime;
     }
 
+    /**
+     * Executes the queries specified by alias concurrently.
+     * The statements of every query are pipelined over asynchronous
+     * sessions, with a bounded number in flight, and their results
+     * are printed in order once all of them complete.
+     * @return wall clock time of all the queries in milliseconds
+     */
+    public double runAsync(List<String> queryNames) {
+        if (profiler != null) {
+            logger.warn("Profiled queries run one at a time");
+            return queryNames.stream().mapToDouble(this::run).sum();
+        }
+
+        // the query methods queue their statements instead of running them
+        List<PendingQuery> queued = new ArrayList<>();
+        pending = queued;
+        try {
+            queryNames.forEach(this::run);
+        } finally {
+            pending = null;
+        }
+
+        logger.info("Running {} statements asynchronously, {} in flight.",
+            queued.size(), connection.getMaxInFlight());
+
+        Semaphore inFlight = new Semaphore(connection.getMaxInFlight());
+        List<CompletableFuture<TimedResult>> results = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (PendingQuery query : queued) {
+            results.add(submit(query, inFlight));
+        }
+
+        for (int i = 0; i < queued.size(); i++) {
+            PendingQuery query = queued.get(i);
+            try {
+                TimedResult timed = results.get(i).join();
+                printResult(query.label(), timed);
+            } catch (Exception e) {
+                System.err.printf("Error executing query '%s': %s\n", query.label(), e.getMessage());
+                logger.error("Error executing query '{}'", query.label(), e);
+                failure = e;
+            }
+        }
+        double duration = (System.nanoTime() - start) / 1_000_000.0;
+
+        System.out.printf("\n> %d statements completed in %.2f ms\n", queued.size(), duration);
+        return duration;
+    }
+
+    /**
+     * Runs a queued statement on its own asynchronous session,
+     * once fewer than the maximum statements are in flight.
+     */
+    private CompletableFuture<TimedResult> submit(PendingQuery query, Semaphore inFlight) {
+        if (useCache) {
+            QueryResult cached = cache.get(query.key());
+            if (cached != null) {
+                return CompletableFuture.completedFuture(new TimedResult(cached, 0.0, true));
+            }
+        }
+
+        inFlight.acquireUninterruptibly();
+        long version = cache.getVersion();
+        long start = System.nanoTime();
+
+        AsyncSession asyncSession = null;
+        CompletionStage<QueryResult> running;
+        try {
+            asyncSession = connection.openAsyncSession();
+            AsyncSession opened = asyncSession;
+            running = asyncSession.executeReadAsync(tx -> tx.runAsync(query.cypher(), query.params())
+                    .thenCompose(cursor -> cursor.<List<Object>>listAsync(r -> new ArrayList<>(r.values()))
+                        .thenApply(rows -> new QueryResult(cursor.keys(), rows))), transactionConfig())
+                .whenComplete((result, error) ->
+                    opened.closeAsync().whenComplete((ignored, closeError) -> inFlight.release()));
+        } catch (RuntimeException e) {
+            // the statement never started, so nothing else gives the permit back
+            if (asyncSession != null) {
+                asyncSession.closeAsync().whenComplete((ignored, closeError) -> inFlight.release());
+            } else {
+                inFlight.release();
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+        return running
+            .thenApply(result -> {
+                long nanos = System.nanoTime() - start;
+                double duration = nanos / 1_000_000.0;
+                Metrics.query("neo4j", query.key().alias(), false, nanos);
+                if (useCache && result.rows().size() <= QueryResult.MAX_ROWS) {
+                    cache.put(query.key(), result, version);
+                }
+                return new TimedResult(result, duration, false);
+            })
+            .toCompletableFuture();
+    }
+
+    /**
+     * Passes the rows of a completed statement to the sink.
+     */
+    private void printResult(String label, TimedResult timed) throws IOException {
+        sink.begin(label, timed.result().columns());
+        ValuesRow row = new ValuesRow();
+        for (List<Object> values : timed.result().rows()) {
+            row.values = values;
+            sink.accept(row);
+        }
+
+        if (timed.cached()) {
+            System.out.printf("\n> %s (cached)\n", label);
+        } else {
+            System.out.printf("\n> %s (%.2f ms)\n", label, timed.durationMs());
+        }
+        sink.end();
+    }
+
+    /** A statement queued while running asynchronously. */
+    private record PendingQuery(ResultCache.Key key, String label, String cypher, Map<String, Object> params) {}
+
+    /** The result of a statement with the time it took. */
+    private record TimedResult(QueryResult result, double durationMs, boolean cached) {}
+
     /**
      * (2) Count of users, courses and actions
      * @return total execution time in milliseconds
@@ -111,17 +387,20 @@ public class GraphReader {
     private double actionsTargetsOfUser(String userID) {
         System.out.println("actionsTargetsOfUser of id " + userID);
 
-        String actionsTargetCypher = String.format(
-        """
-            MATCH (:User {id: '%s'})
+        String actionsTargetCypher = """
+            MATCH (:User {id: $userId})
             -[action:ACTION]->
             (course:Course)
             return action.action as actionId, course.id as courseID
             ORDER BY actionId
             LIMIT 10
-        """, userID);
+        """;
 
-        return executeAndPrint("Actions and Targets of user " + userID, actionsTargetCypher);
+        return executeAndPrint(
+            "Actions and Targets of user " + userID,
+            actionsTargetCypher,
+            Map.of("userId", userID)
+        );
     }
 
     /**
@@ -131,13 +410,20 @@ public class GraphReader {
     private double actionsPerUser() {
         System.out.println("actionsPerUser");
 
-        String actionsTargetCypher = String.format(
+        String actionsTargetCypher = summariesAvailable()
+        ? """
+            MATCH (user:User)
+            WHERE user.actionCount > 0
+            RETURN user.id as userId, user.actionCount as totalActions
+            ORDER BY userId
+            LIMIT 10
         """
+        : """
             MATCH (user:User)-[action:ACTION]->()
             RETURN user.id as userId, count(action) as totalActions
             ORDER BY userId
             LIMIT 10
-        """);
+        """;
 
         return executeAndPrint("Action Counts per User", actionsTargetCypher);
     }
@@ -147,7 +433,14 @@ public class GraphReader {
      * @return execution time in milliseconds
      */
     private double topTargets() {
-        String cypher = """
+        String cypher = summariesAvailable()
+        ? """
+        MATCH (t:Course)
+        RETURN t.id AS targetID, t.userCount as userCount
+        ORDER BY userCount DESC
+        LIMIT 10
+    """
+        : """
         MATCH (t:Course)
         MATCH (u:User)-[:ACTION]->(t)
         RETURN t.id AS targetID, COUNT(DISTINCT u) as userCount
@@ -158,12 +451,49 @@ public class GraphReader {
         return executeAndPrint("Top 10 targets by distinct users", cypher);
     }
 
+    /**
+     * (5b) Top targets by distinct users, estimated from the HyperLogLog
+     * sketch of every course, with the bound the estimate is within
+     * 95% of the time. Counts exactly, without a bound, when the sketches
+     * are unavailable.
+     * @return execution time in milliseconds
+     */
+    private double topTargetsApproximate() {
+        if (!summariesAvailable()) {
+            String cypher = """
+                MATCH (u:User)-[:ACTION]->(t:Course)
+                RETURN t.id AS targetID, count(DISTINCT u) AS userCount
+                ORDER BY userCount DESC
+                LIMIT 10
+                """;
+            return executeAndPrint("Top targets by distinct users (exact, no sketches)", cypher);
+        }
+
+        double errorBound = 2 * HyperLogLog.standardError();
+        String cypher = """
+            MATCH (t:Course)
+            WHERE t.userCountEstimate IS NOT NULL
+            RETURN t.id AS targetID, t.userCountEstimate AS userCount,
+                   round(t.userCountEstimate * $errorBound) AS errorBound
+            ORDER BY userCount DESC
+            LIMIT 10
+            """;
+        String label = String.format("Top targets by distinct users (approximate, +/-%.1f%% at 95%%)", 100 * errorBound);
+        return executeAndPrint(label, cypher, Map.of("errorBound", errorBound));
+    }
+
     /**
      * (6) Count the average number of actions per user
      * @return execution time in milliseconds
      */
     private double avgActionsPerUser() {
-        String cypher = """
+        String cypher = summariesAvailable()
+            ? """
+            MATCH (u:User)
+            WHERE u.actionCount > 0
+            RETURN avg(u.actionCount) AS avgActionsPerUser
+            """
+            : """
             MATCH (u:User)-[r:ACTION]->()
             WITH u, count(r) AS total
             RETURN avg(total) AS avgActionsPerUser
@@ -177,7 +507,15 @@ public class GraphReader {
      * @return execution time in milliseconds
      */
     private double userTargetWithPositiveFeature2() {
-        String cypher = """
+        String cypher = summariesAvailable()
+            ? """
+            MATCH (u:User)-[e:ENGAGED]->(t:Course)
+            WHERE e.positiveFeature2Count > 0
+            RETURN u.id AS userID, t.id AS targetID
+            ORDER BY userID, targetID
+            LIMIT 10
+            """
+            : """
             MATCH (u:User)-[r:ACTION]->(t:Course)
             WHERE r.feature2 > 0
             RETURN DISTINCT u.id AS userID, t.id AS targetID
@@ -193,7 +531,15 @@ public class GraphReader {
      * @return execution time in milliseconds
      */
     private double labelOnePerTarget() {
-        String cypher = """
+        String cypher = summariesAvailable()
+            ? """
+            MATCH (t:Course)
+            WHERE t.labelOneCount > 0
+            RETURN t.id AS targetID, t.labelOneCount AS labelOneCount
+            ORDER BY labelOneCount DESC
+            LIMIT 10
+            """
+            : """
             MATCH (:User)-[:ACTION {label: 1}]->(t:Course)
             RETURN t.id AS targetID, count(*) AS labelOneCount
             ORDER BY labelOneCount DESC
@@ -204,31 +550,321 @@ public class GraphReader {
     }
 
     /**
-     * Executes and prints the result of the given Cypher query.
+     * Count of actions per user within [from, to)
+     * @return execution time in milliseconds
+     */
+    private double actionsPerUserInWindow(long from, long to) {
+        String cypher = """
+            MATCH (u:User)-[a:ACTION]->()
+            WHERE a.epochMillis >= $from AND a.epochMillis < $to
+            RETURN u.id AS userID, count(a) AS totalActions
+            ORDER BY userID
+            LIMIT 10
+            """;
+
+        return executeAndPrint("Action Counts per User in window", cypher, Map.of("from", from, "to", to));
+    }
+
+    /**
+     * Top targets by distinct users over the last hours of the data.
+     * The window ends at the latest action, not at the current time,
+     * since the timestamps may be relative to the start of the recording.
+     * @return execution time in milliseconds
+     */
+    private double topTargetsRecent(long hours) {
+        // the latest action is read from the end of the epochMillis index
+        String cypher = """
+            MATCH ()-[latest:ACTION]->()
+            WHERE latest.epochMillis IS NOT NULL
+            WITH latest.epochMillis AS end
+            ORDER BY end DESC
+            LIMIT 1
+            MATCH (u:User)-[a:ACTION]->(t:Course)
+            WHERE a.epochMillis >= end - $windowMillis
+            RETURN t.id AS targetID, count(DISTINCT u) AS userCount
+            ORDER BY userCount DESC
+            LIMIT 10
+            """;
+
+        return executeAndPrint("Top targets over the last " + hours + " hours", cypher,
+            Map.of("windowMillis", hours * Timestamps.MILLIS_PER_HOUR));
+    }
+
+    /**
+     * Rate of label=1 actions per hour within [from, to)
+     * @return execution time in milliseconds
+     */
+    private double labelOneRateByHour(long from, long to) {
+        String cypher = """
+            MATCH ()-[a:ACTION]->()
+            WHERE a.epochMillis >= $from AND a.epochMillis < $to
+            WITH a.epochMillis / $hourMillis AS hour, a.label AS label
+            RETURN hour,
+                   count(*) AS actionCount,
+                   sum(CASE WHEN label = 1 THEN 1 ELSE 0 END) AS labelOneCount,
+                   avg(CASE WHEN label = 1 THEN 1.0 ELSE 0.0 END) AS labelOneRate
+            ORDER BY hour
+            """;
+
+        return executeAndPrint("Label=1 rate by hour", cypher,
+            Map.of("from", from, "to", to, "hourMillis", Timestamps.MILLIS_PER_HOUR));
+    }
+
+    /**
+     * Action and label=1 counts with feature statistics, per course or
+     * per user, within [from, to) rounded down to whole minutes.
+     * The rollups answer it from a handful of buckets per user or course.
+     * @return execution time in milliseconds
+     */
+    private double activityInWindow(String dimension, long from, long to) {
+        String id = dimension.equals("Course") ? "courseId" : "userId";
+        String label = dimension + " activity in window";
+
+        if (summariesAvailable()) {
+            List<Map<String, Object>> segments = TimeBuckets.cover(from, to).stream()
+                .map(segment -> Map.<String, Object>of(
+                    "size", segment.size(), "from", segment.from(), "to", segment.to()))
+                .toList();
+
+            String cypher = """
+                UNWIND $segments AS s
+                MATCH (r:%sRollup)
+                WHERE r.bucketSize = s.size AND r.bucketStart >= s.from AND r.bucketStart < s.to
+                WITH r.%s AS id, sum(r.actionCount) AS actionCount, sum(r.labelOneCount) AS labelOneCount,
+                     collect(r) AS buckets
+                RETURN id, actionCount, labelOneCount,
+                       [i IN range(0, 3) | reduce(total = 0.0, b IN buckets | total + b.featureSums[i]) / actionCount]
+                           AS featureAvgs,
+                       [i IN range(0, 3) | reduce(low = buckets[0].featureMins[i], b IN buckets |
+                           CASE WHEN b.featureMins[i] < low THEN b.featureMins[i] ELSE low END)] AS featureMins,
+                       [i IN range(0, 3) | reduce(high = buckets[0].featureMaxs[i], b IN buckets |
+                           CASE WHEN b.featureMaxs[i] > high THEN b.featureMaxs[i] ELSE high END)] AS featureMaxs
+                ORDER BY actionCount DESC, id
+                LIMIT 10
+                """.formatted(dimension, id);
+
+            return executeAndPrint(label, cypher, Map.of("segments", segments));
+        }
+
+        String pattern = dimension.equals("Course") ? "()-[a:ACTION]->(n:Course)" : "(n:User)-[a:ACTION]->()";
+        String cypher = """
+            MATCH %s
+            WHERE a.epochMillis >= $from AND a.epochMillis < $to
+            WITH n.id AS id, count(a) AS actionCount,
+                 sum(CASE WHEN a.label = 1 THEN 1 ELSE 0 END) AS labelOneCount,
+                 avg(a.feature0) AS avg0, avg(a.feature1) AS avg1, avg(a.feature2) AS avg2, avg(a.feature3) AS avg3,
+                 min(a.feature0) AS min0, min(a.feature1) AS min1, min(a.feature2) AS min2, min(a.feature3) AS min3,
+                 max(a.feature0) AS max0, max(a.feature1) AS max1, max(a.feature2) AS max2, max(a.feature3) AS max3
+            RETURN id, actionCount, labelOneCount,
+                   [avg0, avg1, avg2, avg3] AS featureAvgs,
+                   [min0, min1, min2, min3] AS featureMins,
+                   [max0, max1, max2, max3] AS featureMaxs
+            ORDER BY actionCount DESC, id
+            LIMIT 10
+            """.formatted(pattern);
+
+        return executeAndPrint(label, cypher, Map.of(
+            "from", TimeBuckets.floor(from, TimeBuckets.MINUTE),
+            "to", TimeBuckets.floor(to, TimeBuckets.MINUTE)
+        ));
+    }
+
+    /**
+     * Courses sharing the most users with a course, by Jaccard similarity:
+     * two hops from the course to its users and on to their other courses.
+     * With the summaries, the distinct users of every course are read from it.
+     * @return execution time in milliseconds
+     */
+    private double similarCourses(String courseId) {
+        String cypher = summariesAvailable()
+            ? """
+            MATCH (c:Course {id: $courseId})<-[:ACTION]-(u:User)
+            WITH DISTINCT c, u
+            MATCH (u)-[:ACTION]->(other:Course)
+            WHERE other <> c
+            WITH c, other, count(DISTINCT u) AS shared
+            RETURN other.id AS targetId, shared AS sharedUsers,
+                   toFloat(shared) / (c.userCount + other.userCount - shared) AS jaccard
+            ORDER BY jaccard DESC, sharedUsers DESC, targetId
+            LIMIT 10
+            """
+            : """
+            MATCH (c:Course {id: $courseId})<-[:ACTION]-(u:User)
+            WITH c, collect(DISTINCT u) AS users
+            UNWIND users AS u
+            MATCH (u)-[:ACTION]->(other:Course)
+            WHERE other <> c
+            WITH size(users) AS courseUsers, other, count(DISTINCT u) AS shared
+            MATCH (v:User)-[:ACTION]->(other)
+            WITH other, courseUsers, shared, count(DISTINCT v) AS otherUsers
+            RETURN other.id AS targetId, shared AS sharedUsers,
+                   toFloat(shared) / (courseUsers + otherUsers - shared) AS jaccard
+            ORDER BY jaccard DESC, sharedUsers DESC, targetId
+            LIMIT 10
+            """;
+
+        return executeAndPrint("Courses similar to " + courseId + " by Jaccard", cypher, Map.of("courseId", courseId));
+    }
+
+    /**
+     * Executes the given Cypher query and passes its rows to the sink.
      * @return execution time in milliseconds
      */
     private double executeAndPrint(String label, String cypher) {
-        try {
+        return executeAndPrint(label, cypher, Map.of());
+    }
+
+    /**
+     * Executes the given parameterized Cypher query and passes its rows to the sink.
+     * The time covers running the query and consuming every row,
+     * results are served from the cache when a fresh entry exists.
+     * @return execution time in milliseconds
+     */
+    private double executeAndPrint(String label, String cypher, Map<String, Object> params) {
+        ResultCache.Key key = new ResultCache.Key(alias, label, cypher, List.copyOf(params.values()));
+        if (pending != null) {
+            pending.add(new PendingQuery(key, label, cypher, params));
+            return 0.0;
+        }
+
+        boolean cacheable = useCache && profiler == null;
+
+        // sessions are lazy, a connection is only taken from the pool on run
+        try (Session session = connection.openSession()) {
+            if (cacheable) {
+                long start = System.nanoTime();
+                QueryResult cached = cache.get(key);
+                if (cached != null) {
+                    sink.begin(label, cached.columns());
+                    ValuesRow row = new ValuesRow();
+                    for (List<Object> values : cached.rows()) {
+                        row.values = values;
+                        sink.accept(row);
+                    }
+                    long nanos = System.nanoTime() - start;
+                    double duration = nanos / 1_000_000.0;
+                    Metrics.query("neo4j", alias, true, nanos);
+
+                    System.out.printf("\n> %s (%.3f ms, cached)\n", label, duration);
+                    sink.end();
+                    return duration;
+                }
+            }
+
+            long version = cache.getVersion();
+
             long start = System.nanoTime();
-            Result result = session.run(cypher);
-            double duration = (System.nanoTime() - start) / 1_000_000.0;
+            Result result = session.run(profiler != null ? "PROFILE " + cypher : cypher, params, transactionConfig());
+            List<String> columns = result.keys();
+            sink.begin(label, columns);
 
-            System.out.printf("\n> %s (%.2f ms)\n", label, duration);
+            // keep the rows for the cache, unless there are too many
+            List<List<Object>> rows = cacheable ? new ArrayList<>() : null;
+            ValuesRow row = new ValuesRow();
             while (result.hasNext()) {
                 Record r = result.next();
-                for (String key : r.keys()) {
-                    System.out.print(key + ": " + r.get(key) + "\t");
+                row.values = r.values();
+                sink.accept(row);
+
+                if (rows != null && rows.size() < QueryResult.MAX_ROWS) {
+                    rows.add(new ArrayList<>(r.values()));
+                } else {
+                    rows = null;
                 }
-                System.out.println();
+            }
+            long nanos = System.nanoTime() - start;
+            double duration = nanos / 1_000_000.0;
+            Metrics.query("neo4j", alias, false, nanos);
+
+            System.out.printf("\n> %s (%.2f ms)\n", label, duration);
+            sink.end();
+
+            if (rows != null) {
+                cache.put(key, new QueryResult(columns, rows), version);
+            }
+
+            if (profiler != null) {
+                recordProfile(label, duration, result.consume());
             }
             return duration;
         } catch (Exception e) {
             System.err.printf("Error executing query '%s': %s\n", label, e.getMessage());
             logger.error("Error executing query '{}'", label, e);
+            failure = e;
             return 0.0;
         }
     }
 
+    /**
+     * Records the profiled plan of an executed query.
+     */
+    private void recordProfile(String label, double duration, ResultSummary summary) {
+        if (!summary.hasProfile()) {
+            logger.warn("No profile returned for '{}'", label);
+            return;
+        }
+
+        ProfiledPlan plan = summary.profile();
+        StringBuilder tree = new StringBuilder();
+        long totalDbHits = appendPlan(tree, plan, 0);
+
+        profiler.record(
+            "neo4j",
+            alias,
+            label,
+            duration,
+            String.format("dbHits=%d, rows=%d", totalDbHits, plan.records()),
+            tree.toString()
+        );
+    }
+
+    /**
+     * Appends an operator and its children, one per line.
+     * @return the db hits of the operator and its children
+     */
+    private long appendPlan(StringBuilder tree, ProfiledPlan plan, int depth) {
+        tree.append("  ".repeat(depth))
+            .append("+ ").append(plan.operatorType())
+            .append("  rows=").append(plan.records())
+            .append(" dbHits=").append(plan.dbHits());
+
+        Value details = plan.arguments().get("Details");
+        if (details != null) {
+            tree.append("  ").append(details.asString());
+        }
+        tree.append('\n');
+
+        long dbHits = plan.dbHits();
+        for (ProfiledPlan child : plan.children()) {
+            dbHits += appendPlan(tree, child, depth + 1);
+        }
+        return dbHits;
+    }
+
+    /**
+     * Row over the driver values of a record,
+     * converted to Java objects only when asked.
+     */
+    private static final class ValuesRow implements Row {
+
+        private List<?> values;
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        @Override
+        public Object get(int index) {
+            return ((Value) values.get(index)).asObject();
+        }
+
+        @Override
+        public String display(int index) {
+            return values.get(index).toString();
+        }
+    }
+
     /**
      * Prints the available query options.
      */
@@ -240,9 +876,16 @@ public class GraphReader {
             actionstargetsofuser -> Actions and targets of a user
             actionsperuser    -> Count of actions per user
             toptargets        -> Count distinct users per course
+            toptargetsapprox  -> Estimate distinct users per course from sketches
             avgactions        -> Average number of actions per user
             positivefeature2  -> (userID, courseID) where feature2 > 0
             label1pertarget   -> Count of label=1 actions per course
+            actionsperuserwindow -> Count of actions per user in a time window
+            toptargetsrecent  -> Distinct users per course over the last N hours
+            label1ratebyhour  -> Rate of label=1 actions per hour in a time window
+            courseactivity    -> Actions, label=1 and feature stats per course in a time window
+            useractivity      -> Actions, label=1 and feature stats per user in a time window
+            similarcourses    -> Courses sharing the most users with a course (Jaccard)
         """);
     }
 }
\ No newline at end of file
@@ -1,10 +1,16 @@
 package gr.network.read;
 
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import com.opencsv.bean.CsvToBean;
@@ -12,6 +18,8 @@ import com.opencsv.bean.CsvToBeanBuilder;
 import com.opencsv.bean.HeaderColumnNameMappingStrategy;
 
 import gr.network.domain.Action;
+import gr.network.domain.Timestamps;
+import gr.network.trace.LoadTimer;
 
 /**
  * Reads TSV files in-memory to
@@ -20,8 +28,14 @@ import gr.network.domain.Action;
  * @version 1.0
  */
 public class InputReader {
+    /** Rows parsed between two measurements of the parse stage. */
+    private static final int METRICS_BATCH = 10_000;
+
     private final String fileName;
 
+    /** Sees every action as it is parsed, if set. */
+    private final Consumer<Action> listener;
+
     private final Set<Action> actions;
     private final Set<String> userIds;
     private final Set<String> courseIds;
@@ -31,21 +45,41 @@ public class InputReader {
     }
 
     public InputReader(String fileName) throws Exception {
+        this(fileName, action -> {});
+    }
+
+    /**
+     * Reads the file, passing every action to the listener as it is parsed.
+     */
+    public InputReader(String fileName, Consumer<Action> listener) throws Exception {
         this.fileName = fileName;
+        this.listener = listener;
         this.actions = this.getActionsFromCsv();
         this.userIds = this.extractUserIds(actions);
         this.courseIds = this.extractCourseIds(actions);
     }
 
     public Set<Action> getActionsFromCsv() throws Exception {
-        ClassLoader classLoader = getClass().getClassLoader();
+        Set<Action> actions = new HashSet<>();
+        stream(this.fileName, action -> {
+            listener.accept(action);
+            actions.add(action);
+        });
+        return actions;
+    }
 
-        try (InputStream inputStream = classLoader.getResourceAsStream(this.fileName)) {
-            if (inputStream == null) {
-                throw new FileNotFoundException(this.fileName + " not found in resources");
-            }
+    /**
+     * Parses the file one action at a time, without keeping them,
+     * so files of any size can be fed to the consumer.
+     * The file is looked up in the resources, then on disk, as generated files are.
+     * @return the number of actions parsed
+     */
+    public static long stream(String fileName, Consumer<Action> consumer) throws Exception {
+        try (InputStream inputStream = open(fileName)) {
 
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
+            // count the bytes read, which are traced with every parsed batch
+            CountingInputStream countingStream = new CountingInputStream(inputStream);
+            InputStreamReader inputStreamReader = new InputStreamReader(countingStream);
 
             // create mapping strategy
             HeaderColumnNameMappingStrategy<Action> strategy = new HeaderColumnNameMappingStrategy<>();
@@ -59,11 +93,38 @@ public class InputReader {
                     .build();
 
             // inputStreamReader.close();
-            // parse and return the list
-            return new HashSet<>(csvToBean.parse());
+            // parse and pass on every action
+            long count = 0;
+            long batchBytes = 0;
+            LoadTimer timer = LoadTimer.batch("parse");
+            for (Action action : csvToBean) {
+                // parse the timestamp once, so no store compares it as a string
+                action.setEpochMillis(Timestamps.toEpochMillis(action.getTimestamp()));
+                consumer.accept(action);
+
+                if (++count % METRICS_BATCH == 0) {
+                    timer.end(METRICS_BATCH, countingStream.getCount() - batchBytes);
+                    batchBytes = countingStream.getCount();
+                    timer = LoadTimer.batch("parse");
+                }
+            }
+            timer.end(count % METRICS_BATCH, countingStream.getCount() - batchBytes);
+            return count;
         }
     }
 
+    private static InputStream open(String fileName) throws IOException {
+        InputStream resource = InputReader.class.getClassLoader().getResourceAsStream(fileName);
+        if (resource != null) {
+            return resource;
+        }
+        Path file = Path.of(fileName);
+        if (Files.isRegularFile(file)) {
+            return Files.newInputStream(file);
+        }
+        throw new FileNotFoundException(fileName + " not found in resources or on disk");
+    }
+
     public Set<String> extractUserIds(Set<Action> actions) {
         return actions.stream()
             .map(Action::getUser)
@@ -76,6 +137,14 @@ public class InputReader {
             .collect(Collectors.toSet());
     }
 
+    /**
+     * The adjacency list of every user: the distinct courses it acted on.
+     */
+    public Map<String, Set<String>> getUserCourses() {
+        return actions.stream()
+            .collect(Collectors.groupingBy(Action::getUser, Collectors.mapping(Action::getCourse, Collectors.toSet())));
+    }
+
     public Set<Action> getActions() {
         return actions;
     }
@@ -87,4 +156,45 @@ public class InputReader {
     public Set<String> getCourseIds() {
         return courseIds;
     }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
 }
@@ -0,0 +1,61 @@
+package gr.network.read;
+
+import java.util.Scanner;
+
+import gr.network.domain.Timestamps;
+
+/**
+ * Asks for the parameters of the catalog queries, the same way for every reader.
+ * @version 1.0
+ */
+final class Prompts {
+
+    private Prompts() {}
+
+    /**
+     * Asks for a value until one is given, such as a user id.
+     */
+    static String nonBlank(Scanner scanner, String prompt) {
+        String input;
+        do {
+            System.out.print(prompt);
+            input = scanner.nextLine().trim();
+        } while (input.isBlank());
+        return input;
+    }
+
+    /**
+     * Asks for a timestamp until one parses.
+     * @return the timestamp in epoch milliseconds
+     */
+    static long timestamp(Scanner scanner, String prompt) {
+        while (true) {
+            System.out.print(prompt);
+            String input = scanner.nextLine().trim();
+            try {
+                return Timestamps.toEpochMillis(input);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Not a timestamp: " + input);
+            }
+        }
+    }
+
+    /**
+     * Asks for a positive number of hours.
+     */
+    static long hours(Scanner scanner) {
+        while (true) {
+            System.out.print("Provide the number of hours: ");
+            String input = scanner.nextLine().trim();
+            try {
+                long hours = Long.parseLong(input);
+                if (hours > 0) {
+                    return hours;
+                }
+            } catch (NumberFormatException e) {
+                // asked again below
+            }
+            System.out.println("Not a positive number of hours: " + input);
+        }
+    }
+}
@@ -5,26 +5,119 @@ import org.slf4j.LoggerFactory;
 
 import gr.network.client.Neo4jConnection;
 import gr.network.client.SqliteConnection;
+import gr.network.client.SqliteShards;
+import gr.network.read.sink.DiscardSink;
+import gr.network.read.sink.PreviewSink;
+import gr.network.read.sink.ResultSink;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Compares query performance between Neo4j and SQLite databases
- * @version 1.0
+ * @version 1.1
  */
 public class QueryComparison {
 
+    /** How the queries of an unattended comparison are scheduled. */
+    public enum Mode {
+        /** Every query of every backend runs at the same time. */
+        CONCURRENT,
+        /** One query at a time, so queries do not compete for resources. */
+        ISOLATED
+    }
+
+    /** Every query alias, in the order they are compared. */
+    static final List<String> ALL_QUERIES = List.of(
+        "graphsize",
+        "actionstargetsofuser",
+        "actionsperuser",
+        "toptargets",
+        "toptargetsapprox",
+        "avgactions",
+        "positivefeature2",
+        "label1pertarget",
+        "actionsperuserwindow",
+        "toptargetsrecent",
+        "label1ratebyhour",
+        "courseactivity",
+        "useractivity"
+    );
+
+    /** The user whose actions are compared when none is given. */
+    private static final String SAMPLE_USER_ID = "0";
+
+    /** What the queries taking input ask for, in the order the readers read it. */
+    private static final Map<String, List<String>> QUERY_INPUTS = Map.of(
+        "actionstargetsofuser", List.of("a user id"),
+        "actionsperuserwindow", List.of("the window start", "the window end"),
+        "toptargetsrecent", List.of("the number of hours"),
+        "label1ratebyhour", List.of("the window start", "the window end"),
+        "courseactivity", List.of("the window start", "the window end"),
+        "useractivity", List.of("the window start", "the window end")
+    );
+
+    /** The input of every query when comparing without interaction: the first day of the data. */
+    static final Map<String, String> SAMPLE_INPUTS = Map.of(
+        "actionstargetsofuser", SAMPLE_USER_ID + "\n",
+        "actionsperuserwindow", "0\n86400\n",
+        "toptargetsrecent", "24\n",
+        "label1ratebyhour", "0\n86400\n",
+        "courseactivity", "0\n86400\n",
+        "useractivity", "0\n86400\n"
+    );
+
     private final Logger logger = LoggerFactory.getLogger(QueryComparison.class);
     private final Neo4jConnection neo4jConnection;
     private final SqliteConnection sqliteConnection;
     private Scanner scanner;
 
+    /** Where the rows of every compared query go. */
+    private ResultSink sink = new PreviewSink();
+
+    /** Records query plans, when profiling. */
+    private QueryProfiler profiler;
+
+    /** The SQLite shards compared instead of the single database, if set. */
+    private SqliteShards shards;
+
     public QueryComparison(Neo4jConnection neo4jConnection, SqliteConnection sqliteConnection, Scanner scanner) {
         this.neo4jConnection = neo4jConnection;
         this.sqliteConnection = sqliteConnection;
         this.scanner = scanner;
     }
 
+    /**
+     * Compares Neo4j against the SQLite shards, queried all at once, instead of the single database.
+     */
+    public void setShards(SqliteShards shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Sets where the rows of every compared query go.
+     */
+    public void setSink(ResultSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Profiles every compared query and records its plan.
+     */
+    public void setProfiler(QueryProfiler profiler) {
+        this.profiler = profiler;
+    }
+
     /**
      * Runs comparison between Neo4j and SQL queries
      */
@@ -41,34 +134,41 @@ public class QueryComparison {
         System.out.printf("COMPARISON: %s\n", queryName.toUpperCase());
         System.out.println("=".repeat(60));
 
-        // Get user input once if needed
-        String userId = null;
-        if ("actionstargetsofuser".equals(queryName.toLowerCase())) {
-            do {
-                System.out.print("Provide a user id for comparison: ");
-                userId = scanner.nextLine().trim();
-            } while (userId.isBlank());
+        // Get user input once if needed, both readers read the same
+        String input = null;
+        List<String> inputs = QUERY_INPUTS.get(queryName.toLowerCase());
+        if (inputs != null) {
+            StringBuilder lines = new StringBuilder();
+            for (String prompt : inputs) {
+                String line;
+                do {
+                    System.out.print("Provide " + prompt + " for comparison: ");
+                    line = scanner.nextLine().trim();
+                } while (line.isBlank());
+                lines.append(line).append('\n');
+            }
+            input = lines.toString();
         }
 
         System.out.println("\n--- NEO4J RESULTS ---");
         double neo4jMs;
-        if (userId != null) {
-            Scanner tempScanner = new Scanner(userId + "\n");
-            GraphReader tempGraphReader = new GraphReader(neo4jConnection, tempScanner);
+        if (input != null) {
+            Scanner tempScanner = new Scanner(input);
+            GraphReader tempGraphReader = newGraphReader(tempScanner, sink);
             neo4jMs = tempGraphReader.run(queryName);
         } else {
-            GraphReader graphReader = new GraphReader(neo4jConnection, scanner);
+            GraphReader graphReader = newGraphReader(scanner, sink);
             neo4jMs = graphReader.run(queryName);
         }
 
         System.out.println("\n--- SQLITE RESULTS ---");
         double sqliteMs;
-        if (userId != null) {
-            Scanner tempScanner = new Scanner(userId + "\n");
-            SqlReader tempSqlReader = new SqlReader(sqliteConnection, tempScanner);
+        if (input != null) {
+            Scanner tempScanner = new Scanner(input);
+            SqlQueryRunner tempSqlReader = newSqlReader(tempScanner, sink);
             sqliteMs = tempSqlReader.run(queryName);
         } else {
-            SqlReader sqlReader = new SqlReader(sqliteConnection, scanner);
+            SqlQueryRunner sqlReader = newSqlReader(scanner, sink);
             sqliteMs = sqlReader.run(queryName);
         }
 
@@ -96,9 +196,15 @@ public class QueryComparison {
             "graphsize",
             "actionsperuser",
             "toptargets",
+            "toptargetsapprox",
             "avgactions",
             "positivefeature2",
-            "label1pertarget"
+            "label1pertarget",
+            "actionsperuserwindow",
+            "toptargetsrecent",
+            "label1ratebyhour",
+            "courseactivity",
+            "useractivity"
         };
 
         System.out.println("\nRunning complete performance comparison...\n");
@@ -111,7 +217,7 @@ public class QueryComparison {
 
         // Special case for user-specific query
         System.out.println("Testing user-specific query with sample user...");
-        runUserSpecificComparison("0");
+        runUserSpecificComparison(SAMPLE_USER_ID);
     }
 
     /**
@@ -124,12 +230,12 @@ public class QueryComparison {
 
         System.out.println("\n--- NEO4J RESULTS ---");
         Scanner tempScanner = new Scanner(userId + "\n");
-        GraphReader tempGraphReader = new GraphReader(neo4jConnection, tempScanner);
+        GraphReader tempGraphReader = newGraphReader(tempScanner, sink);
         double neo4jMs = tempGraphReader.run("actionstargetsofuser");
 
         System.out.println("\n--- SQLITE RESULTS ---");
         Scanner tempSqlScanner = new Scanner(userId + "\n");
-        SqlReader tempSqlReader = new SqlReader(sqliteConnection, tempSqlScanner);
+        SqlQueryRunner tempSqlReader = newSqlReader(tempSqlScanner, sink);
         double sqliteMs = tempSqlReader.run("actionstargetsofuser");
 
         System.out.println("\n--- PERFORMANCE COMPARISON ---");
@@ -148,6 +254,213 @@ public class QueryComparison {
         System.out.println("=".repeat(60));
     }
 
+    /**
+     * Runs every query on every backend without any interaction,
+     * each one on its own virtual thread. Queries exceeding the
+     * timeout are cancelled and reported, without holding back the rest.
+     * Every query has completed or been cancelled when this returns.
+     */
+    public void runUnattended(Mode mode, Duration timeout) {
+        List<ComparisonTask> tasks = new ArrayList<>();
+        for (String query : ALL_QUERIES) {
+            tasks.add(new ComparisonTask(query, "neo4j"));
+            tasks.add(new ComparisonTask(query, "sqlite"));
+        }
+
+        // concurrent output would interleave, so rows are only kept in isolation
+        ResultSink taskSink = mode == Mode.CONCURRENT ? new DiscardSink() : sink;
+
+        logger.info("Comparing {} queries on both backends, {}, {} s timeout each, SQLite {}.",
+            ALL_QUERIES.size(), mode.name().toLowerCase(), timeout.toSeconds(), describeSqliteStorage());
+
+        long start = System.nanoTime();
+        // closing the executor waits for every task, so none outlives the comparison
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                if (mode == Mode.CONCURRENT) {
+                    for (ComparisonTask task : tasks) {
+                        task.submit(executor, taskSink, timeout);
+                    }
+                    for (ComparisonTask task : tasks) {
+                        task.await(timeout);
+                    }
+                } else {
+                    for (ComparisonTask task : tasks) {
+                        task.submit(executor, taskSink, timeout);
+                        task.await(timeout);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Comparison interrupted, cancelling the remaining queries");
+            } finally {
+                tasks.forEach(ComparisonTask::cancel);
+            }
+        }
+        double totalMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        printUnattendedSummary(tasks, mode, totalMs);
+    }
+
+    /**
+     * Prints the time of every query on both backends.
+     */
+    private void printUnattendedSummary(List<ComparisonTask> tasks, Mode mode, double totalMs) {
+        System.out.println("\n" + "=".repeat(72));
+        System.out.printf("COMPARISON OF ALL QUERIES (%s, %.2f ms total)\n", mode.name().toLowerCase(), totalMs);
+        System.out.println("SQLite " + describeSqliteStorage());
+        System.out.println("=".repeat(72));
+        System.out.printf("%-22s %16s %16s   %s\n", "query", "neo4j", "sqlite", "result");
+
+        for (int i = 0; i < tasks.size(); i += 2) {
+            ComparisonTask neo4j = tasks.get(i);
+            ComparisonTask sqlite = tasks.get(i + 1);
+
+            String result;
+            if (neo4j.outcome != null || sqlite.outcome != null) {
+                result = "-";
+            } else if (neo4j.durationMs < sqlite.durationMs) {
+                result = String.format("Neo4j %.2fx faster", sqlite.durationMs / neo4j.durationMs);
+            } else if (sqlite.durationMs < neo4j.durationMs) {
+                result = String.format("SQLite %.2fx faster", neo4j.durationMs / sqlite.durationMs);
+            } else {
+                result = "equal";
+            }
+
+            System.out.printf("%-22s %16s %16s   %s\n", neo4j.query, neo4j.describe(), sqlite.describe(), result);
+        }
+        System.out.println("=".repeat(72));
+    }
+
+    /**
+     * One query on one backend, running on a virtual thread.
+     */
+    private final class ComparisonTask {
+
+        private final String query;
+        private final String backend;
+
+        private Future<Double> future;
+        private long submittedAt;
+
+        /** The SQLite reader running the query, to cancel its statements. */
+        private SqlQueryRunner sqlReader;
+
+        /** The time of a completed query, in milliseconds. */
+        private double durationMs;
+
+        /** Why the query did not complete, if it did not. */
+        private String outcome;
+
+        ComparisonTask(String query, String backend) {
+            this.query = query;
+            this.backend = backend;
+        }
+
+        /**
+         * Starts the query. Neo4j is told to terminate it past the timeout,
+         * SQLite statements are cancelled when it is given up on.
+         */
+        void submit(ExecutorService executor, ResultSink taskSink, Duration timeout) {
+            Scanner input = new Scanner(SAMPLE_INPUTS.getOrDefault(query, ""));
+            Callable<Double> work;
+            if (backend.equals("neo4j")) {
+                GraphReader reader = newGraphReader(input, taskSink);
+                reader.setTimeout(timeout);
+                work = () -> checked(reader.run(query), reader.getFailure());
+            } else {
+                SqlQueryRunner reader = newSqlReader(input, taskSink);
+                sqlReader = reader;
+                work = () -> checked(reader.run(query), reader.getFailure());
+            }
+            submittedAt = System.nanoTime();
+            future = executor.submit(work);
+        }
+
+        /**
+         * Waits for the query, until the timeout since it was submitted.
+         */
+        void await(Duration timeout) throws InterruptedException {
+            long remaining = timeout.toNanos() - (System.nanoTime() - submittedAt);
+            try {
+                durationMs = future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                stop();
+                outcome = "TIMEOUT";
+                logger.warn("{} query '{}' timed out after {} s", backend, query, timeout.toSeconds());
+            } catch (ExecutionException e) {
+                outcome = "FAILED";
+                logger.error("{} query '{}' failed", backend, query, e.getCause());
+            }
+        }
+
+        void cancel() {
+            if (future != null && !future.isDone()) {
+                stop();
+                if (outcome == null) {
+                    outcome = "CANCELLED";
+                }
+            }
+        }
+
+        /**
+         * Interrupting the thread does not stop a statement inside SQLite, so its statements are cancelled too.
+         */
+        private void stop() {
+            if (sqlReader != null) {
+                sqlReader.cancel();
+            }
+            future.cancel(true);
+        }
+
+        String describe() {
+            return outcome != null ? outcome : String.format("%.2f ms", durationMs);
+        }
+    }
+
+    /**
+     * The time of a query, or the failure its reader recorded.
+     */
+    private static double checked(double durationMs, Exception failure) throws Exception {
+        if (failure != null) {
+            throw failure;
+        }
+        return durationMs;
+    }
+
+    /**
+     * Creates a Neo4j reader that times the database itself.
+     */
+    private GraphReader newGraphReader(Scanner input, ResultSink readerSink) {
+        GraphReader reader = new GraphReader(neo4jConnection, input);
+        reader.setUseCache(false);
+        reader.setUseSummaries(false);
+        reader.setSink(readerSink);
+        reader.setProfiler(profiler);
+        return reader;
+    }
+
+    /**
+     * Where SQLite is read from, so runs in memory and on disk tell I/O apart from query execution.
+     */
+    private String describeSqliteStorage() {
+        return shards != null ? shards.describeStorage() : sqliteConnection.describeStorage();
+    }
+
+    /**
+     * Creates a SQLite reader that times the database itself.
+     */
+    private SqlQueryRunner newSqlReader(Scanner input, ResultSink readerSink) {
+        SqlQueryRunner reader = shards != null
+            ? new ShardedSqlReader(shards, input)
+            : new SqlReader(sqliteConnection, input);
+        reader.setUseCache(false);
+        reader.setUseSummaries(false);
+        reader.setSink(readerSink);
+        reader.setProfiler(profiler);
+        return reader;
+    }
+
     /**
      * Prints the available query options for comparison.
      */
@@ -159,9 +472,15 @@ public class QueryComparison {
             actionstargetsofuser -> Actions and targets of a user
             actionsperuser    -> Count of actions per user
             toptargets        -> Count distinct users per course
+            toptargetsapprox  -> Estimate distinct users per course from sketches
             avgactions        -> Average number of actions per user
             positivefeature2  -> (userID, courseID) where feature2 > 0
             label1pertarget   -> Count of label=1 actions per course
+            actionsperuserwindow -> Count of actions per user in a time window
+            toptargetsrecent  -> Distinct users per course over the last N hours
+            label1ratebyhour  -> Rate of label=1 actions per hour in a time window
+            courseactivity    -> Actions, label=1 and feature stats per course in a time window
+            useractivity      -> Actions, label=1 and feature stats per user in a time window
         """);
     }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package gr.network.read;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the execution plans of profiled queries next to their timings.
+ * Every run writes one file under the profile directory, so the plans
+ * of two runs can be diffed to catch regressions such as a dropped
+ * index or a label scan.
+ * @version 1.0
+ */
+public class QueryProfiler implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(QueryProfiler.class);
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path file;
+    private final BufferedWriter writer;
+
+    public QueryProfiler() throws IOException {
+        this(Path.of("profiles"));
+    }
+
+    public QueryProfiler(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve("profile-" + LocalDateTime.now().format(FILE_TIME) + ".txt");
+        this.writer = Files.newBufferedWriter(file);
+        logger.info("Recording query plans to {}", file);
+    }
+
+    /**
+     * Records the plan of one executed statement and prints it.
+     * @param backend the database that ran the statement
+     * @param summary one line of plan totals, such as db hits or scanned tables
+     * @param plan the operator tree, one operator per line
+     */
+    public synchronized void record(String backend, String alias, String label, double durationMs, String summary, String plan) {
+        String entry = String.format(
+            "[%s] %s / %s (%.2f ms)%n%s%n%s%n",
+            backend, alias, label, durationMs, summary, plan
+        );
+
+        System.out.println("\nPlan of " + label + " (" + summary + ")");
+        System.out.print(plan);
+
+        try {
+            writer.write(entry);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            logger.error("Could not record the plan of '{}'", label, e);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        logger.info("Query plans recorded to {}", file);
+    }
+}
@@ -0,0 +1,467 @@
+package gr.network.read;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import org.neo4j.driver.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import gr.network.client.Neo4jConnection;
+import gr.network.client.SqliteConnection;
+import gr.network.domain.Action;
+import gr.network.generate.WorkloadGenerator;
+import gr.network.generate.WorkloadProfile;
+import gr.network.load.GraphLoader;
+import gr.network.load.SqliteLoader;
+import gr.network.read.sink.DiscardSink;
+
+/**
+ * Measures how the backends scale with the data: a workload is fitted from
+ * the input and generated at every scale (1x included, so the sizes differ
+ * in nothing but their size), then loaded into every backend, recording the
+ * load throughput, the size on disk, the heap held by the parsed actions and
+ * the median time of every query, both scanning the actions and reading the
+ * summaries built by the load: the summaries hide how the scans grow, and the
+ * scans how the summary lookups do.
+ * Every measure gets the exponent {@code b} of {@code measure ~ actions^b},
+ * fitted by least squares on the log-log points, so a query with {@code b}
+ * well above 1 grows faster than the data. A query failing at any scale is
+ * reported as failed there and left out of the fit, as is any measure
+ * without a positive value at every scale, so no exponent rests on fewer
+ * scales than the sweep ran.
+ * SQLite loads into a new database file next to the configured one
+ * (mooc.db becomes mooc.sweep.db); Neo4j, only when listed in
+ * {@code SWEEP_BACKENDS}, is emptied before every scale.
+ * Results are written to a CSV file and a markdown report under the sweep directory.
+ * @version 1.2
+ */
+public class ScalingBenchmark {
+
+    private final Logger logger = LoggerFactory.getLogger(ScalingBenchmark.class);
+
+    private static final Dotenv dotenv = Dotenv.configure()
+        .directory("./")
+        .load();
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /** Runs of every query, after one run warming the caches. */
+    private static final int RUNS = 3;
+
+    /** Exponents above this are reported as growing faster than the data. */
+    private static final double SUPERLINEAR = 1.15;
+
+    /** Empties the graph, in batches so the transaction state stays small. */
+    private static final String DELETE_ALL = """
+        MATCH (n)
+        CALL { WITH n DETACH DELETE n } IN TRANSACTIONS OF 10000 ROWS
+        """;
+
+    private final SqliteConnection sqliteConnection;
+    private final Neo4jConnection neo4jConnection;
+    private final Path directory;
+    private final List<Double> scales;
+    private final List<String> backends;
+
+    /** What was measured on one backend at one scale. */
+    private record Point(String backend, double scale, int users, int actions, double loadMs,
+                         long diskBytes, long heapBytes, Map<String, Double> scanMs,
+                         Map<String, Double> summaryMs) {
+
+        double actionsPerSecond() {
+            return actions / (loadMs / 1000);
+        }
+    }
+
+    private final List<Point> points = new ArrayList<>();
+
+    /**
+     * @param sqliteConnection the configured database, the sweep loads a file next to it with its schema
+     */
+    public ScalingBenchmark(SqliteConnection sqliteConnection, Neo4jConnection neo4jConnection) {
+        this(sqliteConnection, neo4jConnection, Path.of("sweeps"),
+            Arrays.stream(dotenv.get("SWEEP_SCALES", "1,4,16,64").split(","))
+                .map(String::trim).map(Double::parseDouble).toList(),
+            Arrays.stream(dotenv.get("SWEEP_BACKENDS", "sqlite").split(","))
+                .map(String::trim).map(String::toLowerCase).toList());
+    }
+
+    public ScalingBenchmark(SqliteConnection sqliteConnection, Neo4jConnection neo4jConnection, Path directory,
+                            List<Double> scales, List<String> backends) {
+        for (String backend : backends) {
+            if (!backend.equals("sqlite") && !backend.equals("neo4j")) {
+                throw new IllegalArgumentException("Unknown backend to sweep: " + backend);
+            }
+        }
+        this.sqliteConnection = sqliteConnection;
+        this.neo4jConnection = neo4jConnection;
+        this.directory = directory;
+        this.scales = scales.stream().sorted().toList();
+        this.backends = backends;
+    }
+
+    /**
+     * Generates, loads and queries every scale of the file, then writes the results.
+     * @return the markdown report
+     */
+    public Path run(String fileName) throws Exception {
+        WorkloadProfile profile = WorkloadProfile.fit(fileName);
+        logger.info("Sweeping {} over scales {} on {}: {}", fileName, scales, backends, profile);
+        WorkloadGenerator generator = new WorkloadGenerator();
+
+        for (double scale : scales) {
+            Path file = WorkloadGenerator.outputFile(fileName, scale);
+            generator.generate(profile.scaled(scale), file);
+
+            // the heap the parsed actions hold, as every loader is handed them
+            long heapBefore = usedHeap();
+            InputReader reader = new InputReader(file.toString());
+            long heapBytes = Math.max(0, usedHeap() - heapBefore);
+
+            for (String backend : backends) {
+                Point point = backend.equals("sqlite")
+                    ? sweepSqlite(scale, reader, heapBytes)
+                    : sweepNeo4j(scale, reader, heapBytes);
+                points.add(point);
+                logger.info("{} at {}x: {} actions loaded in {} ms", backend, scale, point.actions(),
+                    String.format("%.2f", point.loadMs()));
+            }
+        }
+
+        Files.createDirectories(directory);
+        String name = "sweep-" + LocalDateTime.now().format(FILE_TIME);
+        Files.writeString(directory.resolve(name + ".csv"), csv());
+        Path report = directory.resolve(name + ".md");
+        Files.writeString(report, markdown(fileName));
+        printSummary();
+        logger.info("Sweep written to {} and {}", directory.resolve(name + ".csv"), report);
+        return report;
+    }
+
+    private Point sweepSqlite(double scale, InputReader reader, long heapBytes) throws Exception {
+        String uri = SqliteConnection.siblingUri(sqliteConnection.getUri(), "sweep");
+        try (SqliteConnection connection = new SqliteConnection(uri, "sqlite_sweep", false)) {
+            // every scale starts from an empty file
+            for (String suffix : List.of("", "-wal", "-shm")) {
+                Files.deleteIfExists(Path.of(connection.getFile() + suffix));
+            }
+            connection.setSchema(sqliteConnection.getSchema());
+
+            long start = System.nanoTime();
+            new SqliteLoader(reader.getUserIds(), reader.getCourseIds(), reader.getActions(), connection).load();
+            double loadMs = (System.nanoTime() - start) / 1_000_000.0;
+
+            // move the WAL into the database file, so its size is all of the data
+            try (Statement stmt = connection.getConnection().createStatement()) {
+                stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+            long diskBytes = Files.size(Path.of(connection.getFile()));
+
+            Map<String, Double> scanMs = new LinkedHashMap<>();
+            Map<String, Double> summaryMs = new LinkedHashMap<>();
+            for (String query : QueryComparison.ALL_QUERIES) {
+                scanMs.put(query, median(() -> runSqlite(connection, query, false, scale)));
+                summaryMs.put(query, median(() -> runSqlite(connection, query, true, scale)));
+            }
+            return new Point("sqlite", scale, reader.getUserIds().size(), reader.getActions().size(), loadMs,
+                diskBytes, heapBytes, scanMs, summaryMs);
+        }
+    }
+
+    /**
+     * The size on disk of the graph is not visible to a client, so it is not reported.
+     */
+    private Point sweepNeo4j(double scale, InputReader reader, long heapBytes) {
+        try (Session session = neo4jConnection.openSession()) {
+            session.run(DELETE_ALL).consume();
+        }
+        neo4jConnection.getResultCache().bumpVersion();
+
+        Set<Action> actions = reader.getActions();
+        long start = System.nanoTime();
+        new GraphLoader(reader.getUserIds(), reader.getCourseIds(), actions, neo4jConnection).load();
+        double loadMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        Map<String, Double> scanMs = new LinkedHashMap<>();
+        Map<String, Double> summaryMs = new LinkedHashMap<>();
+        for (String query : QueryComparison.ALL_QUERIES) {
+            scanMs.put(query, median(() -> runNeo4j(query, false, scale)));
+            summaryMs.put(query, median(() -> runNeo4j(query, true, scale)));
+        }
+        return new Point("neo4j", scale, reader.getUserIds().size(), actions.size(), loadMs, -1, heapBytes,
+            scanMs, summaryMs);
+    }
+
+    /**
+     * The time of one run of the query, NaN if it failed.
+     */
+    private double runSqlite(SqliteConnection connection, String query, boolean summaries, double scale) {
+        SqlReader sql = new SqlReader(connection, sampleInput(query));
+        sql.setUseCache(false);
+        sql.setUseSummaries(summaries);
+        sql.setSink(new DiscardSink());
+        double ms = sql.run(query);
+        return checked("sqlite", query, summaries, scale, ms, sql.getFailure());
+    }
+
+    /**
+     * The time of one run of the query, NaN if it failed.
+     */
+    private double runNeo4j(String query, boolean summaries, double scale) {
+        GraphReader graph = new GraphReader(neo4jConnection, sampleInput(query));
+        graph.setUseCache(false);
+        graph.setUseSummaries(summaries);
+        graph.setSink(new DiscardSink());
+        double ms = graph.run(query);
+        return checked("neo4j", query, summaries, scale, ms, graph.getFailure());
+    }
+
+    private double checked(String backend, String query, boolean summaries, double scale, double ms,
+                           Exception failure) {
+        if (failure == null) {
+            return ms;
+        }
+        logger.warn("Query '{}' failed on {} at {}x {}, leaving it out of the fit", query, backend,
+            format(scale), summaries ? "reading the summaries" : "scanning the actions", failure);
+        return Double.NaN;
+    }
+
+    private static Scanner sampleInput(String query) {
+        return new Scanner(QueryComparison.SAMPLE_INPUTS.getOrDefault(query, ""));
+    }
+
+    /**
+     * The median time of the runs, after one run warming the caches, NaN as soon as one fails.
+     */
+    private static double median(DoubleSupplier run) {
+        if (Double.isNaN(run.getAsDouble())) {
+            return Double.NaN;
+        }
+        double[] times = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            times[i] = run.getAsDouble();
+            if (Double.isNaN(times[i])) {
+                return Double.NaN;
+            }
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    /** The heap in use once the garbage is collected, as far as a few hints get it. */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The exponent {@code b} of {@code measure ~ actions^b} over the points of the
+     * backend: the slope of the least squares line through the logarithms, NaN
+     * with fewer than two points to fit or when a point has no positive value,
+     * failed ones included, so the fit always spans every scale.
+     */
+    private double exponent(String backend, ToDoubleFunction<Point> measure) {
+        double sumX = 0;
+        double sumY = 0;
+        double sumXY = 0;
+        double sumXX = 0;
+        int n = 0;
+        for (Point point : pointsOf(backend)) {
+            double value = measure.applyAsDouble(point);
+            if (!(value > 0) || point.actions() <= 0) {
+                return Double.NaN;
+            }
+            double x = Math.log(point.actions());
+            double y = Math.log(value);
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+            n++;
+        }
+        double spread = n * sumXX - sumX * sumX;
+        return n < 2 || spread == 0 ? Double.NaN : (n * sumXY - sumX * sumY) / spread;
+    }
+
+    private List<Point> pointsOf(String backend) {
+        return points.stream().filter(point -> point.backend().equals(backend)).toList();
+    }
+
+    /**
+     * One row per backend and scale, with a column per query scanning the
+     * actions and one reading the summaries.
+     */
+    private String csv() {
+        StringBuilder csv = new StringBuilder(
+            "backend,scale,users,actions,load_ms,load_actions_per_s,disk_bytes,heap_bytes");
+        QueryComparison.ALL_QUERIES.forEach(query -> csv.append(',').append(query).append("_ms"));
+        QueryComparison.ALL_QUERIES.forEach(query -> csv.append(',').append(query).append("_summary_ms"));
+        csv.append('\n');
+        for (Point point : points) {
+            csv.append(String.format("%s,%s,%d,%d,%.3f,%.1f,%s,%d", point.backend(), format(point.scale()),
+                point.users(), point.actions(), point.loadMs(), point.actionsPerSecond(),
+                point.diskBytes() < 0 ? "" : String.valueOf(point.diskBytes()), point.heapBytes()));
+            for (String query : QueryComparison.ALL_QUERIES) {
+                csv.append(',').append(csvTime(point.scanMs().get(query)));
+            }
+            for (String query : QueryComparison.ALL_QUERIES) {
+                csv.append(',').append(csvTime(point.summaryMs().get(query)));
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    /** A failed query leaves its cell empty. */
+    private static String csvTime(double ms) {
+        return Double.isNaN(ms) ? "" : String.format("%.3f", ms);
+    }
+
+    /**
+     * The measures of every backend by scale, with their exponents, and the
+     * queries growing faster than the data first in mind.
+     */
+    private String markdown(String fileName) {
+        StringBuilder md = new StringBuilder();
+        md.append("# Scaling Sweep\n\n");
+        md.append(String.format("Generated %s from the profile of `%s`, at scales %s, on %s. ",
+            LocalDateTime.now().withNano(0), fileName,
+            scales.stream().map(scale -> format(scale) + "x").toList(), String.join(", ", backends)));
+        md.append(String.format("Query times are the median of %d runs, without the result cache, ", RUNS))
+            .append("scanning the actions and then reading the summaries the load builds ")
+            .append("(queries without summaries scan both times). ");
+        md.append("The exponent is `b` of `measure ~ actions^b`: 1 grows with the data, above 1 faster than it, ")
+            .append(String.format("and exponents above %.2f are in bold.\n", SUPERLINEAR));
+
+        for (String backend : backends) {
+            List<Point> series = pointsOf(backend);
+            md.append("\n## ").append(backend).append("\n\n");
+
+            md.append("| scale | actions | load (ms) | load (actions/s) | disk (MB) | heap (MB) |\n");
+            md.append("|------:|--------:|----------:|-----------------:|----------:|----------:|\n");
+            for (Point point : series) {
+                md.append(String.format("| %sx | %d | %.2f | %.0f | %s | %.1f |\n", format(point.scale()),
+                    point.actions(), point.loadMs(), point.actionsPerSecond(),
+                    point.diskBytes() < 0 ? "-" : String.format("%.1f", point.diskBytes() / (1024.0 * 1024.0)),
+                    point.heapBytes() / (1024.0 * 1024.0)));
+            }
+            md.append(String.format("| exponent | | %s | %s | %s | %s |\n",
+                cell(exponent(backend, Point::loadMs)), cell(exponent(backend, Point::actionsPerSecond)),
+                cell(exponent(backend, Point::diskBytes)), cell(exponent(backend, Point::heapBytes))));
+
+            md.append("\n### Scanning the actions\n");
+            queryTable(md, backend, series, Point::scanMs);
+            md.append("\n### Reading the summaries\n");
+            queryTable(md, backend, series, Point::summaryMs);
+        }
+        return md.toString();
+    }
+
+    /**
+     * The times of every query by scale, with their exponents, the queries
+     * growing faster than the data and the ones left out of the fit.
+     */
+    private void queryTable(StringBuilder md, String backend, List<Point> series,
+                            Function<Point, Map<String, Double>> times) {
+        md.append("\n| query |");
+        series.forEach(point -> md.append(' ').append(format(point.scale())).append("x (ms) |"));
+        md.append(" exponent |\n|:------|");
+        series.forEach(point -> md.append("------:|"));
+        md.append("---------:|\n");
+        List<String> superlinear = new ArrayList<>();
+        List<String> leftOut = new ArrayList<>();
+        for (String query : QueryComparison.ALL_QUERIES) {
+            md.append("| ").append(query).append(" |");
+            series.forEach(point -> {
+                double ms = times.apply(point).get(query);
+                md.append(Double.isNaN(ms) ? " failed |" : String.format(" %.2f |", ms));
+            });
+            double b = exponent(backend, point -> times.apply(point).get(query));
+            md.append(' ').append(cell(b)).append(" |\n");
+            if (b > SUPERLINEAR) {
+                superlinear.add(String.format("`%s` (%.2f)", query, b));
+            }
+            List<String> unfitted = series.stream()
+                .filter(point -> !(times.apply(point).get(query) > 0))
+                .map(point -> format(point.scale()) + "x").toList();
+            if (!unfitted.isEmpty()) {
+                leftOut.add(String.format("`%s` (%s)", query, String.join(", ", unfitted)));
+            }
+        }
+        md.append("\nGrowing faster than the data: ")
+            .append(superlinear.isEmpty() ? "none" : String.join(", ", superlinear)).append(".\n");
+        if (!leftOut.isEmpty()) {
+            md.append("\nLeft out of the fit, failed or without a positive time at: ")
+                .append(String.join(", ", leftOut)).append(".\n");
+        }
+    }
+
+    private static String cell(double exponent) {
+        if (Double.isNaN(exponent)) {
+            return "-";
+        }
+        String value = String.format("%.2f", exponent);
+        return exponent > SUPERLINEAR ? "**" + value + "**" : value;
+    }
+
+    private static String format(double scale) {
+        return scale == Math.rint(scale) ? String.valueOf((long) scale) : String.valueOf(scale);
+    }
+
+    /**
+     * Prints the exponent of the load and of every query on every backend,
+     * scanning the actions and reading the summaries.
+     */
+    private void printSummary() {
+        int width = 36 + 16 * backends.size();
+        System.out.println("\n" + "=".repeat(width));
+        System.out.printf("SCALING EXPONENTS (measure ~ actions^b, scales %s)\n",
+            scales.stream().map(scale -> format(scale) + "x").toList());
+        System.out.println("=".repeat(width));
+        System.out.printf("%-36s", "");
+        backends.forEach(backend -> System.out.printf("%16s", backend));
+        System.out.println();
+
+        printRow("load (ms)", backend -> exponent(backend, Point::loadMs));
+        printRow("disk", backend -> exponent(backend, Point::diskBytes));
+        printRow("heap", backend -> exponent(backend, Point::heapBytes));
+        for (String query : QueryComparison.ALL_QUERIES) {
+            printRow(query + " (ms)", backend -> exponent(backend, point -> point.scanMs().get(query)));
+        }
+        for (String query : QueryComparison.ALL_QUERIES) {
+            printRow(query + " (summary ms)",
+                backend -> exponent(backend, point -> point.summaryMs().get(query)));
+        }
+        System.out.println("=".repeat(width));
+        System.out.println("- : not fitted, failed or without a positive value at some scale (see the report)");
+    }
+
+    private void printRow(String label, ToDoubleFunction<String> exponent) {
+        System.out.printf("%-36s", label);
+        for (String backend : backends) {
+            double b = exponent.applyAsDouble(backend);
+            String cell = Double.isNaN(b) ? "-" : String.format(b > SUPERLINEAR ? "%.2f !" : "%.2f", b);
+            System.out.printf("%16s", cell);
+        }
+        System.out.println();
+    }
+}
@@ -0,0 +1,248 @@
+package gr.network.read;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gr.network.client.SqliteConnection;
+import gr.network.client.SqliteSchema;
+import gr.network.domain.Action;
+import gr.network.load.SqliteLoader;
+import gr.network.read.sink.CollectingSink;
+import gr.network.read.sink.DiscardSink;
+
+/**
+ * Compares the SQLite schema layouts on the same input.
+ * The input is loaded in a new database file per layout, next to the
+ * configured one (mooc.db becomes mooc.compact.db and so on), and every
+ * query scans the actions, without summaries or cache, a few times.
+ * Reports the load time, the file size and the median time of every query,
+ * and checks that the queries answered from the summaries return the
+ * same rows as a scan of the actions in every layout.
+ * A query failing is reported as failed, neither timed nor compared.
+ * @version 1.2
+ */
+public class SchemaBenchmark {
+
+    private final Logger logger = LoggerFactory.getLogger(SchemaBenchmark.class);
+
+    /** Runs of every query, after one run warming the page cache. */
+    private static final int RUNS = 5;
+
+    /** The queries answered from the summaries whose rows are exact, so they must match a scan. */
+    private static final List<String> SUMMARY_QUERIES = List.of(
+        "graphsize", "actionsperuser", "toptargets", "avgactions",
+        "positivefeature2", "label1pertarget", "courseactivity", "useractivity"
+    );
+
+    /** How far apart two averages computed in a different order may be. */
+    private static final double TOLERANCE = 1e-9;
+
+    private final String uri;
+
+    /** The results of every layout, in the order they ran. */
+    private final Map<SqliteSchema, Result> results = new LinkedHashMap<>();
+
+    /**
+     * What was measured on one layout: query times are NaN for the queries that failed,
+     * and the summary queries that failed on either side are unchecked rather than mismatched.
+     */
+    private record Result(double loadMs, long fileBytes, Map<String, Double> queryMs, List<String> mismatches,
+                          List<String> unchecked) {}
+
+    /**
+     * @param uri the URI of the database, each layout gets its own file next to it
+     */
+    public SchemaBenchmark(String uri) {
+        this.uri = uri;
+    }
+
+    /**
+     * Loads the file in every layout and times the queries on each.
+     */
+    public void run(String fileName) throws Exception {
+        InputReader reader = new InputReader(fileName);
+        Set<String> users = reader.getUserIds();
+        Set<String> courses = reader.getCourseIds();
+        Set<Action> actions = reader.getActions();
+
+        for (SqliteSchema schema : SqliteSchema.values()) {
+            results.put(schema, benchmark(schema, users, courses, actions));
+        }
+        printSummary(actions.size());
+    }
+
+    private Result benchmark(SqliteSchema schema, Set<String> users, Set<String> courses, Set<Action> actions)
+            throws Exception {
+        String schemaUri = SqliteConnection.siblingUri(uri, schema.toString());
+
+        // every layout starts from an empty file
+        try (SqliteConnection connection = new SqliteConnection(schemaUri, "sqlite_" + schema, false)) {
+            for (String suffix : List.of("", "-wal", "-shm")) {
+                Files.deleteIfExists(Path.of(connection.getFile() + suffix));
+            }
+            connection.setSchema(schema);
+
+            logger.info("Loading {} actions with the {} schema into {}", actions.size(), schema, connection.getFile());
+            long start = System.nanoTime();
+            new SqliteLoader(users, courses, actions, connection).load();
+            double loadMs = (System.nanoTime() - start) / 1_000_000.0;
+
+            // move the WAL into the database file, so its size is all of the data
+            try (Statement stmt = connection.getConnection().createStatement()) {
+                stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+            long fileBytes = Files.size(Path.of(connection.getFile()));
+
+            Map<String, Double> queryMs = new LinkedHashMap<>();
+            for (String query : QueryComparison.ALL_QUERIES) {
+                queryMs.put(query, time(connection, query));
+            }
+
+            List<String> mismatches = new ArrayList<>();
+            List<String> unchecked = new ArrayList<>();
+            for (String query : SUMMARY_QUERIES) {
+                List<List<Object>> fromSummaries = rows(connection, query, true);
+                List<List<Object>> fromActions = rows(connection, query, false);
+                if (fromSummaries == null || fromActions == null) {
+                    unchecked.add(query);
+                } else if (!sameRows(fromSummaries, fromActions)) {
+                    logger.warn("The summaries and the actions disagree on '{}' with the {} schema", query, schema);
+                    mismatches.add(query);
+                }
+            }
+            return new Result(loadMs, fileBytes, queryMs, mismatches, unchecked);
+        }
+    }
+
+    /**
+     * The median time of the query, scanning the actions, or NaN once a run fails.
+     */
+    private double time(SqliteConnection connection, String query) {
+        double[] times = new double[RUNS];
+        for (int run = -1; run < RUNS; run++) {
+            Scanner input = new Scanner(QueryComparison.SAMPLE_INPUTS.getOrDefault(query, ""));
+            SqlReader reader = new SqlReader(connection, input);
+            reader.setUseCache(false);
+            reader.setUseSummaries(false);
+            reader.setSink(new DiscardSink());
+
+            double ms = reader.run(query);
+            if (reader.getFailure() != null) {
+                logger.warn("Query '{}' failed, not timing it", query, reader.getFailure());
+                return Double.NaN;
+            }
+            if (run >= 0) {
+                times[run] = ms;
+            }
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    /**
+     * The rows of the query, from the summaries or from the actions, or null if it failed.
+     */
+    private List<List<Object>> rows(SqliteConnection connection, String query, boolean summaries) {
+        Scanner input = new Scanner(QueryComparison.SAMPLE_INPUTS.getOrDefault(query, ""));
+        SqlReader reader = new SqlReader(connection, input);
+        CollectingSink sink = new CollectingSink();
+        reader.setUseCache(false);
+        reader.setUseSummaries(summaries);
+        reader.setSink(sink);
+        reader.run(query);
+        if (reader.getFailure() != null) {
+            logger.warn("Query '{}' failed {}, not comparing it", query,
+                summaries ? "on the summaries" : "on the actions", reader.getFailure());
+            return null;
+        }
+        return sink.getRows();
+    }
+
+    /**
+     * Whether the rows are the same, in the same order, numbers being compared by value.
+     */
+    private static boolean sameRows(List<List<Object>> expected, List<List<Object>> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            List<Object> a = expected.get(i);
+            List<Object> b = actual.get(i);
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int j = 0; j < a.size(); j++) {
+                Object x = a.get(j);
+                Object y = b.get(j);
+                if (x instanceof Number n && y instanceof Number m) {
+                    double d = n.doubleValue();
+                    double e = m.doubleValue();
+                    if (Math.abs(d - e) > TOLERANCE * Math.max(1.0, Math.max(Math.abs(d), Math.abs(e)))) {
+                        return false;
+                    }
+                } else if (!String.valueOf(x).equals(String.valueOf(y))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prints every layout side by side, each with its ratio to the default layout.
+     */
+    private void printSummary(int actionCount) {
+        List<SqliteSchema> schemas = new ArrayList<>(results.keySet());
+        Result baseline = results.get(SqliteSchema.DEFAULT);
+        int width = 28 + 22 * schemas.size();
+
+        System.out.println("\n" + "=".repeat(width));
+        System.out.printf("SQLITE SCHEMA LAYOUTS (%d actions, scans, median of %d runs)\n", actionCount, RUNS);
+        System.out.println("=".repeat(width));
+        System.out.printf("%-28s", "");
+        schemas.forEach(schema -> System.out.printf("%22s", schema));
+        System.out.println();
+
+        printRow("load (ms)", schemas, result -> result.loadMs(), baseline.loadMs());
+        printRow("file size (MB)", schemas, result -> result.fileBytes() / (1024.0 * 1024.0),
+            baseline.fileBytes() / (1024.0 * 1024.0));
+        for (String query : QueryComparison.ALL_QUERIES) {
+            printRow(query + " (ms)", schemas, result -> result.queryMs().get(query), baseline.queryMs().get(query));
+        }
+        System.out.printf("%-28s", "summaries match scans");
+        for (SqliteSchema schema : schemas) {
+            Result result = results.get(schema);
+            String cell = result.mismatches().isEmpty() ? "yes" : "no (" + result.mismatches().size() + " queries)";
+            if (!result.unchecked().isEmpty()) {
+                cell = (result.mismatches().isEmpty() ? "" : cell + ", ") + result.unchecked().size() + " failed";
+            }
+            System.out.printf("%22s", cell);
+        }
+        System.out.println();
+        System.out.println("=".repeat(width));
+    }
+
+    private void printRow(String label, List<SqliteSchema> schemas,
+                          ToDoubleFunction<Result> value, double baseline) {
+        System.out.printf("%-28s", label);
+        for (SqliteSchema schema : schemas) {
+            double v = value.applyAsDouble(results.get(schema));
+            String cell = Double.isNaN(v) ? "failed"
+                : baseline > 0 ? String.format("%.2f (%.2fx)", v, v / baseline) : String.format("%.2f", v);
+            System.out.printf("%22s", cell);
+        }
+        System.out.println();
+    }
+}
@@ -0,0 +1,189 @@
+package gr.network.read;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import gr.network.domain.QueryResult;
+import gr.network.sketch.HyperLogLog;
+
+/**
+ * Merges the partial results of a query run on every shard.
+ * Rows are grouped by their leading key columns and each following
+ * column is combined across shards, then optionally turned into the
+ * final columns (such as averages from sums and counts), ordered and cut.
+ * @version 1.0
+ */
+final class ShardMerge {
+
+    /** How a column of the partial rows combines across shards. */
+    enum Combine {
+        SUM, MIN, MAX,
+        /** HyperLogLog registers, merged into one sketch. */
+        SKETCH
+    }
+
+    private final int keys;
+    private final Combine[] combines;
+
+    private List<String> finalColumns;
+    private Function<List<Object>, List<Object>> finisher = Function.identity();
+    private Comparator<List<Object>> order;
+    private int limit = Integer.MAX_VALUE;
+
+    private ShardMerge(int keys, Combine... combines) {
+        this.keys = keys;
+        this.combines = combines;
+    }
+
+    /**
+     * Groups the rows by their first columns, combining each other column in turn.
+     */
+    static ShardMerge groupBy(int keys, Combine... combines) {
+        return new ShardMerge(keys, combines);
+    }
+
+    /**
+     * Rows of disjoint shards, only ordered and cut.
+     */
+    static ShardMerge concat() {
+        return new ShardMerge(0);
+    }
+
+    /**
+     * Turns the combined rows into the final columns.
+     */
+    ShardMerge finish(List<String> columns, Function<List<Object>, List<Object>> finisher) {
+        this.finalColumns = columns;
+        this.finisher = finisher;
+        return this;
+    }
+
+    /**
+     * Orders the final rows by a column, then by the next ones given.
+     */
+    ShardMerge orderBy(int column, boolean descending) {
+        Comparator<List<Object>> next = (a, b) -> compare(a.get(column), b.get(column));
+        if (descending) {
+            next = next.reversed();
+        }
+        this.order = order == null ? next : order.thenComparing(next);
+        return this;
+    }
+
+    ShardMerge limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Merges the results of every shard, which share their columns.
+     */
+    QueryResult merge(List<QueryResult> partials) {
+        List<String> columns = partials.get(0).columns();
+
+        List<List<Object>> rows;
+        if (keys == 0 && combines.length == 0) {
+            rows = new ArrayList<>();
+            partials.forEach(partial -> rows.addAll(partial.rows()));
+        } else {
+            Map<List<Object>, Object[]> groups = new LinkedHashMap<>();
+            for (QueryResult partial : partials) {
+                for (List<Object> row : partial.rows()) {
+                    Object[] combined = groups.computeIfAbsent(
+                        // keys may hold nulls, which List.copyOf rejects
+                        new ArrayList<>(row.subList(0, keys)), key -> new Object[combines.length]
+                    );
+                    for (int i = 0; i < combines.length; i++) {
+                        combined[i] = combine(combines[i], combined[i], row.get(keys + i));
+                    }
+                }
+            }
+
+            rows = new ArrayList<>(groups.size());
+            for (Map.Entry<List<Object>, Object[]> group : groups.entrySet()) {
+                List<Object> row = new ArrayList<>(group.getKey());
+                for (Object value : group.getValue()) {
+                    // sketches stay merged, for the finisher to estimate
+                    row.add(value);
+                }
+                rows.add(row);
+            }
+        }
+
+        List<List<Object>> finished = new ArrayList<>(rows.size());
+        for (List<Object> row : rows) {
+            finished.add(finisher.apply(row));
+        }
+        if (order != null) {
+            finished.sort(order);
+        }
+        if (finished.size() > limit) {
+            finished = new ArrayList<>(finished.subList(0, limit));
+        }
+        return new QueryResult(finalColumns != null ? finalColumns : columns, finished);
+    }
+
+    private static Object combine(Combine combine, Object current, Object value) {
+        if (value == null) {
+            return current;
+        }
+        if (combine == Combine.SKETCH) {
+            HyperLogLog sketch = HyperLogLog.fromBytes((byte[]) value);
+            if (current != null) {
+                sketch.merge((HyperLogLog) current);
+            }
+            return sketch;
+        }
+        if (current == null) {
+            return value;
+        }
+
+        Number a = (Number) current;
+        Number b = (Number) value;
+        boolean integral = isIntegral(a) && isIntegral(b);
+        return switch (combine) {
+            case SUM -> integral ? (Object) (a.longValue() + b.longValue()) : (Object) (a.doubleValue() + b.doubleValue());
+            case MIN -> a.doubleValue() <= b.doubleValue() ? a : b;
+            case MAX -> a.doubleValue() >= b.doubleValue() ? a : b;
+            case SKETCH -> throw new IllegalStateException("Sketches are merged above");
+        };
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long;
+    }
+
+    /**
+     * Orders values as SQLite does: nulls first, numbers by value, then text.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compare(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Number x && b instanceof Number y) {
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        if (a instanceof Number) {
+            return -1;
+        }
+        if (b instanceof Number) {
+            return 1;
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    /**
+     * A sum divided by a count, as SQLite averages: null over no rows.
+     */
+    static Object average(Object sum, Object count) {
+        if (sum == null || count == null || ((Number) count).doubleValue() == 0) {
+            return null;
+        }
+        return ((Number) sum).doubleValue() / ((Number) count).doubleValue();
+    }
+}
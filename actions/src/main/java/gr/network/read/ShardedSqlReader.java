@@ -0,0 +1,523 @@
+package gr.network.read;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gr.network.cache.ResultCache;
+import gr.network.client.SqliteReaderPool;
+import gr.network.client.SqliteShards;
+import gr.network.domain.QueryResult;
+import gr.network.domain.TimeBuckets;
+import gr.network.domain.Timestamps;
+import gr.network.load.SqliteSummaries;
+import gr.network.metrics.Metrics;
+import gr.network.read.ShardMerge.Combine;
+import gr.network.read.sink.ListRow;
+import gr.network.read.sink.PreviewSink;
+import gr.network.read.sink.ResultSink;
+import gr.network.sketch.HyperLogLog;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs the SQL catalog queries on every SQLite shard at once,
+ * merging their partial results. A user lives in one shard, so
+ * per-user results and distinct user-course pairs never overlap
+ * between shards, and each shard can cut its own top rows.
+ * Per-course results are partial in every shard, so shards return
+ * sums, minimums and maximums that are combined before averaging
+ * and cutting the top rows.
+ * @version 1.0
+ */
+public class ShardedSqlReader implements SqlQueryRunner {
+
+    private final Logger logger = LoggerFactory.getLogger(ShardedSqlReader.class);
+    private final SqliteShards shards;
+    private final ResultCache<QueryResult> cache;
+    private Scanner scanner;
+
+    /** Whether results may be served from and stored to the cache. */
+    private boolean useCache = true;
+
+    /** Whether queries may read the summaries maintained at load time. */
+    private boolean useSummaries = true;
+
+    /** Whether the summaries of every shard match its actions, and the cache version it was checked at. */
+    private Boolean summariesFresh;
+    private long summariesCheckedAt = -1;
+
+    /** Where the rows of every query go. */
+    private ResultSink sink = new PreviewSink();
+
+    /** Records the query plans of the first shard, when profiling. */
+    private QueryProfiler profiler;
+
+    /** The alias of the query currently running. */
+    private String alias;
+
+    /** Why the last query failed, null if it completed. */
+    private volatile Exception failure;
+
+    /** The statements running on the shards, so another thread can cancel them. */
+    private final Set<Statement> running = ConcurrentHashMap.newKeySet();
+
+    public ShardedSqlReader(SqliteShards shards, Scanner scanner) {
+        this.shards = shards;
+        this.cache = shards.getResultCache();
+        this.scanner = scanner;
+    }
+
+    @Override
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    @Override
+    public void setSink(ResultSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void setProfiler(QueryProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Interrupts the statements running on the shards, which stop with an error.
+     */
+    @Override
+    public void cancel() {
+        for (Statement stmt : running) {
+            try {
+                stmt.cancel();
+            } catch (SQLException e) {
+                logger.warn("Could not cancel a statement of '{}'", alias, e);
+            }
+        }
+    }
+
+    @Override
+    public void setUseSummaries(boolean useSummaries) {
+        this.useSummaries = useSummaries;
+    }
+
+    /**
+     * Whether queries should read the summary tables of every shard instead of the actions.
+     */
+    private boolean summariesAvailable() {
+        if (!useSummaries) {
+            return false;
+        }
+        // a load in this process bumps the version, and every query checks again for other processes
+        long version = cache.getVersion();
+        if (summariesFresh == null || summariesCheckedAt != version) {
+            Boolean wasFresh = summariesFresh;
+            try {
+                summariesFresh = shards.onEachShard((shard, connection) -> {
+                    try (SqliteReaderPool.Lease lease = connection.acquireReader()) {
+                        return SqliteSummaries.areFresh(lease.getConnection());
+                    }
+                }).stream().allMatch(Boolean::booleanValue);
+            } catch (Exception e) {
+                logger.warn("Could not check the summaries, falling back to the actions", e);
+                summariesFresh = false;
+            }
+            summariesCheckedAt = version;
+            if (!summariesFresh.equals(wasFresh)) {
+                logger.info("Summaries of the shards {}", summariesFresh ? "fresh, using them" : "stale, scanning the actions");
+            }
+        }
+        return summariesFresh;
+    }
+
+    /**
+     * Executes the query specified by alias on every shard.
+     * If queryName is null or empty, display menu and let user choose.
+     * @return execution time in milliseconds
+     */
+    @Override
+    public double run(String queryName) {
+        if (queryName == null || queryName.isBlank()) {
+            SqlReader.printAvailableQueries();
+            System.out.print("Choose one query to run: ");
+            queryName = scanner.nextLine();
+        }
+
+        logger.info("Running SQL query '{}' on {} shards.", queryName, shards.size());
+        alias = queryName.toLowerCase();
+        failure = null;
+        summariesCheckedAt = -1;
+
+        double totalTime = 0.0;
+        switch (queryName.toLowerCase()) {
+            case "graphsize" -> totalTime = graphSize();
+            case "actionstargetsofuser" ->
+                totalTime = actionsTargetsOfUser(Prompts.nonBlank(scanner, "Provide a user id: "));
+            case "actionsperuser" -> totalTime = actionsPerUser();
+            case "toptargets" -> totalTime = topTargets();
+            case "toptargetsapprox" -> totalTime = topTargetsApproximate();
+            case "avgactions" -> totalTime = avgActionsPerUser();
+            case "positivefeature2" -> totalTime = userTargetWithPositiveFeature2();
+            case "label1pertarget" -> totalTime = labelOnePerTarget();
+            case "actionsperuserwindow" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = actionsPerUserInWindow(from, to);
+            }
+            case "toptargetsrecent" -> totalTime = topTargetsRecent(Prompts.hours(scanner));
+            case "label1ratebyhour" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = labelOneRateByHour(from, to);
+            }
+            case "courseactivity" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = activityInWindow("Course", from, to);
+            }
+            case "useractivity" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = activityInWindow("User", from, to);
+            }
+            default -> {
+                System.out.println("Unknown query: " + queryName);
+                failure = new IllegalArgumentException("Unknown query: " + queryName);
+            }
+        }
+        return totalTime;
+    }
+
+    /**
+     * (2) Count of users, courses and actions.
+     * Users are split between the shards, courses are in every shard.
+     * @return total execution time in milliseconds
+     */
+    private double graphSize() {
+        System.out.println("Database size counts");
+
+        double time1 = executeAndPrint("Total Users Count", SqlCatalog.USER_COUNT, ShardMerge.groupBy(0, Combine.SUM));
+        double time2 = executeAndPrint("Total Courses Count", SqlCatalog.COURSE_COUNT, ShardMerge.groupBy(0, Combine.MAX));
+        double time3 = executeAndPrint("Total Actions Count", SqlCatalog.actionCount(summariesAvailable()),
+            ShardMerge.groupBy(0, Combine.SUM));
+        return time1 + time2 + time3;
+    }
+
+    /**
+     * (3) All actions and targets of a user, from the one shard holding them
+     * @return execution time in milliseconds
+     */
+    private double actionsTargetsOfUser(String userID) {
+        System.out.println("Actions and targets of user " + userID);
+        return executeAndPrint("Actions and Targets of user " + userID, SqlCatalog.ACTIONS_TARGETS_OF_USER,
+            List.of(shards.shardOf(userID)), ShardMerge.concat(), userID);
+    }
+
+    /**
+     * (4) Action counts per user, the first users of each shard merged
+     * @return execution time in milliseconds
+     */
+    private double actionsPerUser() {
+        System.out.println("Action counts per user");
+        return executeAndPrint("Action Counts per User", SqlCatalog.actionsPerUser(summariesAvailable()),
+            ShardMerge.concat().orderBy(0, false).limit(10));
+    }
+
+    /**
+     * (5) For each target, count how many users have done this target.
+     * Each user is in one shard, so the distinct users of the shards add up.
+     * @return execution time in milliseconds
+     */
+    private double topTargets() {
+        return executeAndPrint("Top targets by distinct users", SqlCatalog.topTargets(summariesAvailable(), false),
+            topBy(Combine.SUM));
+    }
+
+    /**
+     * (5b) Top targets by distinct users, estimated from the HyperLogLog
+     * sketches of every course, merged across the shards.
+     * Counts exactly, without a bound, when the sketches are unavailable.
+     * @return execution time in milliseconds
+     */
+    private double topTargetsApproximate() {
+        if (!summariesAvailable()) {
+            String sql = """
+                SELECT courseId as targetId, COUNT(DISTINCT userId) as user_count
+                FROM Actions
+                GROUP BY courseId
+                """;
+            return executeAndPrint("Top targets by distinct users (exact, no sketches)", sql,
+                ShardMerge.groupBy(1, Combine.SUM).orderBy(1, true).orderBy(0, false).limit(10));
+        }
+
+        double errorBound = 2 * HyperLogLog.standardError();
+
+        String sql = """
+            SELECT courseId as targetId, registers
+            FROM CourseSketch
+            """;
+        ShardMerge merge = ShardMerge.groupBy(1, Combine.SKETCH)
+            .finish(List.of("targetId", "user_count", "error_bound"), row -> {
+                long estimate = ((HyperLogLog) row.get(1)).estimate();
+                return Arrays.asList(row.get(0), estimate, (double) Math.round(estimate * errorBound));
+            })
+            .orderBy(1, true).orderBy(0, false).limit(10);
+
+        String label = String.format("Top targets by distinct users (approximate, +/-%.1f%% at 95%%)", 100 * errorBound);
+        return executeAndPrint(label, sql, merge);
+    }
+
+    /**
+     * (6) Count the average number of actions per user, from the sums and counts of the shards
+     * @return execution time in milliseconds
+     */
+    private double avgActionsPerUser() {
+        String sql = summariesAvailable()
+            ? """
+            SELECT SUM(actionCount) as actions, COUNT(*) as users
+            FROM UserSummary
+            """
+            : """
+            SELECT COUNT(*) as actions, COUNT(DISTINCT userId) as users
+            FROM Actions
+            """;
+
+        ShardMerge merge = ShardMerge.groupBy(0, Combine.SUM, Combine.SUM)
+            .finish(List.of("avg_actions_per_user"), row -> Arrays.asList(ShardMerge.average(row.get(0), row.get(1))));
+        return executeAndPrint("Average actions per user", sql, merge);
+    }
+
+    /**
+     * (7) Show the userID and the targetID, if the action has positive Feature2
+     * @return execution time in milliseconds
+     */
+    private double userTargetWithPositiveFeature2() {
+        return executeAndPrint("User/Target with Feature2 > 0", SqlCatalog.positiveFeature2(summariesAvailable()),
+            ShardMerge.concat().orderBy(0, false).orderBy(1, false).limit(10));
+    }
+
+    /**
+     * (8) For each targetID, count the actions with label "1"
+     * @return execution time in milliseconds
+     */
+    private double labelOnePerTarget() {
+        return executeAndPrint("Label=1 actions per target", SqlCatalog.labelOnePerTarget(summariesAvailable(), false),
+            topBy(Combine.SUM));
+    }
+
+    /**
+     * Count of actions per user within [from, to)
+     * @return execution time in milliseconds
+     */
+    private double actionsPerUserInWindow(long from, long to) {
+        return executeAndPrint("Action Counts per User in window", SqlCatalog.ACTIONS_PER_USER_IN_WINDOW,
+            ShardMerge.concat().orderBy(0, false).limit(10), from, to);
+    }
+
+    /**
+     * Top targets by distinct users over the last hours of the data.
+     * The latest action over every shard is looked up first, then the window counted.
+     * @return execution time in milliseconds
+     */
+    private double topTargetsRecent(long hours) {
+        long start = System.nanoTime();
+        Object latest;
+        try {
+            latest = gather(allShards(), "SELECT MAX(epochMillis) as latest FROM Actions",
+                ShardMerge.groupBy(0, Combine.MAX)).rows().get(0).get(0);
+        } catch (Exception e) {
+            System.err.printf("Error executing SQL query '%s': %s\n", alias, e.getMessage());
+            logger.error("Error finding the latest action on the shards", e);
+            failure = e;
+            return 0.0;
+        }
+        double lookupMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        String sql = """
+            SELECT courseId as targetId, COUNT(DISTINCT userId) as user_count
+            FROM Actions
+            WHERE epochMillis >= ?
+            GROUP BY courseId
+            """;
+
+        long since = latest == null ? Long.MAX_VALUE : ((Number) latest).longValue() - hours * Timestamps.MILLIS_PER_HOUR;
+        double queryMs = executeAndPrint("Top targets over the last " + hours + " hours", sql,
+            topBy(Combine.SUM), since);
+        return queryMs == 0.0 ? 0.0 : lookupMs + queryMs;
+    }
+
+    /**
+     * Rate of label=1 actions per hour within [from, to), from the counts of the shards
+     * @return execution time in milliseconds
+     */
+    private double labelOneRateByHour(long from, long to) {
+        String sql = """
+            SELECT epochMillis / ? as hour,
+                   COUNT(*) as action_count,
+                   SUM(label = 1) as label_1_count
+            FROM Actions
+            WHERE epochMillis >= ? AND epochMillis < ?
+            GROUP BY hour
+            """;
+
+        ShardMerge merge = ShardMerge.groupBy(1, Combine.SUM, Combine.SUM)
+            .finish(List.of("hour", "action_count", "label_1_count", "label_1_rate"), row -> Arrays.asList(
+                row.get(0), row.get(1), row.get(2), ShardMerge.average(row.get(2), row.get(1))
+            ))
+            .orderBy(0, false);
+        return executeAndPrint("Label=1 rate by hour", sql, merge, Timestamps.MILLIS_PER_HOUR, from, to);
+    }
+
+    /**
+     * Action and label=1 counts with feature statistics, per course or
+     * per user, within [from, to) rounded down to whole minutes.
+     * Shards return feature sums, which are averaged once merged.
+     * @return execution time in milliseconds
+     */
+    private double activityInWindow(String dimension, long from, long to) {
+        List<TimeBuckets.Segment> segments = summariesAvailable() ? TimeBuckets.cover(from, to) : null;
+        // users are in one shard only, so each shard can cut its own top users
+        String sql = SqlCatalog.activity(dimension, segments, true, dimension.equals("User"));
+
+        List<String> columns = new ArrayList<>(List.of("id", "action_count", "label_1_count"));
+        List<Combine> combines = new ArrayList<>(List.of(Combine.SUM, Combine.SUM));
+        for (int feature = 0; feature < 4; feature++) {
+            columns.addAll(List.of("feature" + feature + "_avg", "feature" + feature + "_min", "feature" + feature + "_max"));
+            combines.addAll(List.of(Combine.SUM, Combine.MIN, Combine.MAX));
+        }
+
+        ShardMerge merge = ShardMerge.groupBy(1, combines.toArray(Combine[]::new))
+            .finish(columns, row -> {
+                List<Object> finished = new ArrayList<>(row);
+                for (int feature = 0; feature < 4; feature++) {
+                    int sum = 3 + 3 * feature;
+                    finished.set(sum, ShardMerge.average(row.get(sum), row.get(1)));
+                }
+                return finished;
+            })
+            .orderBy(1, true).orderBy(0, false).limit(10);
+        return executeAndPrint(dimension + " activity in window", sql, merge,
+            SqlCatalog.activityParams(segments, from, to));
+    }
+
+    /**
+     * The top 10 targets by a count combined across the shards, ties broken by id.
+     */
+    private static ShardMerge topBy(Combine combine) {
+        return ShardMerge.groupBy(1, combine).orderBy(1, true).orderBy(0, false).limit(10);
+    }
+
+    private List<Integer> allShards() {
+        List<Integer> all = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            all.add(i);
+        }
+        return all;
+    }
+
+    private double executeAndPrint(String label, String sql, ShardMerge merge, Object... params) {
+        return executeAndPrint(label, sql, allShards(), merge, params);
+    }
+
+    /**
+     * Runs the query on the given shards at once, merges their rows and passes them to the sink.
+     * The time covers every shard, the merge and consuming every row,
+     * results are served from the cache when a fresh entry exists.
+     * @return execution time in milliseconds
+     */
+    private double executeAndPrint(String label, String sql, List<Integer> targets, ShardMerge merge, Object... params) {
+        ResultCache.Key key = new ResultCache.Key(alias, label, sql, List.of(params));
+        boolean cacheable = useCache && profiler == null;
+
+        try {
+            long version = cache.getVersion();
+            long start = System.nanoTime();
+
+            QueryResult cached = cacheable ? cache.get(key) : null;
+            QueryResult result = cached != null ? cached : gather(targets, sql, merge, params);
+
+            sink.begin(label, result.columns());
+            for (List<Object> values : result.rows()) {
+                sink.accept(new ListRow(values));
+            }
+            long nanos = System.nanoTime() - start;
+            double duration = nanos / 1_000_000.0;
+            Metrics.query("sqlite_sharded", alias, cached != null, nanos);
+
+            if (cached != null) {
+                System.out.printf("\n> %s (%.3f ms, cached)\n", label, duration);
+            } else {
+                System.out.printf("\n> %s (%.2f ms, %d shards)\n", label, duration, targets.size());
+            }
+            sink.end();
+
+            if (cached == null && cacheable && result.rows().size() <= QueryResult.MAX_ROWS) {
+                cache.put(key, result, version);
+            }
+
+            if (cached == null && profiler != null) {
+                int shard = targets.get(0);
+                try (SqliteReaderPool.Lease lease = shards.getShard(shard).acquireReader()) {
+                    SqlReader.recordProfile(profiler, alias, lease,
+                        label + " (shard " + shard + " of " + shards.size() + ")", duration, sql, params);
+                }
+            }
+            return duration;
+        } catch (Exception e) {
+            System.err.printf("Error executing SQL query '%s': %s\n", label, e.getMessage());
+            logger.error("Error executing SQL query '{}' on the shards", label, e);
+            failure = e;
+            return 0.0;
+        }
+    }
+
+    /**
+     * Runs the query on the given shards at once and merges their rows.
+     */
+    private QueryResult gather(List<Integer> targets, String sql, ShardMerge merge, Object... params) throws Exception {
+        List<QueryResult> partials = shards.onShards(targets, (shard, connection) -> {
+            try (SqliteReaderPool.Lease lease = connection.acquireReader()) {
+                PreparedStatement stmt = lease.prepare(sql);
+                for (int i = 0; i < params.length; i++) {
+                    stmt.setObject(i + 1, params[i]);
+                }
+
+                running.add(stmt);
+                try (ResultSet result = stmt.executeQuery()) {
+                    int columnCount = result.getMetaData().getColumnCount();
+                    List<String> columns = new ArrayList<>(columnCount);
+                    for (int i = 1; i <= columnCount; i++) {
+                        columns.add(result.getMetaData().getColumnName(i));
+                    }
+
+                    List<List<Object>> rows = new ArrayList<>();
+                    while (result.next()) {
+                        List<Object> values = new ArrayList<>(columnCount);
+                        for (int i = 1; i <= columnCount; i++) {
+                            values.add(result.getObject(i));
+                        }
+                        rows.add(values);
+                    }
+                    return new QueryResult(columns, rows);
+                } finally {
+                    running.remove(stmt);
+                }
+            }
+        });
+        return merge.merge(partials);
+    }
+}
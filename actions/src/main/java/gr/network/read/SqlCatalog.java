@@ -0,0 +1,182 @@
+package gr.network.read;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gr.network.domain.TimeBuckets;
+
+/**
+ * The SQL of the catalog queries shared by the readers of one database
+ * and of its shards. A query either cuts its own top rows, when its
+ * rows are complete, or returns every row, when they are partial and
+ * merged with those of other shards before the top rows are cut.
+ * @version 1.0
+ */
+final class SqlCatalog {
+
+    static final String USER_COUNT = "SELECT COUNT(*) as userCount FROM Users";
+
+    static final String COURSE_COUNT = "SELECT COUNT(*) as courseCount FROM Courses";
+
+    static final String ACTIONS_TARGETS_OF_USER = """
+        SELECT actionId, courseId as targetId
+        FROM Actions WHERE userId = ?
+        ORDER BY actionId
+        LIMIT 10
+        """;
+
+    static final String ACTIONS_PER_USER_IN_WINDOW = """
+        SELECT userId, COUNT(*) as action_count
+        FROM Actions
+        WHERE epochMillis >= ? AND epochMillis < ?
+        GROUP BY userId
+        ORDER BY userId
+        LIMIT 10
+        """;
+
+    private SqlCatalog() {}
+
+    static String actionCount(boolean summaries) {
+        return summaries
+            ? "SELECT COALESCE(SUM(actionCount), 0) as actionCount FROM CourseSummary"
+            : "SELECT COUNT(*) as actionCount FROM Actions";
+    }
+
+    static String actionsPerUser(boolean summaries) {
+        return summaries
+            ? """
+            SELECT userId, actionCount as action_count
+            FROM UserSummary
+            ORDER BY userId
+            LIMIT 10
+            """
+            : """
+            SELECT userId, COUNT(*) as action_count
+            FROM Actions
+            GROUP BY userId
+            ORDER BY userId
+            LIMIT 10
+            """;
+    }
+
+    /**
+     * @param top whether the query cuts the top 10 targets itself, ties broken by id
+     */
+    static String topTargets(boolean summaries, boolean top) {
+        String sql = summaries
+            ? """
+            SELECT courseId as targetId, userCount as user_count
+            FROM CourseSummary
+            """
+            : """
+            SELECT courseId as targetId, COUNT(DISTINCT userId) as user_count
+            FROM Actions
+            GROUP BY courseId
+            """;
+        return top ? sql + "ORDER BY user_count DESC, targetId\nLIMIT 10\n" : sql;
+    }
+
+    static String positiveFeature2(boolean summaries) {
+        return summaries
+            ? """
+            SELECT userId, courseId as targetId
+            FROM UserCourseSummary
+            WHERE positiveFeature2Count > 0
+            ORDER BY userId, targetId
+            LIMIT 10
+            """
+            : """
+            SELECT DISTINCT userId, courseId as targetId
+            FROM Actions
+            WHERE feature2 > 0
+            ORDER BY userId, targetId
+            LIMIT 10
+            """;
+    }
+
+    /**
+     * @param top whether the query cuts the top 10 targets itself, ties broken by id
+     */
+    static String labelOnePerTarget(boolean summaries, boolean top) {
+        String sql = summaries
+            ? """
+            SELECT courseId as targetId, labelOneCount as label_1_count
+            FROM CourseSummary
+            WHERE labelOneCount > 0
+            """
+            : """
+            SELECT courseId as targetId, COUNT(*) as label_1_count
+            FROM Actions
+            WHERE label = 1
+            GROUP BY courseId
+            """;
+        return top ? sql + "ORDER BY label_1_count DESC, targetId\nLIMIT 10\n" : sql;
+    }
+
+    /**
+     * Action and label=1 counts with feature statistics per course or per user,
+     * from the rollup buckets covering the window, or from the actions when
+     * segments is null. The parameters come from {@link #activityParams}.
+     * @param sums whether the features are summed instead of averaged, to be averaged once merged
+     * @param top whether the query cuts the top 10 by actions itself
+     */
+    static String activity(String dimension, List<TimeBuckets.Segment> segments, boolean sums, boolean top) {
+        String id = dimension.equals("Course") ? "courseId" : "userId";
+
+        List<String> features = new ArrayList<>();
+        for (int feature = 0; feature < 4; feature++) {
+            String column = "feature" + feature;
+            String alias = " as " + column;
+            if (segments != null) {
+                features.add(sums
+                    ? "SUM(" + column + "Sum)" + alias + "_sum"
+                    : "SUM(" + column + "Sum) / SUM(actionCount)" + alias + "_avg");
+                features.add("MIN(" + column + "Min)" + alias + "_min");
+                features.add("MAX(" + column + "Max)" + alias + "_max");
+            } else {
+                features.add((sums ? "SUM(" : "AVG(") + column + ")" + alias + (sums ? "_sum" : "_avg"));
+                features.add("MIN(" + column + ")" + alias + "_min");
+                features.add("MAX(" + column + ")" + alias + "_max");
+            }
+        }
+
+        String counts;
+        String from;
+        if (segments != null) {
+            List<String> conditions = new ArrayList<>();
+            for (int i = 0; i < segments.size(); i++) {
+                conditions.add("(bucketSize = ? AND bucketStart >= ? AND bucketStart < ?)");
+            }
+            counts = "SUM(actionCount) as action_count, SUM(labelOneCount) as label_1_count";
+            from = dimension + "Rollup\nWHERE " + (conditions.isEmpty() ? "0" : String.join(" OR ", conditions));
+        } else {
+            counts = "COUNT(*) as action_count, SUM(label = 1) as label_1_count";
+            from = "Actions\nWHERE epochMillis >= ? AND epochMillis < ?";
+        }
+
+        return String.format("""
+            SELECT %s as id, %s,
+                   %s
+            FROM %s
+            GROUP BY %s
+            %s
+            """, id, counts, String.join(",\n       ", features), from, id,
+            top ? "ORDER BY action_count DESC, id\nLIMIT 10" : "");
+    }
+
+    /**
+     * The parameters of {@link #activity}: the bounds of every segment,
+     * or the window rounded down to whole minutes when segments is null.
+     */
+    static Object[] activityParams(List<TimeBuckets.Segment> segments, long from, long to) {
+        List<Object> params = new ArrayList<>();
+        if (segments != null) {
+            for (TimeBuckets.Segment segment : segments) {
+                params.addAll(List.of(segment.size(), segment.from(), segment.to()));
+            }
+        } else {
+            params.addAll(List.of(TimeBuckets.floor(from, TimeBuckets.MINUTE), TimeBuckets.floor(to, TimeBuckets.MINUTE)));
+        }
+        return params.toArray();
+    }
+}
@@ -0,0 +1,35 @@
+package gr.network.read;
+
+import gr.network.read.sink.ResultSink;
+
+/**
+ * Runs the catalog queries against SQLite, whether one database or its shards.
+ * @version 1.0
+ */
+public interface SqlQueryRunner {
+
+    /**
+     * Executes the query specified by alias.
+     * @return execution time in milliseconds, 0 if it failed
+     */
+    double run(String queryName);
+
+    /**
+     * Why the last query failed, null if it completed.
+     */
+    Exception getFailure();
+
+    /**
+     * Cancels the statements still running, from another thread.
+     * The query they belong to fails.
+     */
+    void cancel();
+
+    void setUseCache(boolean useCache);
+
+    void setUseSummaries(boolean useSummaries);
+
+    void setSink(ResultSink sink);
+
+    void setProfiler(QueryProfiler profiler);
+}
@@ -3,12 +3,29 @@ package gr.network.read;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import gr.network.cache.ResultCache;
 import gr.network.client.SqliteConnection;
-
-import java.sql.Connection;
+import gr.network.client.SqliteReaderPool;
+import gr.network.domain.QueryResult;
+import gr.network.domain.TimeBuckets;
+import gr.network.domain.Timestamps;
+import gr.network.load.SqliteSummaries;
+import gr.network.metrics.Metrics;
+import gr.network.read.sink.ListRow;
+import gr.network.read.sink.PreviewSink;
+import gr.network.read.sink.ResultSink;
+import gr.network.read.sink.Row;
+import gr.network.sketch.HyperLogLog;
+
+import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
@@ -16,27 +33,131 @@ import java.util.Scanner;
  * to query data from it.
  * @version 1.0
  */
-public class SqlReader {
+public class SqlReader implements SqlQueryRunner {
 
     private final Logger logger = LoggerFactory.getLogger(SqlReader.class);
-    private final Connection connection;
+    private final SqliteConnection sqliteConnection;
+    private final ResultCache<QueryResult> cache;
     private Scanner scanner;
 
+    /** Whether results may be served from and stored to the cache. */
+    private boolean useCache = true;
+
+    /** Whether queries may read the summaries maintained at load time. */
+    private boolean useSummaries = true;
+
+    /** Whether the summaries match the actions, and the cache version it was checked at. */
+    private Boolean summariesFresh;
+    private long summariesCheckedAt = -1;
+
+    /** Where the rows of every query go. */
+    private ResultSink sink = new PreviewSink();
+
+    /** Records query plans, when profiling. */
+    private QueryProfiler profiler;
+
+    /** The alias of the query currently running. */
+    private String alias;
+
+    /** Why the last query failed, null if it completed. */
+    private volatile Exception failure;
+
+    /** The statement running, so another thread can cancel it. */
+    private volatile Statement running;
+
     public SqlReader(SqliteConnection sqliteConnection, Scanner scanner) {
-        try {
-            this.connection = sqliteConnection.getConnection();
-        } catch (SQLException e) {
-            logger.error("Failed to establish SQLite connection", e);
-            throw new RuntimeException("Failed to establish SQLite connection", e);
-        }
+        this.sqliteConnection = sqliteConnection;
+        this.cache = sqliteConnection.getResultCache();
         this.scanner = scanner;
     }
 
+    /**
+     * Enables or disables the result cache for this reader.
+     * Benchmarks should disable it, to time the database itself.
+     */
+    @Override
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    /**
+     * Sets where the rows of every query go.
+     * By default a preview of each result is printed.
+     */
+    @Override
+    public void setSink(ResultSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Profiles every query and records its plan.
+     * Profiled queries bypass the result cache.
+     */
+    @Override
+    public void setProfiler(QueryProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Interrupts the statement running on SQLite, which stops with an error.
+     */
+    @Override
+    public void cancel() {
+        Statement stmt = running;
+        if (stmt != null) {
+            try {
+                stmt.cancel();
+            } catch (SQLException e) {
+                logger.warn("Could not cancel the statement of '{}'", alias, e);
+            }
+        }
+    }
+
+    /**
+     * Enables or disables reading the load-time summary tables.
+     * Disabled, every query scans the Actions table.
+     */
+    @Override
+    public void setUseSummaries(boolean useSummaries) {
+        this.useSummaries = useSummaries;
+    }
+
+    /**
+     * Whether queries should read the summary tables instead of the actions.
+     */
+    private boolean summariesAvailable() {
+        if (!useSummaries) {
+            return false;
+        }
+        // a load in this process bumps the version, and every query checks again for other processes
+        long version = cache.getVersion();
+        if (summariesFresh == null || summariesCheckedAt != version) {
+            Boolean wasFresh = summariesFresh;
+            try (SqliteReaderPool.Lease lease = sqliteConnection.acquireReader()) {
+                summariesFresh = SqliteSummaries.areFresh(lease.getConnection());
+            } catch (SQLException e) {
+                logger.warn("Could not check the summaries, falling back to the actions", e);
+                summariesFresh = false;
+            }
+            summariesCheckedAt = version;
+            if (!summariesFresh.equals(wasFresh)) {
+                logger.info("Summaries {}", summariesFresh ? "fresh, using them" : "stale, scanning the actions");
+            }
+        }
+        return summariesFresh;
+    }
+
     /**
      * Executes the query specified by alias.
      * If queryName is null or empty, display menu and let user choose.
      * @return execution time in milliseconds
      */
+    @Override
     public double run(String queryName) {
         if (queryName == null || queryName.isBlank()) {
             printAvailableQueries();
@@ -45,26 +166,46 @@ public class SqlReader {
         }
 
         logger.info("Running SQL query '{}'.", queryName);
+        alias = queryName.toLowerCase();
+        failure = null;
+        summariesCheckedAt = -1;
 
         double totalTime = 0.0;
         switch (queryName.toLowerCase()) {
             case "graphsize" -> totalTime = graphSize();
-            case "actionstargetsofuser" -> {
-                // take user input for the user id
-                String userId = "";
-                do {
-                    System.out.print("Provide a user id: ");
-                    userId = scanner.nextLine().trim();
-                } while (userId.isBlank());
-
-                totalTime = actionsTargetsOfUser(userId);
-            }
+            case "actionstargetsofuser" ->
+                totalTime = actionsTargetsOfUser(Prompts.nonBlank(scanner, "Provide a user id: "));
             case "actionsperuser" -> totalTime = actionsPerUser();
             case "toptargets" -> totalTime = topTargets();
+            case "toptargetsapprox" -> totalTime = topTargetsApproximate();
             case "avgactions" -> totalTime = avgActionsPerUser();
             case "positivefeature2" -> totalTime = userTargetWithPositiveFeature2();
             case "label1pertarget" -> totalTime = labelOnePerTarget();
-            default -> System.out.println("Unknown query: " + queryName);
+            case "actionsperuserwindow" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = actionsPerUserInWindow(from, to);
+            }
+            case "toptargetsrecent" -> totalTime = topTargetsRecent(Prompts.hours(scanner));
+            case "label1ratebyhour" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = labelOneRateByHour(from, to);
+            }
+            case "courseactivity" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = activityInWindow("Course", from, to);
+            }
+            case "useractivity" -> {
+                long from = Prompts.timestamp(scanner, "Provide the window start: ");
+                long to = Prompts.timestamp(scanner, "Provide the window end: ");
+                totalTime = activityInWindow("User", from, to);
+            }
+            default -> {
+                System.out.println("Unknown query: " + queryName);
+                failure = new IllegalArgumentException("Unknown query: " + queryName);
+            }
         }
         return totalTime;
     }
@@ -76,13 +217,9 @@ public class SqlReader {
     private double graphSize() {
         System.out.println("Database size counts");
 
-        String userCountSql = "SELECT COUNT(*) as userCount FROM Users";
-        String courseCountSql = "SELECT COUNT(*) as courseCount FROM Courses";
-        String actionCountSql = "SELECT COUNT(*) as actionCount FROM Actions";
-
-        double time1 = executeAndPrint("Total Users Count", userCountSql);
-        double time2 = executeAndPrint("Total Courses Count", courseCountSql);
-        double time3 = executeAndPrint("Total Actions Count", actionCountSql);
+        double time1 = executeAndPrint("Total Users Count", SqlCatalog.USER_COUNT);
+        double time2 = executeAndPrint("Total Courses Count", SqlCatalog.COURSE_COUNT);
+        double time3 = executeAndPrint("Total Actions Count", SqlCatalog.actionCount(summariesAvailable()));
         return time1 + time2 + time3;
     }
 
@@ -92,14 +229,7 @@ public class SqlReader {
      */
     private double actionsTargetsOfUser(String userID) {
         System.out.println("Actions and targets of user " + userID);
-
-        String sql = """
-        SELECT actionId, courseId as targetId
-        FROM Actions WHERE userId = ?
-        ORDER BY actionId
-        LIMIT 10
-        """;
-        return executeAndPrint("Actions and Targets of user " + userID, sql, userID);
+        return executeAndPrint("Actions and Targets of user " + userID, SqlCatalog.ACTIONS_TARGETS_OF_USER, userID);
     }
 
     /**
@@ -108,16 +238,7 @@ public class SqlReader {
      */
     private double actionsPerUser() {
         System.out.println("Action counts per user");
-
-        String sql = """
-            SELECT userId, COUNT(*) as action_count
-            FROM Actions
-            GROUP BY userId
-            ORDER BY userId
-            LIMIT 10
-            """;
-
-        return executeAndPrint("Action Counts per User", sql);
+        return executeAndPrint("Action Counts per User", SqlCatalog.actionsPerUser(summariesAvailable()));
     }
 
     /**
@@ -125,15 +246,38 @@ public class SqlReader {
      * @return execution time in milliseconds
      */
     private double topTargets() {
+        return executeAndPrint("Top targets by distinct users", SqlCatalog.topTargets(summariesAvailable(), true));
+    }
+
+    /**
+     * (5b) Top targets by distinct users, estimated from the HyperLogLog
+     * sketch of every course, with the bound the estimate is within
+     * 95% of the time. Counts exactly, without a bound, when the sketches
+     * are unavailable.
+     * @return execution time in milliseconds
+     */
+    private double topTargetsApproximate() {
+        if (!summariesAvailable()) {
+            String sql = """
+                SELECT courseId as targetId, COUNT(DISTINCT userId) as user_count
+                FROM Actions
+                GROUP BY courseId
+                ORDER BY user_count DESC
+                LIMIT 10
+                """;
+            return executeAndPrint("Top targets by distinct users (exact, no sketches)", sql);
+        }
+
+        double errorBound = 2 * HyperLogLog.standardError();
         String sql = """
-            SELECT courseId as targetId, COUNT(DISTINCT userId) as user_count
-            FROM Actions
-            GROUP BY courseId
+            SELECT courseId as targetId, userCountEstimate as user_count,
+                   ROUND(userCountEstimate * ?) as error_bound
+            FROM CourseSketch
             ORDER BY user_count DESC
             LIMIT 10
             """;
-
-        return executeAndPrint("Top targets by distinct users", sql);
+        String label = String.format("Top targets by distinct users (approximate, +/-%.1f%% at 95%%)", 100 * errorBound);
+        return executeAndPrint(label, sql, errorBound);
     }
 
     /**
@@ -141,7 +285,12 @@ public class SqlReader {
      * @return execution time in milliseconds
      */
     private double avgActionsPerUser() {
-        String sql = """
+        String sql = summariesAvailable()
+            ? """
+            SELECT AVG(actionCount) as avg_actions_per_user
+            FROM UserSummary
+            """
+            : """
             SELECT AVG(action_count) as avg_actions_per_user
             FROM (
                 SELECT userId, COUNT(*) as action_count
@@ -158,77 +307,257 @@ public class SqlReader {
      * @return execution time in milliseconds
      */
     private double userTargetWithPositiveFeature2() {
+        return executeAndPrint("User/Target with Feature2 > 0", SqlCatalog.positiveFeature2(summariesAvailable()));
+    }
+
+    /**
+     * (8) For each targetID, count the actions with label "1"
+     * @return execution time in milliseconds
+     */
+    private double labelOnePerTarget() {
+        return executeAndPrint("Label=1 actions per target", SqlCatalog.labelOnePerTarget(summariesAvailable(), true));
+    }
+
+    /**
+     * Count of actions per user within [from, to)
+     * @return execution time in milliseconds
+     */
+    private double actionsPerUserInWindow(long from, long to) {
+        return executeAndPrint("Action Counts per User in window", SqlCatalog.ACTIONS_PER_USER_IN_WINDOW, from, to);
+    }
+
+    /**
+     * Top targets by distinct users over the last hours of the data.
+     * The window ends at the latest action, not at the current time,
+     * since the timestamps may be relative to the start of the recording.
+     * @return execution time in milliseconds
+     */
+    private double topTargetsRecent(long hours) {
         String sql = """
-            SELECT DISTINCT userId, courseId as targetId
+            SELECT courseId as targetId, COUNT(DISTINCT userId) as user_count
             FROM Actions
-            WHERE feature2 > 0
-            ORDER BY userId, targetId
+            WHERE epochMillis >= (SELECT MAX(epochMillis) FROM Actions) - ?
+            GROUP BY courseId
+            ORDER BY user_count DESC
             LIMIT 10
             """;
 
-        return executeAndPrint("User/Target with Feature2 > 0", sql);
+        return executeAndPrint("Top targets over the last " + hours + " hours", sql,
+            hours * Timestamps.MILLIS_PER_HOUR);
     }
 
     /**
-     * (8) For each targetID, count the actions with label "1"
+     * Rate of label=1 actions per hour within [from, to)
      * @return execution time in milliseconds
      */
-    private double labelOnePerTarget() {
+    private double labelOneRateByHour(long from, long to) {
         String sql = """
-            SELECT courseId as targetId, COUNT(*) as label_1_count
+            SELECT epochMillis / ? as hour,
+                   COUNT(*) as action_count,
+                   SUM(label = 1) as label_1_count,
+                   AVG(label = 1) as label_1_rate
             FROM Actions
-            WHERE label = 1
-            GROUP BY courseId
-            ORDER BY label_1_count DESC
-            LIMIT 10
+            WHERE epochMillis >= ? AND epochMillis < ?
+            GROUP BY hour
+            ORDER BY hour
             """;
 
-        return executeAndPrint("Label=1 actions per target", sql);
+        return executeAndPrint("Label=1 rate by hour", sql, Timestamps.MILLIS_PER_HOUR, from, to);
+    }
+
+    /**
+     * Action and label=1 counts with feature statistics, per course or
+     * per user, within [from, to) rounded down to whole minutes.
+     * The rollups answer it from a handful of buckets per user or course.
+     * @return execution time in milliseconds
+     */
+    private double activityInWindow(String dimension, long from, long to) {
+        List<TimeBuckets.Segment> segments = summariesAvailable() ? TimeBuckets.cover(from, to) : null;
+        String sql = SqlCatalog.activity(dimension, segments, false, true);
+        return executeAndPrint(dimension + " activity in window", sql, SqlCatalog.activityParams(segments, from, to));
     }
 
     /**
-     * Executes and prints the result of the given SQL query.
+     * Executes the given SQL query and passes its rows to the sink.
+     * The time covers running the query and consuming every row,
+     * results are served from the cache when a fresh entry exists.
      * @return execution time in milliseconds
      */
-    private double executeAndPrint(String label, String sql, String... params) {
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    private double executeAndPrint(String label, String sql, Object... params) {
+        ResultCache.Key key = new ResultCache.Key(alias, label, sql, List.of(params));
+        boolean cacheable = useCache && profiler == null;
+
+        try {
+            if (cacheable) {
+                long start = System.nanoTime();
+                QueryResult cached = cache.get(key);
+                if (cached != null) {
+                    sink.begin(label, cached.columns());
+                    for (List<Object> values : cached.rows()) {
+                        sink.accept(new ListRow(values));
+                    }
+                    long nanos = System.nanoTime() - start;
+                    double duration = nanos / 1_000_000.0;
+                    Metrics.query("sqlite", alias, true, nanos);
+
+                    System.out.printf("\n> %s (%.3f ms, cached)\n", label, duration);
+                    sink.end();
+                    return duration;
+                }
+            }
+        } catch (IOException e) {
+            System.err.printf("Error writing results of '%s': %s\n", label, e.getMessage());
+            logger.error("Error writing results of '{}'", label, e);
+            failure = e;
+            return 0.0;
+        }
+
+        try (SqliteReaderPool.Lease lease = sqliteConnection.acquireReader()) {
+            PreparedStatement stmt = lease.prepare(sql);
+
             // Set parameters if any
             for (int i = 0; i < params.length; i++) {
-                stmt.setString(i + 1, params[i]);
+                stmt.setObject(i + 1, params[i]);
             }
 
+            long version = cache.getVersion();
+
             long start = System.nanoTime();
+            running = stmt;
             ResultSet result = stmt.executeQuery();
-            double duration = (System.nanoTime() - start) / 1_000_000.0;
 
-            System.out.printf("\n> %s (%.2f ms)\n", label, duration);
-
-            // Print column headers
             int columnCount = result.getMetaData().getColumnCount();
+            List<String> columns = new ArrayList<>(columnCount);
             for (int i = 1; i <= columnCount; i++) {
-                System.out.print(result.getMetaData().getColumnName(i) + "\t");
+                columns.add(result.getMetaData().getColumnName(i));
             }
-            System.out.println();
+            sink.begin(label, columns);
 
-            // Print results
+            // keep the rows for the cache, unless there are too many
+            List<List<Object>> rows = cacheable ? new ArrayList<>() : null;
+            ResultSetRow row = new ResultSetRow(result, columnCount);
             while (result.next()) {
-                for (int i = 1; i <= columnCount; i++) {
-                    System.out.print(result.getObject(i) + "\t");
+                sink.accept(row);
+
+                if (rows != null && rows.size() < QueryResult.MAX_ROWS) {
+                    List<Object> values = new ArrayList<>(columnCount);
+                    for (int i = 1; i <= columnCount; i++) {
+                        values.add(result.getObject(i));
+                    }
+                    rows.add(values);
+                } else {
+                    rows = null;
                 }
-                System.out.println();
+            }
+            result.close();
+            running = null;
+            long nanos = System.nanoTime() - start;
+            double duration = nanos / 1_000_000.0;
+            Metrics.query("sqlite", alias, false, nanos);
+
+            System.out.printf("\n> %s (%.2f ms)\n", label, duration);
+            sink.end();
+
+            if (rows != null) {
+                cache.put(key, new QueryResult(columns, rows), version);
+            }
+
+            if (profiler != null) {
+                recordProfile(profiler, alias, lease, label, duration, sql, params);
             }
             return duration;
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             System.err.printf("Error executing SQL query '%s': %s\n", label, e.getMessage());
             logger.error("Error executing SQL query '{}'", label, e);
+            running = null;
+            failure = e;
             return 0.0;
         }
     }
 
+    /**
+     * Records the query plan of an executed query,
+     * with the tables it scans and the indexes it searches.
+     */
+    static void recordProfile(QueryProfiler profiler, String alias, SqliteReaderPool.Lease lease,
+            String label, double duration, String sql, Object... params) throws SQLException {
+        StringBuilder tree = new StringBuilder();
+        List<String> scans = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+
+        PreparedStatement stmt = lease.prepare("EXPLAIN QUERY PLAN " + sql);
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+
+        // rows are ordered so that parents come before their children
+        Map<Integer, Integer> depths = new HashMap<>();
+        try (ResultSet plan = stmt.executeQuery()) {
+            while (plan.next()) {
+                int id = plan.getInt("id");
+                int depth = depths.getOrDefault(plan.getInt("parent"), -1) + 1;
+                depths.put(id, depth);
+
+                String detail = plan.getString("detail");
+                tree.append("  ".repeat(depth)).append("+ ").append(detail).append('\n');
+
+                if (detail.startsWith("SCAN")) {
+                    scans.add(detail.substring("SCAN ".length()).split(" USING ")[0]);
+                }
+                int using = detail.indexOf("USING ");
+                if (using >= 0) {
+                    indexes.add(detail.substring(using + "USING ".length()));
+                }
+            }
+        }
+
+        profiler.record(
+            "sqlite",
+            alias,
+            label,
+            duration,
+            String.format(
+                "scans=%s, indexes=%s",
+                scans.isEmpty() ? "none" : String.join("; ", scans),
+                indexes.isEmpty() ? "none" : String.join("; ", indexes)
+            ),
+            tree.toString()
+        );
+    }
+
+    /**
+     * Row over the current position of a result set,
+     * reading the values only when asked.
+     */
+    private static final class ResultSetRow implements Row {
+
+        private final ResultSet result;
+        private final int columnCount;
+
+        ResultSetRow(ResultSet result, int columnCount) {
+            this.result = result;
+            this.columnCount = columnCount;
+        }
+
+        @Override
+        public int size() {
+            return columnCount;
+        }
+
+        @Override
+        public Object get(int index) {
+            try {
+                return result.getObject(index + 1);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not read column " + (index + 1), e);
+            }
+        }
+    }
+
     /**
      * Prints the available query options.
      */
-    private void printAvailableQueries() {
+    static void printAvailableQueries() {
         System.out.println("""
             Available SQL Queries:
             ───────────────────────────────
@@ -236,9 +565,15 @@ public class SqlReader {
             actionstargetsofuser -> Actions and targets of a user
             actionsperuser    -> Count of actions per user
             toptargets        -> Count distinct users per course
+            toptargetsapprox  -> Estimate distinct users per course from sketches
             avgactions        -> Average number of actions per user
             positivefeature2  -> (userID, courseID) where feature2 > 0
             label1pertarget   -> Count of label=1 actions per course
+            actionsperuserwindow -> Count of actions per user in a time window
+            toptargetsrecent  -> Distinct users per course over the last N hours
+            label1ratebyhour  -> Rate of label=1 actions per hour in a time window
+            courseactivity    -> Actions, label=1 and feature stats per course in a time window
+            useractivity      -> Actions, label=1 and feature stats per user in a time window
         """);
     }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package gr.network.read.sink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the rows of every statement in memory, in order, to compare them.
+ * @version 1.0
+ */
+public class CollectingSink implements ResultSink {
+
+    private final List<List<Object>> rows = new ArrayList<>();
+
+    @Override
+    public void begin(String label, List<String> columns) {}
+
+    @Override
+    public void accept(Row row) {
+        List<Object> values = new ArrayList<>(row.size());
+        for (int i = 0; i < row.size(); i++) {
+            values.add(row.get(i));
+        }
+        rows.add(values);
+    }
+
+    @Override
+    public void end() {}
+
+    public List<List<Object>> getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,31 @@
+package gr.network.read.sink;
+
+import java.util.List;
+
+/**
+ * Counts the rows of each statement and prints only the count.
+ * @version 1.0
+ */
+public class CountingSink implements ResultSink {
+
+    private long count;
+
+    @Override
+    public void begin(String label, List<String> columns) {
+        count = 0;
+    }
+
+    @Override
+    public void accept(Row row) {
+        count++;
+    }
+
+    @Override
+    public void end() {
+        System.out.println(count + " rows");
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,85 @@
+package gr.network.read.sink;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Streams rows to CSV files, one per statement so every file has a single
+ * header: the first statement goes to the given path, and the next ones
+ * to numbered files next to it (results.csv, results.2.csv, ...).
+ * @version 1.0
+ */
+public class CsvFileSink extends FileSink {
+
+    private final Path first;
+
+    /** The statements begun so far. */
+    private int statements;
+
+    public CsvFileSink(Path path) throws IOException {
+        super(path);
+        this.first = path;
+    }
+
+    @Override
+    public void begin(String label, List<String> columns) throws IOException {
+        if (++statements > 1) {
+            reopen(numbered(first, statements));
+        }
+        line.setLength(0);
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendField(columns.get(i));
+        }
+        line.append('\n');
+        write(line);
+    }
+
+    @Override
+    protected void formatRow(Row row) {
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            Object value = row.get(i);
+            if (value != null) {
+                appendField(value.toString());
+            }
+        }
+    }
+
+    /** The path with the number before its extension: results.csv becomes results.2.csv. */
+    static Path numbered(Path path, int number) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String numbered = dot > 0
+            ? name.substring(0, dot) + "." + number + name.substring(dot)
+            : name + "." + number;
+        return path.resolveSibling(numbered);
+    }
+
+    /**
+     * Appends a field, quoted only if it contains a separator or quote.
+     */
+    private void appendField(String field) {
+        boolean quote = field.indexOf(',') >= 0 || field.indexOf('"') >= 0
+            || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0;
+        if (!quote) {
+            line.append(field);
+            return;
+        }
+
+        line.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,20 @@
+package gr.network.read.sink;
+
+import java.util.List;
+
+/**
+ * Drops every row without looking at it.
+ * Used for benchmarks, to time the database alone.
+ * @version 1.0
+ */
+public class DiscardSink implements ResultSink {
+
+    @Override
+    public void begin(String label, List<String> columns) {}
+
+    @Override
+    public void accept(Row row) {}
+
+    @Override
+    public void end() {}
+}
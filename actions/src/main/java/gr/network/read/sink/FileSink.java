@@ -0,0 +1,106 @@
+package gr.network.read.sink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base of the sinks streaming rows to a file.
+ * Text is encoded into a direct buffer and written to the file
+ * channel only when the buffer fills, so exports run at I/O speed
+ * regardless of the number of rows.
+ * @version 1.0
+ */
+public abstract class FileSink implements ResultSink {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private Path path;
+    private FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    /** Reused to build each line of text. */
+    protected final StringBuilder line = new StringBuilder(256);
+
+    private long rows;
+
+    protected FileSink(Path path) throws IOException {
+        this.path = path;
+        this.channel = open(path);
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        );
+    }
+
+    /**
+     * Finishes the current file and writes whatever follows to another one.
+     */
+    protected void reopen(Path next) throws IOException {
+        drain();
+        channel.close();
+        channel = open(next);
+        path = next;
+    }
+
+    @Override
+    public void accept(Row row) throws IOException {
+        line.setLength(0);
+        formatRow(row);
+        line.append('\n');
+        write(line);
+        rows++;
+    }
+
+    /** Appends the text of a row, without the line end, to {@link #line}. */
+    protected abstract void formatRow(Row row);
+
+    @Override
+    public void end() throws IOException {
+        System.out.printf("%d rows written to %s\n", rows, path);
+        rows = 0;
+    }
+
+    /**
+     * Encodes text into the buffer, draining it to the file when full.
+     */
+    protected void write(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, false);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isUnderflow()) {
+                return;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        channel.close();
+    }
+}
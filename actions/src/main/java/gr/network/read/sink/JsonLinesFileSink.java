@@ -0,0 +1,73 @@
+package gr.network.read.sink;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Streams rows to a JSON lines file, one object per row
+ * keyed by the column names. NaN and infinite numbers are written as null.
+ * @version 1.0
+ */
+public class JsonLinesFileSink extends FileSink {
+
+    private List<String> columns;
+
+    public JsonLinesFileSink(Path path) throws IOException {
+        super(path);
+    }
+
+    @Override
+    public void begin(String label, List<String> columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    protected void formatRow(Row row) {
+        line.append('{');
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendString(columns.get(i));
+            line.append(':');
+
+            Object value = row.get(i);
+            if (value == null || isNotFinite(value)) {
+                // JSON has no NaN or infinity
+                line.append("null");
+            } else if (value instanceof Number || value instanceof Boolean) {
+                line.append(value);
+            } else {
+                appendString(value.toString());
+            }
+        }
+        line.append('}');
+    }
+
+    private static boolean isNotFinite(Object value) {
+        return (value instanceof Double d && !Double.isFinite(d)) || (value instanceof Float f && !Float.isFinite(f));
+    }
+
+    private void appendString(String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,26 @@
+package gr.network.read.sink;
+
+import java.util.List;
+
+/**
+ * A row backed by already materialized values.
+ * @version 1.0
+ */
+public class ListRow implements Row {
+
+    private final List<?> values;
+
+    public ListRow(List<?> values) {
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public Object get(int index) {
+        return values.get(index);
+    }
+}
@@ -0,0 +1,65 @@
+package gr.network.read.sink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints up to a fixed number of rows of each statement on the console.
+ * Rows are kept as text until the statement ends and printed then,
+ * the rest are only counted.
+ * @version 1.0
+ */
+public class PreviewSink implements ResultSink {
+
+    /** Rows previewed when no limit is given. */
+    public static final int DEFAULT_LIMIT = 100;
+
+    private final int limit;
+
+    private List<String> columns;
+    private final List<String> lines = new ArrayList<>();
+    private long count;
+
+    public PreviewSink() {
+        this(DEFAULT_LIMIT);
+    }
+
+    public PreviewSink(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public void begin(String label, List<String> columns) {
+        this.columns = columns;
+        this.lines.clear();
+        this.count = 0;
+    }
+
+    @Override
+    public void accept(Row row) {
+        if (count++ >= limit) {
+            return;
+        }
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < row.size(); i++) {
+            line.append(row.display(i)).append('\t');
+        }
+        lines.add(line.toString());
+    }
+
+    @Override
+    public void end() {
+        StringBuilder header = new StringBuilder();
+        for (String column : columns) {
+            header.append(column).append('\t');
+        }
+        System.out.println(header);
+
+        lines.forEach(System.out::println);
+
+        if (count > limit) {
+            System.out.printf("... %d more rows\n", count - limit);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package gr.network.read.sink;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Consumes the rows of query results.
+ * A sink receives one {@link #begin}, any number of {@link #accept}
+ * and one {@link #end} call per statement. Readers time a statement
+ * up to its last {@link #accept}, so sinks should defer console output
+ * to {@link #end} to keep the terminal out of the measured time.
+ * @version 1.0
+ */
+public interface ResultSink extends AutoCloseable {
+
+    /** A statement with the given columns starts. */
+    void begin(String label, List<String> columns) throws IOException;
+
+    /** Consumes one row. The row may be reused after the call returns. */
+    void accept(Row row) throws IOException;
+
+    /** The current statement has no more rows. */
+    void end() throws IOException;
+
+    /** Releases the resources of the sink, once no more statements follow. */
+    @Override
+    default void close() throws IOException {}
+}
@@ -0,0 +1,42 @@
+package gr.network.read.sink;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Creates result sinks from their command line specification.
+ * @version 1.0
+ */
+public final class ResultSinks {
+
+    private ResultSinks() {}
+
+    /**
+     * Parses a sink specification:
+     * discard, count, preview, preview:N, csv:PATH or jsonl:PATH.
+     * @throws IllegalArgumentException on an unknown specification
+     */
+    public static ResultSink parse(String spec) throws IOException {
+        int colon = spec.indexOf(':');
+        String type = colon < 0 ? spec : spec.substring(0, colon);
+        String argument = colon < 0 ? null : spec.substring(colon + 1);
+
+        return switch (type.toLowerCase()) {
+            case "discard" -> new DiscardSink();
+            case "count" -> new CountingSink();
+            case "preview" -> argument == null
+                ? new PreviewSink()
+                : new PreviewSink(Integer.parseInt(argument));
+            case "csv" -> new CsvFileSink(Path.of(requirePath(spec, argument)));
+            case "jsonl" -> new JsonLinesFileSink(Path.of(requirePath(spec, argument)));
+            default -> throw new IllegalArgumentException("Unknown sink: " + spec);
+        };
+    }
+
+    private static String requirePath(String spec, String path) {
+        if (path == null || path.isBlank()) {
+            throw new IllegalArgumentException("Sink needs a file path: " + spec);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,21 @@
+package gr.network.read.sink;
+
+/**
+ * A single row of a query result, converted lazily.
+ * Values are only materialized when a sink asks for them,
+ * so sinks that do not look at rows pay nothing for them.
+ * @version 1.0
+ */
+public interface Row {
+
+    /** Number of values in the row. */
+    int size();
+
+    /** The value at the given column, as a plain Java object. */
+    Object get(int index);
+
+    /** The value at the given column, as printed on the console. */
+    default String display(int index) {
+        return String.valueOf(get(index));
+    }
+}
@@ -0,0 +1,87 @@
+package gr.network.sketch;
+
+/**
+ * Bloom filter over strings, answering whether one was seen before
+ * in a fixed number of bits. A string never seen may be reported as
+ * seen, with the configured probability once the expected strings
+ * are added, but never the reverse. Past the expected strings the
+ * probability keeps growing, see {@link RotatingBloomFilter}.
+ * @version 1.0
+ */
+public final class BloomFilter {
+
+    /** The most words a Java array can hold. */
+    private static final long MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    private final long[] bits;
+    private final long size;
+    private final int hashes;
+
+    /**
+     * Sizes the filter for the expected number of strings
+     * and the false positive probability once they are all added.
+     * @throws IllegalArgumentException if the arguments are out of range or need more bits than an array holds
+     */
+    public BloomFilter(long expected, double falsePositiveRate) {
+        if (expected < 1) {
+            throw new IllegalArgumentException("The expected strings must be positive, not " + expected);
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("The false positive rate must be in (0, 1), not " + falsePositiveRate);
+        }
+        double optimal = Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        if (optimal > MAX_WORDS * 64) {
+            throw new IllegalArgumentException(String.format(
+                "%d strings at a false positive rate of %s need %.0f bits, more than a filter holds",
+                expected, falsePositiveRate, optimal));
+        }
+        this.size = Math.max(64, (long) optimal);
+        this.bits = new long[(int) ((size + 63) / 64)];
+        this.hashes = Math.max(1, (int) Math.round((double) size / expected * Math.log(2)));
+    }
+
+    /**
+     * Adds the string.
+     * @return whether it was definitely not added before
+     */
+    public boolean add(String value) {
+        long hash = Hashing.hash64(value);
+        // double hashing derives every index from the hash and a remix of it, odd so it cycles every bit
+        long second = Hashing.mix64(hash) | 1;
+
+        boolean added = false;
+        for (int i = 0; i < hashes; i++) {
+            long index = Long.remainderUnsigned(hash + i * second, size);
+            long mask = 1L << index;
+            int word = (int) (index >>> 6);
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Whether the string may have been added, false if it definitely was not.
+     */
+    public boolean mightContain(String value) {
+        long hash = Hashing.hash64(value);
+        long second = Hashing.mix64(hash) | 1;
+
+        for (int i = 0; i < hashes; i++) {
+            long index = Long.remainderUnsigned(hash + i * second, size);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The memory held by the filter, in bytes.
+     */
+    public long sizeInBytes() {
+        return bits.length * 8L;
+    }
+}
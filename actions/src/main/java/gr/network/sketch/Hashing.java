@@ -0,0 +1,36 @@
+package gr.network.sketch;
+
+/**
+ * The hash shared by the sketches.
+ * @version 1.0
+ */
+public final class Hashing {
+
+    private Hashing() {}
+
+    /**
+     * 64-bit FNV-1a over the characters, with the MurmurHash3 finalizer
+     * spreading the ids, which are often short and sequential, over every bit.
+     */
+    public static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return mix64(hash);
+    }
+
+    /**
+     * The MurmurHash3 finalizer, spreading every bit of the input over the output.
+     */
+    public static long mix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,115 @@
+package gr.network.sketch;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+import gr.network.domain.Action;
+import gr.network.read.sink.ListRow;
+import gr.network.read.sink.ResultSink;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+/**
+ * Live top courses of a stream of actions: by actions, by label=1 actions
+ * and by distinct users. Fed one action at a time as the input is parsed,
+ * it holds a fixed number of counters and a rotating filter of the
+ * user-course pairs seen, so it keeps up with an ingest that never ends.
+ * The filter remembers a pair for one to two generations of the expected
+ * pairs, so a user coming back to a course after that many new pairs is
+ * counted again: past the expected pairs, distinct users are those of a
+ * sliding window rather than of the whole stream.
+ * @version 1.0
+ */
+public final class HeavyHitters implements Consumer<Action> {
+
+    private static final Dotenv dotenv = Dotenv.configure()
+        .directory("./")
+        .load();
+
+    private final SpaceSaving byActions;
+    private final SpaceSaving byLabelOne;
+    private final SpaceSaving byDistinctUsers;
+
+    /** The user-course pairs seen, so a course counts each user once. */
+    private final RotatingBloomFilter pairs;
+
+    private long rows;
+
+    public HeavyHitters() {
+        this(
+            Integer.parseInt(dotenv.get("HEAVY_HITTERS_CAPACITY", "100")),
+            Long.parseLong(dotenv.get("HEAVY_HITTERS_EXPECTED_PAIRS", "1000000"))
+        );
+    }
+
+    /**
+     * @param capacity the courses monitored per ranking
+     * @param expectedPairs the user-course pairs every generation of the filter takes, at 1% false positives
+     */
+    public HeavyHitters(int capacity, long expectedPairs) {
+        this.byActions = new SpaceSaving(capacity);
+        this.byLabelOne = new SpaceSaving(capacity);
+        this.byDistinctUsers = new SpaceSaving(capacity);
+        this.pairs = new RotatingBloomFilter(expectedPairs, 0.01);
+    }
+
+    @Override
+    public synchronized void accept(Action action) {
+        rows++;
+        byActions.add(action.getCourse());
+        if (action.getLabel() == 1) {
+            byLabelOne.add(action.getCourse());
+        }
+        // a pair falsely reported as seen undercounts its course by one user
+        if (pairs.add(action.getUser() + '\u0000' + action.getCourse())) {
+            byDistinctUsers.add(action.getCourse());
+        }
+    }
+
+    public synchronized List<SpaceSaving.Entry> topByActions(int k) {
+        return List.copyOf(byActions.top(k));
+    }
+
+    public synchronized List<SpaceSaving.Entry> topByLabelOne(int k) {
+        return List.copyOf(byLabelOne.top(k));
+    }
+
+    public synchronized List<SpaceSaving.Entry> topByDistinctUsers(int k) {
+        return List.copyOf(byDistinctUsers.top(k));
+    }
+
+    /** The actions seen so far. */
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    /** How many times the filter of pairs dropped its oldest generation. */
+    public synchronized long getPairRotations() {
+        return pairs.getRotations();
+    }
+
+    /**
+     * Passes the three rankings to the sink, each count with the
+     * most it may be overestimated by.
+     */
+    public void report(ResultSink sink, int k) throws IOException {
+        long seen = getRows();
+        report(sink, String.format("Top courses by actions (after %d rows)", seen), topByActions(k));
+        report(sink, String.format("Top courses by label=1 actions (after %d rows)", seen), topByLabelOne(k));
+        long rotations = getPairRotations();
+        report(sink, rotations == 0
+            ? String.format("Top courses by distinct users (after %d rows)", seen)
+            : String.format("Top courses by distinct users (after %d rows, a window of the latest pairs after %d"
+                + " filter rotations)", seen, rotations), topByDistinctUsers(k));
+    }
+
+    private void report(ResultSink sink, String label, List<SpaceSaving.Entry> entries) throws IOException {
+        sink.begin(label, List.of("targetId", "count", "max_overestimate"));
+        for (SpaceSaving.Entry entry : entries) {
+            sink.accept(new ListRow(List.of(entry.item(), entry.count(), entry.error())));
+        }
+        System.out.println("\n> " + label);
+        sink.end();
+    }
+}
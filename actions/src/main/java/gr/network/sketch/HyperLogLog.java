@@ -0,0 +1,152 @@
+package gr.network.sketch;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct strings added to it,
+ * in a fixed 16 KB regardless of how many there are.
+ * Sketches merge without loss, so the sketch of an incremental load
+ * merged into the stored one equals the sketch of all the loads.
+ * @version 1.0
+ */
+public final class HyperLogLog {
+
+    /** Bits of the hash choosing the register. */
+    public static final int PRECISION = 14;
+
+    private static final int REGISTERS = 1 << PRECISION;
+
+    /** Bits of the hash left for the run of leading zeros. */
+    private static final int RUN_BITS = 64 - PRECISION;
+
+    /** The longest run of leading zeros seen per register, plus one. */
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * Restores a sketch from its bytes.
+     * @throws IllegalArgumentException if the bytes are not a sketch of this precision
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length != REGISTERS) {
+            throw new IllegalArgumentException(
+                "Expected a sketch of " + REGISTERS + " registers, got " + bytes.length);
+        }
+        return new HyperLogLog(bytes.clone());
+    }
+
+    /**
+     * The registers, to be stored and restored with fromBytes.
+     */
+    public byte[] toBytes() {
+        return registers.clone();
+    }
+
+    public void add(String value) {
+        long hash = Hashing.hash64(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // the remaining bits, with a stop bit so the run is bounded
+        long rest = (hash << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Adds every value of the other sketch to this one.
+     */
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * The estimated number of distinct values added.
+     * Uses the improved estimator of Ertl (2017), which needs neither
+     * bias tables nor a switch to linear counting for small counts.
+     */
+    public long estimate() {
+        int[] histogram = new int[RUN_BITS + 2];
+        for (byte register : registers) {
+            histogram[register]++;
+        }
+
+        double z = REGISTERS * tau(1 - (double) histogram[RUN_BITS + 1] / REGISTERS);
+        for (int k = RUN_BITS; k >= 1; k--) {
+            z = 0.5 * (z + histogram[k]);
+        }
+        z += REGISTERS * sigma((double) histogram[0] / REGISTERS);
+
+        return Math.round(REGISTERS * (REGISTERS / (2 * Math.log(2))) / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
+    /**
+     * The relative standard error of the estimates, about 0.81%.
+     * Estimates are within two of it of the exact count 95% of the time.
+     */
+    public static double standardError() {
+        return 1.04 / Math.sqrt(REGISTERS);
+    }
+
+    public boolean isEmpty() {
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof HyperLogLog sketch && Arrays.equals(registers, sketch.registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+}
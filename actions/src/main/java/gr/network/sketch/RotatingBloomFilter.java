@@ -0,0 +1,62 @@
+package gr.network.sketch;
+
+/**
+ * Bloom filter for a stream of strings that never ends: two generations of
+ * {@link BloomFilter}, each sized for the expected strings. Once the current
+ * generation has taken that many, it becomes the previous one and the oldest
+ * is dropped, so the false positive rate stays within about twice the
+ * configured one however many strings come, in fixed memory.
+ * The price is forgetting: a string not added again for one to two
+ * generations is reported as new once more.
+ * @version 1.0
+ */
+public final class RotatingBloomFilter {
+
+    private final long expected;
+    private final double falsePositiveRate;
+
+    private BloomFilter current;
+    private BloomFilter previous;
+
+    /** The strings the current generation has taken. */
+    private long added;
+    private long rotations;
+
+    /**
+     * @param expected the strings every generation takes before rotating
+     * @param falsePositiveRate the false positive probability of a full generation
+     */
+    public RotatingBloomFilter(long expected, double falsePositiveRate) {
+        this.expected = expected;
+        this.falsePositiveRate = falsePositiveRate;
+        this.current = new BloomFilter(expected, falsePositiveRate);
+    }
+
+    /**
+     * Adds the string to the current generation, so a string seen again is remembered for longer.
+     * @return whether it was definitely not added in either generation
+     */
+    public boolean add(String value) {
+        boolean inPrevious = previous != null && previous.mightContain(value);
+        boolean addedNow = current.add(value);
+        if (addedNow && ++added >= expected) {
+            previous = current;
+            current = new BloomFilter(expected, falsePositiveRate);
+            added = 0;
+            rotations++;
+        }
+        return addedNow && !inPrevious;
+    }
+
+    /** How many times a generation was dropped, each forgetting the strings only it held. */
+    public long getRotations() {
+        return rotations;
+    }
+
+    /**
+     * The memory held by both generations, in bytes.
+     */
+    public long sizeInBytes() {
+        return current.sizeInBytes() * 2;
+    }
+}
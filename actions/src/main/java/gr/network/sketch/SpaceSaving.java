@@ -0,0 +1,135 @@
+package gr.network.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving counter of the most frequent items of a stream,
+ * monitoring a fixed number of items whatever the stream length.
+ * An unmonitored item replaces the least counted one and inherits
+ * its count as the error, so counts may overestimate by at most
+ * their error, and any item counted more than the stream length
+ * divided by the capacity is monitored.
+ * @version 1.0
+ */
+public final class SpaceSaving {
+
+    /** A monitored item, with the count it may be overestimated by. */
+    public record Entry(String item, long count, long error) {}
+
+    private static final class Counter {
+        final String item;
+        long count;
+        long error;
+        int position;
+
+        Counter(String item) {
+            this.item = item;
+        }
+    }
+
+    private final int capacity;
+
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    /** Min-heap of the counters by count, the root is replaced first. */
+    private final Counter[] heap;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Counts one occurrence of the item, in O(log capacity).
+     */
+    public void add(String item) {
+        Counter counter = counters.get(item);
+
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter(item);
+                counter.position = counters.size();
+                heap[counter.position] = counter;
+                counters.put(item, counter);
+                siftUp(counter.position);
+            } else {
+                // the least counted item makes room, its count becomes the error
+                Counter evicted = heap[0];
+                counters.remove(evicted.item);
+
+                counter = new Counter(item);
+                counter.count = evicted.count;
+                counter.error = evicted.count;
+                counter.position = 0;
+                heap[0] = counter;
+                counters.put(item, counter);
+            }
+        }
+
+        counter.count++;
+        siftDown(counter.position);
+    }
+
+    /**
+     * The k most counted items, most counted first.
+     * Sorts the monitored items, so it costs the same however long the stream.
+     */
+    public List<Entry> top(int k) {
+        List<Entry> entries = new ArrayList<>(counters.size());
+        for (Counter counter : counters.values()) {
+            entries.add(new Entry(counter.item, counter.count, counter.error));
+        }
+        entries.sort(Comparator.comparingLong(Entry::count).reversed().thenComparing(Entry::item));
+        return entries.subList(0, Math.min(k, entries.size()));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (heap[parent].count <= heap[position].count) {
+                return;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        int size = counters.size();
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && heap[left].count < heap[smallest].count) {
+                smallest = left;
+            }
+            if (right < size && heap[right].count < heap[smallest].count) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(smallest, position);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Counter counter = heap[i];
+        heap[i] = heap[j];
+        heap[j] = counter;
+        heap[i].position = i;
+        heap[j].position = j;
+    }
+}
@@ -0,0 +1,17 @@
+package gr.network.trace;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One batch of rows through a load stage.
+ * @version 1.0
+ */
+@Name(LoadBatchEvent.NAME)
+@Label("Load Batch")
+@Description("A batch of rows parsed, mapped or written to a database")
+class LoadBatchEvent extends LoadEvent {
+
+    static final String NAME = "gr.network.LoadBatch";
+}
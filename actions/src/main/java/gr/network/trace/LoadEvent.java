@@ -0,0 +1,29 @@
+package gr.network.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields shared by the Flight Recorder events of the load.
+ * The duration of an event is recorded by Flight Recorder itself.
+ * @version 1.0
+ */
+@Category({"Graph Tool", "Load"})
+@StackTrace(false)
+abstract class LoadEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Bytes")
+    @Description("Bytes read for parsing, or the approximate payload of the rows written")
+    @DataAmount
+    long bytes;
+}
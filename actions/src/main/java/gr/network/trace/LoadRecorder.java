@@ -0,0 +1,128 @@
+package gr.network.trace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Records a Flight Recorder file for the run, with the JDK's default
+ * low overhead events and every load event, and prints how the load
+ * time splits between its stages when closed.
+ * The file opens in JDK Mission Control, or with {@code jfr print}.
+ * @version 1.0
+ */
+public class LoadRecorder implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(LoadRecorder.class);
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Recording recording;
+    private final Path file;
+
+    public LoadRecorder() throws IOException, ParseException {
+        this(Path.of("recordings"));
+    }
+
+    public LoadRecorder(Path directory) throws IOException, ParseException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve("recording-" + LocalDateTime.now().format(FILE_TIME) + ".jfr");
+
+        this.recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("graph-tool");
+        recording.enable(LoadBatchEvent.NAME).withoutThreshold();
+        recording.enable(LoadStageEvent.NAME).withoutThreshold();
+        recording.start();
+        logger.info("Recording to {}", file);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        recording.stop();
+        recording.dump(file);
+        recording.close();
+        logger.info("Recorded to {}", file);
+
+        printBreakdown(RecordingFile.readAllEvents(file));
+    }
+
+    /** The totals of one stage across its events. */
+    private static final class StageTotals {
+        long events;
+        long rows;
+        long bytes;
+        long nanos;
+
+        void add(RecordedEvent event) {
+            events++;
+            rows += event.getLong("rows");
+            bytes += event.getLong("bytes");
+            nanos += event.getDuration().toNanos();
+        }
+    }
+
+    private static void printBreakdown(List<RecordedEvent> events) {
+        Map<String, StageTotals> batches = new TreeMap<>();
+        Map<String, StageTotals> stages = new TreeMap<>();
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.equals(LoadBatchEvent.NAME)) {
+                batches.computeIfAbsent(event.getString("stage"), stage -> new StageTotals()).add(event);
+            } else if (name.equals(LoadStageEvent.NAME)) {
+                stages.computeIfAbsent(event.getString("stage"), stage -> new StageTotals()).add(event);
+            }
+        }
+
+        System.out.println("\n" + "=".repeat(90));
+        System.out.println("LOAD STAGE BREAKDOWN");
+        System.out.println("=".repeat(90));
+
+        if (batches.isEmpty() && stages.isEmpty()) {
+            System.out.println("Nothing was loaded during the recording.");
+            System.out.println("=".repeat(90));
+            return;
+        }
+
+        if (!batches.isEmpty()) {
+            long totalNanos = batches.values().stream().mapToLong(totals -> totals.nanos).sum();
+            System.out.printf("%-16s %8s %12s %10s %12s %10s %12s %7s%n",
+                "Batches of", "Count", "Rows", "MB", "Total ms", "Mean ms", "Rows/s", "Share");
+            batches.forEach((stage, totals) -> System.out.printf(
+                "%-16s %8d %12d %10.2f %12.2f %10.3f %12.0f %6.1f%%%n",
+                stage, totals.events, totals.rows, totals.bytes / 1e6,
+                totals.nanos / 1e6, totals.nanos / 1e6 / totals.events,
+                totals.nanos == 0 ? 0.0 : totals.rows / (totals.nanos / 1e9),
+                100.0 * totals.nanos / Math.max(totalNanos, 1)
+            ));
+            if (batches.containsKey("neo4j_write")) {
+                System.out.println("Neo4j batches written with --async overlap, so their time adds up to more than the wall time.");
+            }
+        }
+
+        if (!stages.isEmpty()) {
+            System.out.printf("%n%-22s %12s %12s%n", "Stage", "Rows", "Total ms");
+            stages.forEach((stage, totals) -> System.out.printf(
+                "%-22s %12d %12.2f%n", stage, totals.rows, totals.nanos / 1e6
+            ));
+        }
+        System.out.println("=".repeat(90));
+    }
+}
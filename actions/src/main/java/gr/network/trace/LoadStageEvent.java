@@ -0,0 +1,17 @@
+package gr.network.trace;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A whole load stage, such as inserting every action or maintaining the summaries.
+ * @version 1.0
+ */
+@Name(LoadStageEvent.NAME)
+@Label("Load Stage")
+@Description("A load stage from start to end, including its batches")
+class LoadStageEvent extends LoadEvent {
+
+    static final String NAME = "gr.network.LoadStage";
+}
@@ -0,0 +1,101 @@
+package gr.network.trace;
+
+import java.util.Collection;
+
+import gr.network.domain.Action;
+import gr.network.metrics.Metrics;
+
+/**
+ * Times a batch or a whole stage of the load, emitting a Flight Recorder
+ * event for it. Batches are also recorded in the load metrics.
+ * Events cost next to nothing unless a recording is running,
+ * so the timers stay in place in every run.
+ * @version 1.0
+ */
+public final class LoadTimer {
+
+    private final LoadEvent event;
+    private final String stage;
+    private final boolean batch;
+    private final long start;
+
+    private LoadTimer(LoadEvent event, String stage, boolean batch) {
+        this.event = event;
+        this.stage = stage;
+        this.batch = batch;
+        event.begin();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Starts timing one batch of a stage: parse, map, sqlite_insert or neo4j_write.
+     */
+    public static LoadTimer batch(String stage) {
+        return new LoadTimer(new LoadBatchEvent(), stage, true);
+    }
+
+    /**
+     * Starts timing a whole stage, such as sqlite_summaries or sqlite_commit.
+     */
+    public static LoadTimer stage(String stage) {
+        return new LoadTimer(new LoadStageEvent(), stage, false);
+    }
+
+    /**
+     * Whether the event will be recorded, so that its bytes are worth counting.
+     */
+    public boolean isRecording() {
+        return event.isEnabled();
+    }
+
+    public void end(long rows) {
+        end(rows, 0);
+    }
+
+    /**
+     * Ends a batch of actions, with their approximate payload when recording.
+     */
+    public void end(Collection<Action> actions) {
+        end(actions.size(), isRecording() ? payloadBytes(actions) : 0);
+    }
+
+    /**
+     * The approximate payload of actions if batches are being recorded, otherwise 0,
+     * for batches timed elsewhere, such as asynchronous writes.
+     */
+    public static long recordedPayloadBytes(Collection<Action> actions) {
+        return new LoadBatchEvent().isEnabled() ? payloadBytes(actions) : 0;
+    }
+
+    public void end(long rows, long bytes) {
+        long nanos = System.nanoTime() - start;
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.rows = rows;
+            event.bytes = bytes;
+            event.commit();
+        }
+        if (batch) {
+            Metrics.loadBatch(stage, rows, nanos);
+        }
+    }
+
+    /**
+     * The approximate size of actions as written: the characters
+     * of their text fields and eight bytes per number.
+     */
+    static long payloadBytes(Collection<Action> actions) {
+        long bytes = 0;
+        for (Action action : actions) {
+            bytes += length(action.getUser()) + length(action.getCourse())
+                + length(action.getAction()) + length(action.getTimestamp())
+                + 6 * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -11,6 +11,7 @@ CREATE TABLE IF NOT EXISTS Actions(
     userId TEXT,
     courseId TEXT,
     tmsmp DATETIME,
+    epochMillis INTEGER,
     label INTEGER,
     feature0 REAL,
     feature1 REAL,
@@ -18,4 +19,63 @@ CREATE TABLE IF NOT EXISTS Actions(
     feature3 REAL,
     FOREIGN KEY (userId) REFERENCES Users(userId),
     FOREIGN KEY (courseId) REFERENCES Courses(courseId)
-);
\ No newline at end of file
+);
+
+CREATE INDEX IF NOT EXISTS idx_actions_epoch ON Actions(epochMillis);
+
+CREATE TABLE IF NOT EXISTS UserSummary(
+    userId TEXT PRIMARY KEY,
+    actionCount INTEGER NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS CourseSummary(
+    courseId TEXT PRIMARY KEY,
+    actionCount INTEGER NOT NULL,
+    userCount INTEGER NOT NULL,
+    labelOneCount INTEGER NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS UserCourseSummary(
+    userId TEXT,
+    courseId TEXT,
+    actionCount INTEGER NOT NULL,
+    positiveFeature2Count INTEGER NOT NULL,
+    PRIMARY KEY (userId, courseId)
+);
+
+CREATE TABLE IF NOT EXISTS UserRollup(
+    bucketSize INTEGER,
+    bucketStart INTEGER,
+    userId TEXT,
+    actionCount INTEGER NOT NULL,
+    labelOneCount INTEGER NOT NULL,
+    feature0Sum REAL NOT NULL, feature0Min REAL NOT NULL, feature0Max REAL NOT NULL,
+    feature1Sum REAL NOT NULL, feature1Min REAL NOT NULL, feature1Max REAL NOT NULL,
+    feature2Sum REAL NOT NULL, feature2Min REAL NOT NULL, feature2Max REAL NOT NULL,
+    feature3Sum REAL NOT NULL, feature3Min REAL NOT NULL, feature3Max REAL NOT NULL,
+    PRIMARY KEY (bucketSize, bucketStart, userId)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS CourseRollup(
+    bucketSize INTEGER,
+    bucketStart INTEGER,
+    courseId TEXT,
+    actionCount INTEGER NOT NULL,
+    labelOneCount INTEGER NOT NULL,
+    feature0Sum REAL NOT NULL, feature0Min REAL NOT NULL, feature0Max REAL NOT NULL,
+    feature1Sum REAL NOT NULL, feature1Min REAL NOT NULL, feature1Max REAL NOT NULL,
+    feature2Sum REAL NOT NULL, feature2Min REAL NOT NULL, feature2Max REAL NOT NULL,
+    feature3Sum REAL NOT NULL, feature3Min REAL NOT NULL, feature3Max REAL NOT NULL,
+    PRIMARY KEY (bucketSize, bucketStart, courseId)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS CourseSketch(
+    courseId TEXT PRIMARY KEY,
+    registers BLOB NOT NULL,
+    userCountEstimate INTEGER NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS DatasetMeta(
+    key TEXT PRIMARY KEY,
+    value INTEGER NOT NULL
+);